@@ -0,0 +1,62 @@
+package dev.scx.scheduling.benchmark;
+
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/// 触发延迟的抖动 (百分位数)
+///
+/// 每次操作 调度一个 delayMillis 之后执行的单次任务, 并等待它执行. 得到的时间减去 delayMillis 即为触发延迟.
+/// 结果中的 p0.50, p0.99, p0.999 等即为百分位数.
+///
+/// @author scx567888
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class FiringLatencyBenchmark {
+
+    @Param({"0", "1", "10"})
+    public long delayMillis;
+
+    @Param({"TIMER_THREAD", "VIRTUAL_THREAD"})
+    public ExecutionMode executionMode;
+
+    private ExecutorService executor;
+    private TimingWheelTimer timer;
+    private Duration delay;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        timer = new TimingWheelTimer(executor);
+        delay = Duration.ofMillis(delayMillis);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Object fire() {
+        var fired = new CompletableFuture<>();
+        ScxScheduling.oneTime(timer)
+            .startDelay(delay)
+            .executionMode(executionMode)
+            .start(c -> fired.complete(null));
+        return fired.join();
+    }
+
+}
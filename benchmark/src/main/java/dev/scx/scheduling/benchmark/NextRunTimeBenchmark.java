@@ -0,0 +1,54 @@
+package dev.scx.scheduling.benchmark;
+
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.test.ManualTimer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/// `ScheduleHandle.nextRunTime(int)` 的开销 (cron 和 fixedRate 对比)
+///
+/// @author scx567888
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class NextRunTimeBenchmark {
+
+    @Param({"fixedRate", "cron-simple", "cron-complex"})
+    public String type;
+
+    @Param({"1", "10", "100"})
+    public int count;
+
+    private ScheduleHandle handle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 使用 ManualTimer 且从不触发, 任务永远停留在首次调度之前
+        var timer = new ManualTimer();
+        handle = switch (type) {
+            case "fixedRate" -> ScxScheduling.fixedRate(timer).interval(Duration.ofMinutes(5)).start(c -> {});
+            case "cron-simple" -> ScxScheduling.cron(timer).cronExpression("0 */5 * * * ?").start(c -> {});
+            case "cron-complex" -> ScxScheduling.cron(timer).cronExpression("0 15 10 ? * 6L").start(c -> {});
+            default -> throw new IllegalArgumentException("未知的 type : " + type);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.cancel();
+    }
+
+    @Benchmark
+    public Instant nextRunTime() {
+        return handle.nextRunTime(count);
+    }
+
+}
@@ -0,0 +1,74 @@
+package dev.scx.scheduling.benchmark;
+
+import dev.scx.function.Function1Void;
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.TaskContext;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/// 调度 + 取消 的吞吐量 (ScxScheduling 的每一种任务类型)
+///
+/// 任务的开始时间在 100 毫秒之后, 所以测量的只是 创建, 启动 和 取消 的开销, 任务本身不会执行.
+///
+/// @author scx567888
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ScheduleCancelBenchmark {
+
+    private static final Function1Void<TaskContext, RuntimeException> NOOP = c -> {};
+    private static final Duration START_DELAY = Duration.ofMillis(100);
+
+    @Param({"oneTime", "fixedRate", "fixedDelay", "cron"})
+    public String type;
+
+    private ExecutorService executor;
+    private TimingWheelTimer timer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+        timer = new TimingWheelTimer(executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ScheduleHandle scheduleAndCancel() {
+        return scheduleAndCancel0();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ScheduleHandle scheduleAndCancelContended() {
+        return scheduleAndCancel0();
+    }
+
+    private ScheduleHandle scheduleAndCancel0() {
+        var handle = switch (type) {
+            case "oneTime" -> ScxScheduling.oneTime(timer).startDelay(START_DELAY).start(NOOP);
+            case "fixedRate" -> ScxScheduling.fixedRate(timer).startDelay(START_DELAY).interval(START_DELAY).start(NOOP);
+            case "fixedDelay" -> ScxScheduling.fixedDelay(timer).startDelay(START_DELAY).interval(START_DELAY).start(NOOP);
+            case "cron" -> ScxScheduling.cron(timer).cronExpression("0 0 0 1 1 ?").start(NOOP);
+            default -> throw new IllegalArgumentException("未知的 type : " + type);
+        };
+        handle.cancel();
+        return handle;
+    }
+
+}
@@ -0,0 +1,54 @@
+package dev.scx.scheduling.benchmark;
+
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.test.ManualTimer;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/// 每次调度 (runTask -> 子任务 -> 调度下一次) 的开销 和 对象分配
+///
+/// 使用 [ManualTimer] 在当前线程中同步触发, 这样测量的只是调度本身, 不包括定时器.
+/// 需要配合 `-prof gc` 运行, 结果中的 gc.alloc.rate.norm 即为每次调度分配的字节数.
+///
+/// @author scx567888
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class TickAllocationBenchmark {
+
+    @Param({"fixedRate", "fixedDelay", "cron"})
+    public String type;
+
+    private ManualTimer timer;
+    private ScheduleHandle handle;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        timer = new ManualTimer();
+        handle = switch (type) {
+            case "fixedRate" -> ScxScheduling.fixedRate(timer).interval(Duration.ofMillis(1)).executionMode(ExecutionMode.TIMER_THREAD).start(c -> {});
+            case "fixedDelay" -> ScxScheduling.fixedDelay(timer).interval(Duration.ofMillis(1)).executionMode(ExecutionMode.TIMER_THREAD).start(c -> {});
+            case "cron" -> ScxScheduling.cron(timer).cronExpression("* * * * * ?").executionMode(ExecutionMode.TIMER_THREAD).start(c -> {});
+            default -> throw new IllegalArgumentException("未知的 type : " + type);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        handle.cancel();
+    }
+
+    @Benchmark
+    public void tick() {
+        timer.fire();
+    }
+
+}
@@ -0,0 +1,820 @@
+package dev.scx.scheduling;
+
+import dev.scx.function.Function1;
+import dev.scx.function.Function1Void;
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+import dev.scx.timer.TaskStatus;
+
+import java.lang.System.Logger;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static dev.scx.scheduling.ExecutionMode.VIRTUAL_THREAD;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.getLogger;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/// AbstractScheduleTask
+///
+/// 各种调度任务的公共部分 (配置项 和 子任务的执行).
+///
+/// 子任务的执行路径在稳定状态下不会产生任何对象分配 (TIMER_THREAD 模式):
+/// TaskContext 会被复用, 只有在同一个调度的多次子任务重叠执行时 才会为重叠的那一次创建新的 TaskContext.
+///
+/// 异步任务 ([#asyncTask(Function1)]) 在返回的 CompletionStage 完成时 才算执行结束 (监听器, 错误处理, 并发策略, fixedDelay 的间隔 都以此为准).
+///
+/// 设置了 timeout 时, 每次执行会在 timer 中添加一个看门狗条目 (按时结束时取消), 超时的执行按 TimeoutException 结束, 调度继续.
+///
+/// 设置了 [RetryPolicy] 时, 失败的执行会在 timer 中安排重试, 直到成功 或 放弃 才算这一次执行结束.
+///
+/// @author scx567888
+public abstract class AbstractScheduleTask<T extends ScheduleTask<T>> implements ScheduleTask<T> {
+
+    private static final Logger LOGGER = getLogger(AbstractScheduleTask.class.getName());
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = Thread.ofVirtual().name("scx-scheduling-", 0).factory();
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    protected final ScxTimer timer;
+
+    protected Function1Void<TaskContext, ?> task;
+    // 与 task 二选一
+    protected Function1<TaskContext, ? extends CompletionStage<?>, ?> asyncTask;
+    protected Consumer<Throwable> errorHandler;
+    protected ExecutionMode executionMode;
+    protected ScheduleListener listener;
+    // 运行时错过的阈值 (纳秒), -1 表示不检测
+    protected long misfireThresholdNanos;
+    // 每次执行的固定偏移 (纳秒), 0 表示不偏移
+    protected long splayNanos;
+    // 允许推迟的时间 (纳秒), 0 表示不推迟
+    protected long slackNanos;
+    // 每次执行的超时时间 (纳秒), -1 表示不限制
+    protected long timeoutNanos;
+    protected RetryPolicy retryPolicy;
+    // 允许执行的时间, null 表示不限制 (只对 cron 和 periodic 有效)
+    protected ScheduleCalendar calendar;
+
+    private ScheduleRegistry registry;
+    private String registryId;
+    private String[] registryTags;
+    // 在 registry 中的登记, 调度结束时移除
+    private volatile ScheduleRegistry.Registration registration;
+
+    protected ScheduleHandle scheduleHandle;
+
+    // 超时被放弃的执行 会换成新的 (见 invokeTaskWithTimeout)
+    private volatile DefaultTaskContext reusableContext;
+    private final AtomicBoolean reusableContextInUse;
+
+    // 并发策略为 ALLOW 时为 null
+    private ConcurrencyGate concurrencyGate;
+
+    private final AtomicBoolean cancelled;
+    // 没有下一次执行时间了 (比如 cron 的组已经关闭), 调度视为完成
+    private volatile boolean exhausted;
+    // 当前等待中的 timer 条目, 取消时会立即从 timer 中移除
+    private volatile TaskHandle pendingTaskHandle;
+    // 等待中的重试 (设置 retryPolicy 时才创建), 取消时同样立即移除
+    private Set<Retry> pendingRetries;
+    // 正在执行子任务的虚拟线程 (关闭默认 Timer 超时时 需要中断它们)
+    private final Set<Thread> virtualThreads;
+
+    public AbstractScheduleTask(ScxTimer timer) {
+        if (timer == null) {
+            throw new NullPointerException("timer 不允许为空 !!!");
+        }
+        this.timer = timer;
+        this.task = null;
+        this.asyncTask = null;
+        this.errorHandler = null;
+        this.executionMode = ScxScheduling.defaultExecutionMode();
+        this.listener = ScxScheduling.defaultListener();
+        this.misfireThresholdNanos = -1;
+        this.splayNanos = 0;
+        this.slackNanos = 0;
+        this.timeoutNanos = -1;
+        this.retryPolicy = null;
+        this.calendar = null;
+        this.registry = null;
+        this.registryId = null;
+        this.registryTags = null;
+        this.registration = null;
+        this.scheduleHandle = null;
+        this.reusableContext = new DefaultTaskContext(this);
+        this.reusableContextInUse = new AtomicBoolean(false);
+        this.concurrencyGate = null;
+        this.cancelled = new AtomicBoolean(false);
+        this.exhausted = false;
+        this.pendingTaskHandle = null;
+        this.pendingRetries = null;
+        this.virtualThreads = ConcurrentHashMap.newKeySet();
+    }
+
+    @Override
+    public T task(Function1Void<TaskContext, ?> task) {
+        this.task = task;
+        this.asyncTask = null;
+        return self();
+    }
+
+    @Override
+    public T asyncTask(Function1<TaskContext, ? extends CompletionStage<?>, ?> asyncTask) {
+        this.asyncTask = asyncTask;
+        this.task = null;
+        return self();
+    }
+
+    @Override
+    public T onError(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return self();
+    }
+
+    @Override
+    public T executionMode(ExecutionMode executionMode) {
+        if (executionMode == null) {
+            throw new NullPointerException("executionMode 不允许为空 !!!");
+        }
+        this.executionMode = executionMode;
+        return self();
+    }
+
+    @Override
+    public T listener(ScheduleListener listener) {
+        this.listener = listener;
+        return self();
+    }
+
+    @Override
+    public T timeout(Duration timeout) {
+        if (timeout == null) {
+            this.timeoutNanos = -1;
+            return self();
+        }
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout 必须大于 0 !!!");
+        }
+        this.timeoutNanos = timeout.toNanos();
+        return self();
+    }
+
+    @Override
+    public T retry(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        if (retryPolicy != null && pendingRetries == null) {
+            this.pendingRetries = ConcurrentHashMap.newKeySet();
+        }
+        return self();
+    }
+
+    @Override
+    public T registry(ScheduleRegistry registry, String id, String... tags) {
+        if (registry == null) {
+            throw new NullPointerException("registry 不允许为空 !!!");
+        }
+        if (id == null) {
+            throw new NullPointerException("id 不允许为空 !!!");
+        }
+        this.registry = registry;
+        this.registryId = id;
+        this.registryTags = tags.clone();
+        return self();
+    }
+
+    @Override
+    public final ScheduleHandle start() {
+        // 先登记再启动, 这样即使调度立即结束 也能被正确移除
+        if (registry != null) {
+            registration = registry.register(this, registryId, registryTags);
+        }
+        var r = registration;
+        ScheduleHandle handle;
+        try {
+            handle = doStart();
+        } catch (Throwable e) {
+            unregister();
+            throw e;
+        }
+        if (r != null) {
+            r.registry().started(r);
+        }
+        return handle;
+    }
+
+    /// 启动调度 (参数检查, 过期策略, 首次调度)
+    protected abstract ScheduleHandle doStart();
+
+    /// 设置并发策略 (默认 ALLOW), QUEUE 时最多排队 1 次
+    public T concurrencyPolicy(ConcurrencyPolicy concurrencyPolicy) {
+        return concurrencyPolicy(concurrencyPolicy, 1);
+    }
+
+    /// 设置并发策略
+    ///
+    /// @param maxQueuedRuns 最多排队的次数 (只对 QUEUE 有效)
+    public T concurrencyPolicy(ConcurrencyPolicy concurrencyPolicy, int maxQueuedRuns) {
+        if (concurrencyPolicy == null) {
+            throw new NullPointerException("concurrencyPolicy 不允许为空 !!!");
+        }
+        if (maxQueuedRuns < 1) {
+            throw new IllegalArgumentException("maxQueuedRuns 必须大于 0 !!!");
+        }
+        this.concurrencyGate = concurrencyPolicy != ConcurrencyPolicy.ALLOW ? new ConcurrencyGate(concurrencyPolicy, maxQueuedRuns) : null;
+        return self();
+    }
+
+    /// 设置运行时错过的阈值 (默认 null, 表示不检测).
+    /// 每次到期时 如果比理想时间点晚了超过这个阈值 (例如 长时间的 GC 停顿, 线程池饱和, 虚拟机挂起),
+    /// 会按照过期策略处理 并通知 [ScheduleListener#onMisfire(ScheduleHandle, long, long)].
+    public T misfireThreshold(Duration misfireThreshold) {
+        if (misfireThreshold == null) {
+            this.misfireThresholdNanos = -1;
+            return self();
+        }
+        if (misfireThreshold.isNegative()) {
+            throw new IllegalArgumentException("misfireThreshold 不能小于 0 !!!");
+        }
+        this.misfireThresholdNanos = misfireThreshold.toNanos();
+        return self();
+    }
+
+    /// 设置偏移 : 所有执行都会推迟一个固定的偏移量, 偏移量由 key 的哈希值决定, 在 [0, window) 之间.
+    /// 大量使用相同表达式 (或相同间隔) 的调度 各自使用不同的 key, 就可以把负载均匀分散到 window 中, 同时每个调度的执行时间仍然是确定的.
+    public T splay(Duration window, String key) {
+        if (window == null) {
+            throw new NullPointerException("window 不允许为空 !!!");
+        }
+        if (key == null) {
+            throw new NullPointerException("key 不允许为空 !!!");
+        }
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("window 不能小于 0 !!!");
+        }
+        var windowNanos = window.toNanos();
+        this.splayNanos = windowNanos == 0 ? 0 : Math.floorMod(mix(key.hashCode()), windowNanos);
+        return self();
+    }
+
+    /// 设置日历 (null 表示不限制) : 被日历排除的时间点直接跳过, 不会唤醒 timer, 也不计入 runCount.
+    public T calendar(ScheduleCalendar calendar) {
+        this.calendar = calendar;
+        return self();
+    }
+
+    @Override
+    public T slack(Duration slack) {
+        if (slack == null) {
+            throw new NullPointerException("slack 不允许为空 !!!");
+        }
+        if (slack.isNegative()) {
+            throw new IllegalArgumentException("slack 不能小于 0 !!!");
+        }
+        this.slackNanos = slack.toNanos();
+        return self();
+    }
+
+    /// 按照 slack 对齐延迟 : 到期时间向后对齐到 slack 的整数倍 (所有调度使用同一个基准, 所以能对齐到同一个时间点)
+    protected final long slackDelay(long delayNanos) {
+        var slack = slackNanos;
+        if (slack <= 1 || delayNanos <= 0) {
+            return delayNanos;
+        }
+        var nowNanos = System.nanoTime();
+        var deadlineNanos = nowNanos + delayNanos;
+        var aligned = deadlineNanos - Math.floorMod(deadlineNanos, slack);
+        if (aligned < deadlineNanos) {
+            aligned = aligned + slack;
+        }
+        return aligned - nowNanos;
+    }
+
+    /// 是否超过了运行时错过的阈值.
+    /// slack 对齐本身会带来最多 slackNanos 的延迟, 所以阈值不小于 slackNanos (否则对齐的延迟也会被当成错过)
+    protected final boolean isMisfire(long lagNanos) {
+        return misfireThresholdNanos != -1 && lagNanos > Math.max(misfireThresholdNanos, slackNanos);
+    }
+
+    /// 向 timer 提交下一次执行, 并记录返回的 TaskHandle 以便取消时移除
+    protected final void schedule(Runnable nextTask, long delayNanos) {
+        TaskHandle taskHandle;
+        try {
+            taskHandle = timer.runAfter(nextTask, slackDelay(delayNanos), NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // timer 已经关闭, 调度随之结束
+            cancelSchedule();
+            return;
+        }
+        pendingTaskHandle = taskHandle;
+        // 取消 和 调度 可能并发发生 : 如果 cancelSchedule 读到的是旧的 TaskHandle,
+        // 那么这里一定能看到取消标记 (两边都是先写后读 volatile), 由这里负责取消新的 TaskHandle
+        if (cancelled.get()) {
+            taskHandle.cancel();
+        }
+    }
+
+    /// 取消调度 : 设置取消标记 并立即从 timer 中移除等待中的条目.
+    /// 已经开始的那一次执行不受影响.
+    protected final void cancelSchedule() {
+        cancelled.set(true);
+        var taskHandle = pendingTaskHandle;
+        if (taskHandle != null) {
+            taskHandle.cancel();
+        }
+        // 放弃等待中的重试
+        var retries = pendingRetries;
+        if (retries != null) {
+            for (var retry : retries) {
+                if (retries.remove(retry)) {
+                    retry.taskHandle.cancel();
+                    giveUp(retry);
+                }
+            }
+        }
+        unregister();
+    }
+
+    /// 没有下一次执行时间了 : 调度视为完成 (status 为 DONE), 并从 registry 中移除.
+    /// 已经开始的那一次执行不受影响.
+    protected final void markExhausted() {
+        exhausted = true;
+        unregister();
+    }
+
+    /// 是否已经没有下一次执行时间了 (见 [#markExhausted()])
+    protected final boolean isExhausted() {
+        return exhausted;
+    }
+
+    /// 调度已经结束 (完成 或 取消), 从 registry 中移除
+    protected final void unregister() {
+        var r = registration;
+        if (r != null) {
+            registration = null;
+            r.registry().remove(r);
+        }
+    }
+
+    /// 是否已经取消 (包括 timer 关闭时 等待中的条目被 timer 取消的情况)
+    protected final boolean isCancelled() {
+        if (cancelled.get()) {
+            return true;
+        }
+        var taskHandle = pendingTaskHandle;
+        return taskHandle != null && taskHandle.status() == TaskStatus.CANCELLED;
+    }
+
+    /// 是否正在执行子任务 (近似值, 重叠执行时只反映其中一次)
+    final boolean isExecuting() {
+        return reusableContextInUse.get();
+    }
+
+    /// 中断所有正在执行子任务的虚拟线程, 返回中断的数量
+    final int interruptVirtualThreads() {
+        var count = 0;
+        for (var thread : virtualThreads) {
+            thread.interrupt();
+            count = count + 1;
+        }
+        return count;
+    }
+
+    /// 在新的虚拟线程中执行, 执行期间记录在 virtualThreads 中
+    private Thread startVirtualThread(Runnable body) {
+        var thread = VIRTUAL_THREAD_FACTORY.newThread(() -> {
+            try {
+                body.run();
+            } finally {
+                virtualThreads.remove(Thread.currentThread());
+            }
+        });
+        virtualThreads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    /// 按照 concurrencyPolicy 和 executionMode 执行一次子任务
+    /// - TIMER_THREAD 直接在当前线程调用 [#execute(long)]
+    /// - VIRTUAL_THREAD 在新的虚拟线程中调用 [#execute(long)]
+    protected final void dispatch(long currentRunCount) {
+        var gate = concurrencyGate;
+        if (gate != null) {
+            switch (gate.tryAcquire(currentRunCount)) {
+                case RUN -> {
+                    // 继续执行
+                }
+                case DEFERRED -> {
+                    // 由正在执行的线程 在结束后执行
+                    return;
+                }
+                case SKIPPED -> {
+                    notifySkipped(1, SkipReason.OVERLAP);
+                    return;
+                }
+                case COALESCED -> {
+                    notifySkipped(1, SkipReason.COALESCED);
+                    return;
+                }
+            }
+        }
+        if (executionMode == VIRTUAL_THREAD) {
+            startVirtualThread(() -> run(currentRunCount));
+        } else {
+            run(currentRunCount);
+        }
+    }
+
+    private void run(long currentRunCount) {
+        var gate = concurrencyGate;
+        if (gate == null) {
+            execute(currentRunCount);
+            return;
+        }
+        // 执行完之后 继续执行期间排队 (或合并) 的
+        var runCount = currentRunCount;
+        do {
+            CompletionStage<?> stage;
+            try {
+                stage = execute(runCount);
+            } catch (Throwable e) {
+                gate.clear();
+                throw e;
+            }
+            if (stage != null) {
+                // 异步任务 : 完成后再继续, 期间不占用线程
+                stage.whenComplete((r, e) -> resume(gate));
+                return;
+            }
+            runCount = gate.release(isCancelled());
+        } while (runCount != ConcurrencyGate.NONE);
+    }
+
+    /// 异步任务完成后 继续执行排队 (或合并) 的, 不在完成 CompletionStage 的线程 (可能是 IO 线程) 中执行
+    private void resume(ConcurrencyGate gate) {
+        var runCount = gate.release(isCancelled());
+        if (runCount == ConcurrencyGate.NONE) {
+            return;
+        }
+        if (executionMode == VIRTUAL_THREAD) {
+            startVirtualThread(() -> run(runCount));
+            return;
+        }
+        try {
+            timer.runAfter(() -> run(runCount), 0, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // timer 已经关闭, 丢弃排队中的
+            gate.clear();
+        }
+    }
+
+    /// 执行一次子任务, 由 [#dispatch(long)] 在对应的线程中调用
+    ///
+    /// @return 同 [#invokeTask(long, long, long)]
+    protected abstract CompletionStage<?> execute(long currentRunCount);
+
+    /// 执行子任务, 子任务抛出的异常 会交给 [#handleError(Throwable)]
+    ///
+    /// @param lagNanos 本次执行相对于理想调度时间点的延迟 (纳秒)
+    /// @return 同步任务返回 null, 异步任务返回 本次执行结束 (包括 监听器 和 错误处理) 时完成的 CompletionStage
+    protected final CompletionStage<?> invokeTask(long currentRunCount, long lagNanos) {
+        return invokeTask(currentRunCount, lagNanos, 1);
+    }
+
+    /// 同上
+    ///
+    /// @param batchSize 本次执行代表的执行次数 (批量补偿时大于 1)
+    protected final CompletionStage<?> invokeTask(long currentRunCount, long lagNanos, long batchSize) {
+        return attempt(currentRunCount, lagNanos, batchSize, null);
+    }
+
+    /// 执行一次尝试
+    ///
+    /// @param retry 首次尝试时为 null
+    private CompletionStage<?> attempt(long currentRunCount, long lagNanos, long batchSize, Retry retry) {
+        // 优先使用可复用的 TaskContext, 只有重叠执行时才创建新的
+        var reuse = reusableContextInUse.compareAndSet(false, true);
+        DefaultTaskContext context;
+        if (reuse) {
+            context = reusableContext;
+        } else {
+            context = new DefaultTaskContext(this);
+        }
+        context.currentRunCount = currentRunCount;
+        context.lagNanos = lagNanos;
+        context.batchSize = batchSize;
+        context.retryCount = retry != null ? retry.retryCount : 0;
+        var startNanos = System.nanoTime();
+        if (timeoutNanos != -1) {
+            return invokeTaskWithTimeout(context, reuse, currentRunCount, lagNanos, batchSize, startNanos, retry);
+        }
+        Throwable error = null;
+        CompletionStage<?> stage = null;
+        try {
+            if (asyncTask != null) {
+                stage = asyncTask.apply(context);
+            } else {
+                task.apply(context);
+            }
+        } catch (Throwable e) {
+            error = e;
+        }
+        // 同步任务 (或者 异步任务返回了 null)
+        if (stage == null) {
+            releaseContext(reuse);
+            return complete(currentRunCount, lagNanos, batchSize, startNanos, error, retry);
+        }
+        // 异步任务 : TaskContext 一直占用到完成为止 (任务在完成之前 仍然可能读取它)
+        return stage.handle((r, e) -> {
+            releaseContext(reuse);
+            return complete(currentRunCount, lagNanos, batchSize, startNanos, unwrap(e), retry);
+        }).thenCompose(AbstractScheduleTask::orDone);
+    }
+
+    /// 带超时的执行. 同步任务在虚拟线程中执行 (超时后被中断, 不响应中断时放弃等待),
+    /// 这样挂起的任务最多占用一个虚拟线程, 而不会耗尽 timer 的线程池. 异步任务超时后会尝试取消 (如果是 Future).
+    ///
+    /// - VIRTUAL_THREAD 模式下 当前线程本身就是这次执行专用的虚拟线程, 直接在当前线程执行 (不再额外创建虚拟线程).
+    /// - 看门狗 和 任务 谁先结束 result 谁负责释放 TaskContext. 被放弃的执行 (超时后仍未结束) 继续持有原来的 TaskContext,
+    ///   可复用的 TaskContext 换成新的 并立即释放, 这样被放弃的执行不再视为正在执行 (见 [#isExecuting()]).
+    private CompletionStage<?> invokeTaskWithTimeout(DefaultTaskContext context, boolean reuse, long currentRunCount, long lagNanos, long batchSize, long startNanos, Retry retry) {
+        var result = new CompletableFuture<Void>();
+        TaskHandle watchdog;
+        if (asyncTask != null) {
+            CompletionStage<?> stage = null;
+            try {
+                stage = asyncTask.apply(context);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+            if (stage != null) {
+                stage.whenComplete((r, e) -> {
+                    // 超时后 任务仍然可能读取 TaskContext, 真正结束时才释放
+                    if (e != null ? result.completeExceptionally(unwrap(e)) : result.complete(null)) {
+                        releaseContext(reuse);
+                    }
+                });
+                watchdog = startWatchdog(result, reuse, null, stage);
+            } else {
+                releaseContext(reuse);
+                result.complete(null);
+                watchdog = null;
+            }
+        } else if (executionMode == VIRTUAL_THREAD && Thread.currentThread().isVirtual()) {
+            watchdog = startWatchdog(result, reuse, Thread.currentThread(), null);
+            runWithTimeout(context, reuse, result);
+        } else {
+            var worker = startVirtualThread(() -> runWithTimeout(context, reuse, result));
+            watchdog = startWatchdog(result, reuse, worker, null);
+        }
+        return result.handle((r, e) -> {
+            if (watchdog != null) {
+                watchdog.cancel();
+            }
+            return complete(currentRunCount, lagNanos, batchSize, startNanos, e, retry);
+        }).thenCompose(AbstractScheduleTask::orDone);
+    }
+
+    /// 在当前线程中执行同步任务, 结果写入 result
+    private void runWithTimeout(DefaultTaskContext context, boolean reuse, CompletableFuture<Void> result) {
+        boolean completed;
+        try {
+            task.apply(context);
+            completed = result.complete(null);
+        } catch (Throwable e) {
+            completed = result.completeExceptionally(e);
+        }
+        if (completed) {
+            releaseContext(reuse);
+        } else {
+            // 已经超时 : 等待看门狗结束 (它可能正要中断当前线程), 再清除中断标记, 不影响当前线程之后的执行
+            synchronized (result) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /// 看门狗 : 每次执行一个 timer 条目, 到期时如果还没有结束 就以 TimeoutException 结束本次执行, 并放弃等待
+    private TaskHandle startWatchdog(CompletableFuture<Void> result, boolean reuse, Thread worker, CompletionStage<?> stage) {
+        if (result.isDone()) {
+            return null;
+        }
+        var timeoutNanos = this.timeoutNanos;
+        try {
+            return timer.runAfter(() -> {
+                synchronized (result) {
+                    if (!result.completeExceptionally(new TimeoutException("调度任务执行超时 (" + timeoutNanos / 1_000_000 + " 毫秒) !!!"))) {
+                        return;
+                    }
+                    abandonContext(reuse);
+                    if (worker != null) {
+                        worker.interrupt();
+                    }
+                }
+                if (stage instanceof Future<?> future) {
+                    future.cancel(true);
+                }
+            }, timeoutNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // timer 已经关闭, 只能等待任务自己结束
+            return null;
+        }
+    }
+
+    private void releaseContext(boolean reuse) {
+        if (reuse) {
+            reusableContextInUse.set(false);
+        }
+    }
+
+    /// 被放弃的执行继续持有原来的 TaskContext, 之后的执行使用新的 (先替换 再释放)
+    private void abandonContext(boolean reuse) {
+        if (reuse) {
+            reusableContext = new DefaultTaskContext(this);
+            reusableContextInUse.set(false);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static CompletionStage<Void> orDone(CompletableFuture<Void> retryResult) {
+        return retryResult != null ? retryResult : DONE;
+    }
+
+    /// 一次尝试结束 : 通知监听器, 失败时按照 retryPolicy 安排重试 或者 处理错误
+    ///
+    /// @return 安排了重试时 返回所有重试结束时完成的 CompletableFuture, 否则返回 null
+    private CompletableFuture<Void> complete(long currentRunCount, long lagNanos, long batchSize, long startNanos, Throwable error, Retry retry) {
+        var listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.onRun(scheduleHandle, currentRunCount, startNanos - lagNanos, startNanos, System.nanoTime() - startNanos, error);
+            } catch (Throwable e) {
+                LOGGER.log(ERROR, "listener 发生错误 !!!", e);
+            }
+        }
+        var policy = retryPolicy;
+        if (error != null && policy != null && !isCancelled()) {
+            var retryCount = retry != null ? retry.retryCount + 1 : 1;
+            if (policy.shouldRetry(retryCount, error)) {
+                if (retry == null) {
+                    retry = new Retry(currentRunCount, batchSize);
+                }
+                retry.retryCount = retryCount;
+                retry.lastError = error;
+                if (scheduleRetry(retry, policy.backoffNanos(retryCount))) {
+                    return retry.result;
+                }
+            }
+        }
+        finish(error);
+        if (retry != null) {
+            retry.result.complete(null);
+        }
+        return null;
+    }
+
+    /// 一次执行最终结束 (包括重试)
+    private void finish(Throwable error) {
+        // 最后一次执行结束后 从 registry 中移除
+        if (registration != null && scheduleHandle != null && scheduleHandle.status() != ScheduleStatus.RUNNING) {
+            unregister();
+        }
+        if (error != null) {
+            handleError(error);
+        }
+    }
+
+    /// 在 timer 中安排重试, timer 已经关闭 或 调度已经取消时返回 false
+    private boolean scheduleRetry(Retry retry, long delayNanos) {
+        var retries = pendingRetries;
+        retry.scheduledNanos = System.nanoTime() + delayNanos;
+        try {
+            retry.taskHandle = timer.runAfter(() -> runRetry(retry), delayNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+        retries.add(retry);
+        // 与 cancelSchedule 并发时, 谁移除成功 谁负责结束这次重试
+        if (cancelled.get() && retries.remove(retry)) {
+            retry.taskHandle.cancel();
+            return false;
+        }
+        return true;
+    }
+
+    private void runRetry(Retry retry) {
+        if (!pendingRetries.remove(retry)) {
+            // 已经被 cancelSchedule 处理
+            return;
+        }
+        if (isCancelled()) {
+            giveUp(retry);
+            return;
+        }
+        if (executionMode == VIRTUAL_THREAD) {
+            startVirtualThread(() -> attempt(retry.runCount, System.nanoTime() - retry.scheduledNanos, retry.batchSize, retry));
+        } else {
+            attempt(retry.runCount, System.nanoTime() - retry.scheduledNanos, retry.batchSize, retry);
+        }
+    }
+
+    /// 调度已经取消, 不再重试
+    private void giveUp(Retry retry) {
+        finish(retry.lastError);
+        retry.result.complete(null);
+    }
+
+    /// 通知监听器 有执行被跳过
+    protected final void notifySkipped(long skipCount, SkipReason reason) {
+        var listener = this.listener;
+        if (listener == null || skipCount <= 0) {
+            return;
+        }
+        try {
+            listener.onSkip(scheduleHandle, skipCount, reason);
+        } catch (Throwable e) {
+            LOGGER.log(ERROR, "listener 发生错误 !!!", e);
+        }
+    }
+
+    /// 通知监听器 运行时检测到了错过
+    protected final void notifyMisfire(long lagNanos, long missCount) {
+        var listener = this.listener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onMisfire(scheduleHandle, lagNanos, missCount);
+        } catch (Throwable e) {
+            LOGGER.log(ERROR, "listener 发生错误 !!!", e);
+        }
+    }
+
+    /// 处理子任务抛出的异常
+    private void handleError(Throwable e) {
+        if (errorHandler != null) {
+            try {
+                errorHandler.accept(e);
+            } catch (Throwable ex) {
+                e.addSuppressed(ex);
+                LOGGER.log(ERROR, "errorHandler 发生错误 !!!", e);
+            }
+        } else {
+            LOGGER.log(ERROR, "调度任务时发生错误 !!!", e);
+        }
+    }
+
+    /// 打散哈希值 (MurmurHash3 的 fmix64), 让相近的 key 也能得到差别很大的偏移
+    private static long mix(long h) {
+        h = h ^ (h >>> 33);
+        h = h * 0xff51afd7ed558ccdL;
+        h = h ^ (h >>> 33);
+        h = h * 0xc4ceb9fe1a85ec53L;
+        h = h ^ (h >>> 33);
+        return h;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T self() {
+        return (T) this;
+    }
+
+    /// 一次执行的重试状态 (只在首次失败时创建)
+    private static final class Retry {
+
+        private final long runCount;
+        private final long batchSize;
+        // 所有重试结束时完成
+        private final CompletableFuture<Void> result;
+        private volatile int retryCount;
+        private volatile Throwable lastError;
+        private volatile long scheduledNanos;
+        private volatile TaskHandle taskHandle;
+
+        private Retry(long runCount, long batchSize) {
+            this.runCount = runCount;
+            this.batchSize = batchSize;
+            this.result = new CompletableFuture<>();
+            this.retryCount = 0;
+            this.lastError = null;
+            this.scheduledNanos = 0;
+            this.taskHandle = null;
+        }
+
+    }
+
+}
@@ -0,0 +1,112 @@
+package dev.scx.scheduling;
+
+/// ConcurrencyGate
+///
+/// [ConcurrencyPolicy] 的实现 (ALLOW 不需要). 保证同一个调度同时最多只有一次子任务在执行.
+///
+/// 只有在 "开始" 和 "结束" 时各加一次锁, 没有重叠时锁总是无竞争的.
+///
+/// @author scx567888
+final class ConcurrencyGate {
+
+    /// 没有下一次需要执行的
+    static final long NONE = -1;
+
+    private final ConcurrencyPolicy policy;
+    private final int maxQueuedRuns;
+
+    // 以下字段由 this 保护
+    private boolean running;
+    // QUEUE : 排队中的 runCount (环形队列, 首次排队时才创建)
+    private long[] queue;
+    private int queueHead;
+    private int queueSize;
+    // COALESCE : 合并后待执行的 runCount
+    private long coalescedRun;
+
+    ConcurrencyGate(ConcurrencyPolicy policy, int maxQueuedRuns) {
+        this.policy = policy;
+        this.maxQueuedRuns = maxQueuedRuns;
+        this.running = false;
+        this.queue = null;
+        this.queueHead = 0;
+        this.queueSize = 0;
+        this.coalescedRun = NONE;
+    }
+
+    /// 尝试开始一次执行
+    synchronized Admission tryAcquire(long runCount) {
+        if (!running) {
+            running = true;
+            return Admission.RUN;
+        }
+        switch (policy) {
+            case QUEUE -> {
+                if (queueSize < maxQueuedRuns) {
+                    if (queue == null) {
+                        queue = new long[maxQueuedRuns];
+                    }
+                    queue[(queueHead + queueSize) % maxQueuedRuns] = runCount;
+                    queueSize = queueSize + 1;
+                    return Admission.DEFERRED;
+                }
+                return Admission.SKIPPED;
+            }
+            case COALESCE -> {
+                // 总是使用最新的那一次
+                var previous = coalescedRun;
+                coalescedRun = runCount;
+                return previous == NONE ? Admission.DEFERRED : Admission.COALESCED;
+            }
+            default -> {
+                return Admission.SKIPPED;
+            }
+        }
+    }
+
+    /// 结束一次执行, 返回下一次需要 (在同一个线程中) 执行的 runCount, 没有则返回 [#NONE]
+    synchronized long release(boolean cancelled) {
+        if (cancelled) {
+            clear();
+            return NONE;
+        }
+        if (queueSize > 0) {
+            var runCount = queue[queueHead];
+            queueHead = (queueHead + 1) % maxQueuedRuns;
+            queueSize = queueSize - 1;
+            return runCount;
+        }
+        if (coalescedRun != NONE) {
+            var runCount = coalescedRun;
+            coalescedRun = NONE;
+            return runCount;
+        }
+        running = false;
+        return NONE;
+    }
+
+    /// 丢弃排队中的执行 并重置状态
+    synchronized void clear() {
+        running = false;
+        queueHead = 0;
+        queueSize = 0;
+        coalescedRun = NONE;
+    }
+
+    enum Admission {
+
+        /// 可以立即执行
+        RUN,
+
+        /// 已排队 (或等待合并执行), 稍后由正在执行的线程执行
+        DEFERRED,
+
+        /// 被跳过
+        SKIPPED,
+
+        /// 被合并
+        COALESCED
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package dev.scx.scheduling;
+
+/// 并发策略 (当一次子任务的耗时超过调度间隔时, 同一个调度的下一次执行如何处理)
+///
+/// 只对 fixedRate 和 cron 有意义 (fixedDelay 总是在上一次执行结束后才调度下一次, 不会重叠).
+///
+/// @author scx567888
+public enum ConcurrencyPolicy {
+
+    /// 允许重叠执行 (默认)
+    /// - 慢任务会不断堆积, 可能占满整个线程池
+    ALLOW,
+
+    /// 上一次还没结束 就跳过本次 (计为 [SkipReason#OVERLAP])
+    SKIP,
+
+    /// 上一次还没结束 就排队, 最多排队 maxQueuedRuns 次, 超出的跳过 (计为 [SkipReason#OVERLAP])
+    /// - 排队的执行会在上一次结束后 在同一个线程中依次执行
+    QUEUE,
+
+    /// 上一次还没结束 就将期间到期的多次执行合并为一次, 在上一次结束后执行
+    /// - 被合并掉的次数计为 [SkipReason#COALESCED]
+    COALESCE
+
+}
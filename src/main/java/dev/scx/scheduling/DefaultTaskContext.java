@@ -0,0 +1,50 @@
+package dev.scx.scheduling;
+
+/// DefaultTaskContext
+///
+/// 可复用的 TaskContext, 由 [AbstractScheduleTask] 持有.
+///
+/// @author scx567888
+final class DefaultTaskContext implements TaskContext {
+
+    private final AbstractScheduleTask<?> scheduleTask;
+    long currentRunCount;
+    long lagNanos;
+    long batchSize;
+    int retryCount;
+
+    DefaultTaskContext(AbstractScheduleTask<?> scheduleTask) {
+        this.scheduleTask = scheduleTask;
+        this.currentRunCount = 0;
+        this.lagNanos = 0;
+        this.batchSize = 1;
+        this.retryCount = 0;
+    }
+
+    @Override
+    public long currentRunCount() {
+        return currentRunCount;
+    }
+
+    @Override
+    public long lagNanos() {
+        return lagNanos;
+    }
+
+    @Override
+    public long batchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public int retryCount() {
+        return retryCount;
+    }
+
+    @Override
+    public ScheduleHandle scheduleHandle() {
+        // 这里有可能是 null, 假设 startDelay 为 0 时 有可能先调用 runTask 然后才有返回值
+        return scheduleTask.scheduleHandle;
+    }
+
+}
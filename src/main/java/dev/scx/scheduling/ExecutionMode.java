@@ -0,0 +1,17 @@
+package dev.scx.scheduling;
+
+/// 执行模式 (子任务在哪里执行)
+///
+/// @author scx567888
+public enum ExecutionMode {
+
+    /// 直接在 Timer 的线程中执行 (默认)
+    /// - 适合计算型的短任务, 没有额外的线程切换开销
+    /// - 阻塞型任务会占用 Timer 的线程, 可能影响其他调度
+    TIMER_THREAD,
+
+    /// Timer 的线程只负责触发, 子任务交给一个新的虚拟线程执行
+    /// - 适合 I/O 阻塞型任务 (JDBC, HTTP 等), 大量任务可以同时阻塞而不占用 Timer 的线程
+    VIRTUAL_THREAD
+
+}
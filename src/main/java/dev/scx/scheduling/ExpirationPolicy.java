@@ -24,6 +24,7 @@ public enum ExpirationPolicy {
     /// 回溯补偿
     /// - 针对单次任务 可以理解为立即执行 和 IMMEDIATE_COMPENSATION 相同
     /// - 针对多次任务 会计算未执行的次数 然后立即执行 之后按照正常调度时间点处理
+    /// - 多次任务的 "补偿运行" 在 timer 中异步进行 (可以限速 或 合并为一次), 全部完成后才开始正常调度
     BACKTRACKING_COMPENSATION
 
 }
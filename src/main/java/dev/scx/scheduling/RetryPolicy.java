@@ -0,0 +1,121 @@
+package dev.scx.scheduling;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/// 失败重试策略
+///
+/// 子任务失败 (抛出异常, 异步任务异常完成, 超时) 后 按指数退避在 timer 中安排重试, 等待期间不占用线程.
+///
+/// - 重试属于同一次执行 : 不增加 runCount (也就不受 maxRunCount 影响), fixedDelay 和 并发策略 都以最后一次尝试结束为准.
+/// - 监听器会收到每一次尝试, onError 只在放弃时调用 (次数用完, 异常不可重试, 调度已取消).
+/// - 第 n 次重试前的等待时间为 min(initialBackoff * multiplier^(n-1), maxBackoff), 再按 jitter 随机减少.
+///
+/// @author scx567888
+public final class RetryPolicy {
+
+    private final int maxAttempts;
+    private long initialBackoffNanos;
+    private long maxBackoffNanos;
+    private double multiplier;
+    private double jitter;
+    private Predicate<Throwable> retryOn;
+
+    /// @param maxAttempts 最多尝试的次数 (包括首次)
+    public RetryPolicy(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts 必须大于 0 !!!");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = Duration.ofSeconds(1).toNanos();
+        this.maxBackoffNanos = Duration.ofMinutes(1).toNanos();
+        this.multiplier = 2;
+        this.jitter = 0.5;
+        this.retryOn = e -> true;
+    }
+
+    /// 首次重试前的等待时间 (默认 1 秒)
+    public RetryPolicy initialBackoff(Duration initialBackoff) {
+        if (initialBackoff == null) {
+            throw new NullPointerException("initialBackoff 不允许为空 !!!");
+        }
+        if (initialBackoff.isNegative()) {
+            throw new IllegalArgumentException("initialBackoff 不能小于 0 !!!");
+        }
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        return this;
+    }
+
+    /// 最长的等待时间 (默认 1 分钟)
+    public RetryPolicy maxBackoff(Duration maxBackoff) {
+        if (maxBackoff == null) {
+            throw new NullPointerException("maxBackoff 不允许为空 !!!");
+        }
+        if (maxBackoff.isNegative()) {
+            throw new IllegalArgumentException("maxBackoff 不能小于 0 !!!");
+        }
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        return this;
+    }
+
+    /// 每次重试 等待时间的倍数 (默认 2)
+    public RetryPolicy multiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier 不能小于 1 !!!");
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /// 随机减少的比例 (默认 0.5, 即实际等待时间在 [50%, 100%] 之间), 避免大量调度同时失败后 又同时重试
+    public RetryPolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter 必须在 0 到 1 之间 !!!");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /// 哪些异常可以重试 (默认全部)
+    public RetryPolicy retryOn(Predicate<Throwable> retryOn) {
+        if (retryOn == null) {
+            throw new NullPointerException("retryOn 不允许为空 !!!");
+        }
+        this.retryOn = retryOn;
+        return this;
+    }
+
+    /// 只重试 指定类型 (及其子类) 的异常
+    @SafeVarargs
+    public final RetryPolicy retryOn(Class<? extends Throwable>... types) {
+        var copy = types.clone();
+        return retryOn(e -> {
+            for (var type : copy) {
+                if (type.isInstance(e)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /// 是否进行第 retryCount 次重试 (从 1 开始)
+    public boolean shouldRetry(int retryCount, Throwable error) {
+        return retryCount < maxAttempts && retryOn.test(error);
+    }
+
+    /// 第 retryCount 次重试 (从 1 开始) 前的等待时间 (纳秒)
+    public long backoffNanos(int retryCount) {
+        var backoff = Math.min(initialBackoffNanos * Math.pow(multiplier, retryCount - 1), maxBackoffNanos);
+        if (jitter > 0) {
+            backoff = backoff * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return (long) backoff;
+    }
+
+}
@@ -0,0 +1,214 @@
+package dev.scx.scheduling;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/// 调度日历
+///
+/// 限制调度允许执行的时间 : 排除的日期 / 时间段, 每天的时间窗口, 每周允许的日子. 用法 : `task.calendar(calendar)`.
+///
+/// - 被排除的时间点不会唤醒 timer, 也不计入 runCount : 调度时直接跳到下一个允许的时间点.
+/// - 排除的时间段保存在按开始时间排序的区间索引中 (相邻 或 重叠的会合并), 一次查询就能跳过整段, 与区间的长度无关.
+/// - 可以在调度运行期间继续添加排除的时间段 (对之后的调度生效).
+///
+/// @author scx567888
+public final class ScheduleCalendar {
+
+    /// 查找下一个允许的时间点时 最多跳跃的次数 (超过视为没有)
+    private static final int MAX_JUMPS = 1000;
+
+    private final ZoneId zone;
+    // 排除的时间段 开始时间 -> 结束时间 (不包含), 互不重叠
+    private final ConcurrentSkipListMap<Instant, Instant> excluded;
+    // 每天的时间窗口 [windowStart, windowEnd), windowStart 晚于 windowEnd 时表示跨越午夜, null 表示不限制
+    private volatile LocalTime windowStart;
+    private volatile LocalTime windowEnd;
+    // 每周允许的日子, null 表示不限制
+    private volatile Set<DayOfWeek> weekdays;
+
+    /// 使用系统默认时区
+    public ScheduleCalendar() {
+        this(ZoneId.systemDefault());
+    }
+
+    /// @param zone 日期 和 时间窗口 所在的时区
+    public ScheduleCalendar(ZoneId zone) {
+        if (zone == null) {
+            throw new NullPointerException("zone 不允许为空 !!!");
+        }
+        this.zone = zone;
+        this.excluded = new ConcurrentSkipListMap<>();
+        this.windowStart = null;
+        this.windowEnd = null;
+        this.weekdays = null;
+    }
+
+    /// 排除一整天
+    public ScheduleCalendar excludeDate(LocalDate date) {
+        if (date == null) {
+            throw new NullPointerException("date 不允许为空 !!!");
+        }
+        return exclude(date.atStartOfDay(zone).toInstant(), date.plusDays(1).atStartOfDay(zone).toInstant());
+    }
+
+    /// 排除多个日期
+    public ScheduleCalendar excludeDates(LocalDate... dates) {
+        for (var date : dates) {
+            excludeDate(date);
+        }
+        return this;
+    }
+
+    /// 排除时间段 [from, to)
+    public synchronized ScheduleCalendar exclude(Instant from, Instant to) {
+        if (from == null) {
+            throw new NullPointerException("from 不允许为空 !!!");
+        }
+        if (to == null) {
+            throw new NullPointerException("to 不允许为空 !!!");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from 必须早于 to !!!");
+        }
+        var start = from;
+        var end = to;
+        // 与前一个时间段 重叠或相邻 时合并
+        var lower = excluded.floorEntry(start);
+        if (lower != null && !lower.getValue().isBefore(start)) {
+            start = lower.getKey();
+            if (lower.getValue().isAfter(end)) {
+                end = lower.getValue();
+            }
+        }
+        // 吞并后面 重叠或相邻 的时间段
+        var covered = excluded.subMap(start, false, end, true);
+        for (var value : covered.values()) {
+            if (value.isAfter(end)) {
+                end = value;
+            }
+        }
+        // 先写入合并后的 再移除被吞并的, 查询的线程不会看到空档
+        excluded.put(start, end);
+        covered.clear();
+        return this;
+    }
+
+    /// 每天只允许在 [start, end) 之间执行. start 晚于 end 时表示跨越午夜 (比如 22:00 到 06:00)
+    public ScheduleCalendar dailyWindow(LocalTime start, LocalTime end) {
+        if (start == null) {
+            throw new NullPointerException("start 不允许为空 !!!");
+        }
+        if (end == null) {
+            throw new NullPointerException("end 不允许为空 !!!");
+        }
+        if (start.equals(end)) {
+            throw new IllegalArgumentException("start 和 end 不能相同 !!!");
+        }
+        this.windowStart = start;
+        this.windowEnd = end;
+        return this;
+    }
+
+    /// 每周只允许在这些日子执行 (按执行时间所在的日期判断, 跨越午夜的窗口 过了午夜的部分属于第二天)
+    public ScheduleCalendar weekdays(DayOfWeek... weekdays) {
+        if (weekdays.length == 0) {
+            throw new IllegalArgumentException("weekdays 不允许为空 !!!");
+        }
+        var set = EnumSet.noneOf(DayOfWeek.class);
+        for (var weekday : weekdays) {
+            if (weekday == null) {
+                throw new NullPointerException("weekday 不允许为空 !!!");
+            }
+            set.add(weekday);
+        }
+        this.weekdays = set;
+        return this;
+    }
+
+    public ZoneId zone() {
+        return zone;
+    }
+
+    /// 合并后的排除时间段的数量
+    public int excludedRangeCount() {
+        return excluded.size();
+    }
+
+    /// 是否允许在 time 执行
+    public boolean isAllowed(Instant time) {
+        var allowed = nextAllowed(time);
+        return allowed != null && !allowed.isAfter(time);
+    }
+
+    /// 不早于 time 的第一个允许执行的时间点, 没有则返回 null.
+    /// 每一步都跳过一整段 (排除的时间段, 窗口之外的时间, 不允许的日子), 直到不再移动.
+    public Instant nextAllowed(Instant time) {
+        var t = time;
+        try {
+            for (var i = 0; i < MAX_JUMPS; i = i + 1) {
+                var next = skipWindow(skipExcluded(t));
+                if (next == t) {
+                    // 排除到 Instant.MAX 表示之后不再允许
+                    return t.equals(Instant.MAX) ? null : t;
+                }
+                t = next;
+            }
+        } catch (DateTimeException e) {
+            // 超出了时间的范围 (设置了窗口 并且排除到 Instant.MAX)
+        }
+        return null;
+    }
+
+    /// 落在排除的时间段中时 跳到时间段的结束
+    private Instant skipExcluded(Instant t) {
+        var range = excluded.floorEntry(t);
+        return range != null && t.isBefore(range.getValue()) ? range.getValue() : t;
+    }
+
+    /// 不在允许的日子 或 时间窗口之外时 跳到下一个开始
+    private Instant skipWindow(Instant t) {
+        var weekdays = this.weekdays;
+        var start = windowStart;
+        var end = windowEnd;
+        if (weekdays == null && start == null) {
+            return t;
+        }
+        var dateTime = t.atZone(zone);
+        var date = dateTime.toLocalDate();
+        if (weekdays != null && !weekdays.contains(date.getDayOfWeek())) {
+            // 下一个允许的日子的开始 (窗口在下一步处理)
+            var next = date.plusDays(1);
+            while (!weekdays.contains(next.getDayOfWeek())) {
+                next = next.plusDays(1);
+            }
+            return next.atStartOfDay(zone).toInstant();
+        }
+        if (start == null) {
+            return t;
+        }
+        var time = dateTime.toLocalTime();
+        if (start.isBefore(end)) {
+            if (time.isBefore(start)) {
+                return ZonedDateTime.of(date, start, zone).toInstant();
+            }
+            if (!time.isBefore(end)) {
+                return ZonedDateTime.of(date.plusDays(1), start, zone).toInstant();
+            }
+            return t;
+        }
+        // 跨越午夜 : [end, start) 之外都允许
+        if (!time.isBefore(end) && time.isBefore(start)) {
+            return ZonedDateTime.of(date, start, zone).toInstant();
+        }
+        return t;
+    }
+
+}
@@ -1,6 +1,13 @@
 package dev.scx.scheduling;
 
 import java.time.Instant;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /// ScheduleHandle
 ///
@@ -22,4 +29,22 @@ public interface ScheduleHandle {
     /// 预计指定次数后子任务运行的时间, 假设 当前调度器拥有 周期次数 限制 那么当超出限制之后 会返回 null
     Instant nextRunTime(int count);
 
+    /// 预计接下来的所有运行时间 (从 nextRunTime() 开始, 按时间顺序), 惰性计算, 受周期次数限制.
+    /// 迭代器是创建时的快照, 不会随之后的执行而变化. 没有次数限制时可能是无限的.
+    /// - 默认只包含 nextRunTime() (单次任务)
+    default Iterator<Instant> nextRunTimes() {
+        var nextRunTime = nextRunTime();
+        return nextRunTime != null ? List.of(nextRunTime).iterator() : Collections.emptyIterator();
+    }
+
+    /// 同上 (Stream 形式), 通常配合 limit 或 takeWhile 使用
+    default Stream<Instant> nextRunTimeStream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(nextRunTimes(), Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /// 预计在 [from, to) 之间的运行时间 (按时间顺序), 惰性计算
+    default Stream<Instant> runTimesBetween(Instant from, Instant to) {
+        return nextRunTimeStream().dropWhile(t -> t.isBefore(from)).takeWhile(t -> t.isBefore(to));
+    }
+
 }
@@ -0,0 +1,82 @@
+package dev.scx.scheduling;
+
+/// 调度监听器 (用于 监控 和 统计)
+///
+/// - 回调在执行任务的线程中同步调用, 请保持轻量, 不要阻塞.
+/// - 参数全部是基本类型 (或已有的对象), 调用本身不会产生对象分配.
+/// - 回调抛出的异常会被记录并忽略, 不会影响调度.
+///
+/// 内置的实现见 [dev.scx.scheduling.metrics.ScheduleMetrics].
+///
+/// @author scx567888
+public interface ScheduleListener {
+
+    /// 组合多个监听器, 按顺序依次调用
+    static ScheduleListener of(ScheduleListener... listeners) {
+        for (var listener : listeners) {
+            if (listener == null) {
+                throw new NullPointerException("listener 不允许为空 !!!");
+            }
+        }
+        // 使用数组 避免遍历时创建迭代器
+        var array = listeners.clone();
+        return new ScheduleListener() {
+
+            @Override
+            public void onRun(ScheduleHandle handle, long runCount, long scheduledNanos, long startNanos, long durationNanos, Throwable error) {
+                for (var i = 0; i < array.length; i = i + 1) {
+                    array[i].onRun(handle, runCount, scheduledNanos, startNanos, durationNanos, error);
+                }
+            }
+
+            @Override
+            public void onSkip(ScheduleHandle handle, long skipCount, SkipReason reason) {
+                for (var i = 0; i < array.length; i = i + 1) {
+                    array[i].onSkip(handle, skipCount, reason);
+                }
+            }
+
+            @Override
+            public void onMisfire(ScheduleHandle handle, long lagNanos, long missCount) {
+                for (var i = 0; i < array.length; i = i + 1) {
+                    array[i].onMisfire(handle, lagNanos, missCount);
+                }
+            }
+
+        };
+    }
+
+    /// 一次子任务执行结束后调用
+    ///
+    /// 时间点均基于 System.nanoTime(), 可以通过 `startNanos - scheduledNanos` 得到延迟.
+    ///
+    /// @param handle         调度 Handle
+    /// @param runCount       本次是第几次执行
+    /// @param scheduledNanos 理想的执行时间点
+    /// @param startNanos     实际开始执行的时间点
+    /// @param durationNanos  执行耗时
+    /// @param error          子任务抛出的异常, 成功时为 null
+    default void onRun(ScheduleHandle handle, long runCount, long scheduledNanos, long startNanos, long durationNanos, Throwable error) {
+
+    }
+
+    /// 有执行被跳过时调用
+    ///
+    /// @param handle    调度 Handle
+    /// @param skipCount 被跳过的次数
+    /// @param reason    跳过的原因
+    default void onSkip(ScheduleHandle handle, long skipCount, SkipReason reason) {
+
+    }
+
+    /// 运行时检测到错过时调用 (需要设置 misfireThreshold), 在按照过期策略处理之前调用.
+    /// 处理的结果 (被跳过的次数) 会再通过 [#onSkip(ScheduleHandle, long, SkipReason)] 通知.
+    ///
+    /// @param handle    调度 Handle
+    /// @param lagNanos  到期时 相对于理想时间点的延迟
+    /// @param missCount 此时已经到期的次数 (包括本次)
+    default void onMisfire(ScheduleHandle handle, long lagNanos, long missCount) {
+
+    }
+
+}
@@ -0,0 +1,319 @@
+package dev.scx.scheduling;
+
+import dev.scx.timer.ScxTimer;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/// ScheduleRegistry
+///
+/// 可选的调度登记表, 按 id 和 标签 索引 正在运行的调度. 用法 : `task.registry(registry, id, tags...)`.
+///
+/// - 调度结束 (完成 或 取消) 时会自动移除, 不会积累已经结束的调度.
+/// - 索引全部使用 ConcurrentHashMap, 登记 和 移除 只锁住对应的哈希桶.
+/// - 按状态统计使用计数器 : 登记中的都是 RUNNING, 结束时按照最终的状态计数, 不需要遍历.
+/// - 按下一次执行时间排序的索引 (跳表) 是惰性更新的 : 下一次执行时间只会向后移动,
+///   所以只需要在查询时 检查排在前面的条目 是否已经过时 (过时的按照新的时间重新插入), 不需要遍历所有的调度.
+/// - 查询时 顺便移除已经结束 但还没来得及移除的.
+///
+/// @author scx567888
+public final class ScheduleRegistry {
+
+    private static final Comparator<Due> DUE_ORDER = Comparator.comparing(Due::nextRunTime).thenComparingLong(d -> d.registration.seq);
+
+    private final ConcurrentHashMap<String, Registration> byId;
+    private final ConcurrentHashMap<String, Set<Registration>> byTag;
+    // 按照 (登记时 或 上一次检查时的) 下一次执行时间排序, 每个调度最多一个条目 (Registration#due)
+    private final ConcurrentSkipListSet<Due> byNextRunTime;
+    private final AtomicLong seq;
+    // 已经结束 (并移除) 的数量
+    private final LongAdder doneCount;
+    private final LongAdder cancelledCount;
+
+    public ScheduleRegistry() {
+        this.byId = new ConcurrentHashMap<>();
+        this.byTag = new ConcurrentHashMap<>();
+        this.byNextRunTime = new ConcurrentSkipListSet<>(DUE_ORDER);
+        this.seq = new AtomicLong(0);
+        this.doneCount = new LongAdder();
+        this.cancelledCount = new LongAdder();
+    }
+
+    /// 由 [AbstractScheduleTask#start()] 在启动之前调用
+    Registration register(AbstractScheduleTask<?> scheduleTask, String id, String[] tags) {
+        var registration = new Registration(this, scheduleTask, id, Set.copyOf(Arrays.asList(tags)), seq.incrementAndGet());
+        var old = byId.putIfAbsent(id, registration);
+        if (old != null) {
+            throw new IllegalArgumentException("id 已存在 : " + id + " !!!");
+        }
+        for (var tag : registration.tags) {
+            byTag.computeIfAbsent(tag, k -> ConcurrentHashMap.newKeySet()).add(registration);
+        }
+        return registration;
+    }
+
+    /// 由 [AbstractScheduleTask#start()] 在启动之后调用, 加入按下一次执行时间排序的索引
+    void started(Registration registration) {
+        var handle = registration.handle();
+        var nextRunTime = handle != null ? handle.nextRunTime() : null;
+        if (nextRunTime == null) {
+            return;
+        }
+        synchronized (registration) {
+            if (registration.due == null) {
+                var due = new Due(registration, nextRunTime);
+                registration.due = due;
+                byNextRunTime.add(due);
+            }
+        }
+        // 与 remove 并发时 由这里清理
+        if (byId.get(registration.id) != registration) {
+            removeDue(registration);
+        }
+    }
+
+    /// 由 [AbstractScheduleTask#unregister()] 在调度结束时调用
+    void remove(Registration registration) {
+        if (!byId.remove(registration.id, registration)) {
+            return;
+        }
+        switch (registration.status()) {
+            case DONE -> doneCount.increment();
+            case CANCELLED -> cancelledCount.increment();
+            case RUNNING -> {
+                // 启动失败的 不计数
+            }
+        }
+        removeDue(registration);
+        for (var tag : registration.tags) {
+            // 标签下没有调度了 就移除这个标签
+            byTag.computeIfPresent(tag, (k, set) -> {
+                set.remove(registration);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+
+    /// 获取指定 id 的调度, 没有则返回 null
+    public ScheduleHandle get(String id) {
+        var registration = byId.get(id);
+        return registration != null && live(registration) ? registration.handle() : null;
+    }
+
+    /// 获取指定标签的所有调度
+    public List<Registration> byTag(String tag) {
+        var set = byTag.get(tag);
+        if (set == null) {
+            return List.of();
+        }
+        var list = new ArrayList<Registration>(set.size());
+        for (var registration : set) {
+            if (live(registration)) {
+                list.add(registration);
+            }
+        }
+        return list;
+    }
+
+    /// 取消指定 id 的调度
+    ///
+    /// @return 是否存在
+    public boolean cancel(String id) {
+        var registration = byId.get(id);
+        if (registration == null) {
+            return false;
+        }
+        cancel(registration);
+        return true;
+    }
+
+    /// 取消指定标签的所有调度
+    ///
+    /// @return 取消的数量
+    public int cancelByTag(String tag) {
+        var set = byTag.get(tag);
+        if (set == null) {
+            return 0;
+        }
+        var count = 0;
+        for (var registration : set) {
+            cancel(registration);
+            count = count + 1;
+        }
+        return count;
+    }
+
+    /// 正在运行的调度数量 (包括还没来得及移除的)
+    public int size() {
+        return byId.size();
+    }
+
+    /// 按状态统计数量 : RUNNING 为当前登记的数量, DONE 和 CANCELLED 为 以对应的状态结束 (并已移除) 的累计数量
+    public Map<ScheduleStatus, Long> countByStatus() {
+        var counts = new EnumMap<ScheduleStatus, Long>(ScheduleStatus.class);
+        counts.put(ScheduleStatus.RUNNING, (long) byId.size());
+        counts.put(ScheduleStatus.DONE, doneCount.sum());
+        counts.put(ScheduleStatus.CANCELLED, cancelledCount.sum());
+        return counts;
+    }
+
+    /// 接下来最先到期的 n 个调度 (按下一次执行时间排序).
+    /// 从索引的开头依次检查 : 时间没有变化的 就是当前最早的 (其他条目的实际时间 只会更晚); 已经变化的 按照新的时间重新插入.
+    public List<Registration> nextDue(int n) {
+        if (n <= 0) {
+            return List.of();
+        }
+        var list = new ArrayList<Registration>(n);
+        var due = byNextRunTime.isEmpty() ? null : byNextRunTime.first();
+        while (due != null && list.size() < n) {
+            var registration = due.registration;
+            if (registration.due == due && live(registration)) {
+                var handle = registration.handle();
+                var nextRunTime = handle != null ? handle.nextRunTime() : null;
+                if (due.nextRunTime.equals(nextRunTime)) {
+                    list.add(registration);
+                } else {
+                    refreshDue(due, nextRunTime);
+                }
+            } else {
+                // 已经结束 或者 已经被其他线程更新了
+                byNextRunTime.remove(due);
+            }
+            due = byNextRunTime.higher(due);
+        }
+        return list;
+    }
+
+    /// 所有登记的调度 (快照)
+    public List<Registration> registrations() {
+        var list = new ArrayList<Registration>(byId.size());
+        for (var registration : byId.values()) {
+            if (live(registration)) {
+                list.add(registration);
+            }
+        }
+        return list;
+    }
+
+    private void cancel(Registration registration) {
+        var handle = registration.handle();
+        if (handle != null) {
+            // 会调用 AbstractScheduleTask#unregister()
+            handle.cancel();
+        }
+        remove(registration);
+    }
+
+    /// 按照新的下一次执行时间 重新插入 (没有下一次执行时间的 移出索引)
+    private void refreshDue(Due due, Instant nextRunTime) {
+        var registration = due.registration;
+        synchronized (registration) {
+            if (registration.due != due) {
+                return;
+            }
+            byNextRunTime.remove(due);
+            if (nextRunTime == null) {
+                registration.due = null;
+                return;
+            }
+            var fresh = new Due(registration, nextRunTime);
+            registration.due = fresh;
+            byNextRunTime.add(fresh);
+        }
+    }
+
+    private void removeDue(Registration registration) {
+        synchronized (registration) {
+            var due = registration.due;
+            if (due != null) {
+                registration.due = null;
+                byNextRunTime.remove(due);
+            }
+        }
+    }
+
+    /// 检查是否还在运行, 已经结束的会被移除
+    private boolean live(Registration registration) {
+        if (registration.status() == ScheduleStatus.RUNNING) {
+            return true;
+        }
+        remove(registration);
+        return false;
+    }
+
+    /// 一条登记
+    public static final class Registration {
+
+        private final ScheduleRegistry registry;
+        private final AbstractScheduleTask<?> scheduleTask;
+        private final String id;
+        private final Set<String> tags;
+        // 登记的顺序, 下一次执行时间相同时 用于区分
+        private final long seq;
+        // 在 byNextRunTime 中的条目 (由 this 保护写入)
+        private volatile Due due;
+
+        private Registration(ScheduleRegistry registry, AbstractScheduleTask<?> scheduleTask, String id, Set<String> tags, long seq) {
+            this.registry = registry;
+            this.scheduleTask = scheduleTask;
+            this.id = id;
+            this.tags = tags;
+            this.seq = seq;
+            this.due = null;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public Set<String> tags() {
+            return tags;
+        }
+
+        /// 调度 Handle (启动过程中可能为 null)
+        public ScheduleHandle handle() {
+            return scheduleTask.scheduleHandle;
+        }
+
+        /// 调度状态 (启动过程中视为 RUNNING)
+        public ScheduleStatus status() {
+            var handle = scheduleTask.scheduleHandle;
+            return handle != null ? handle.status() : ScheduleStatus.RUNNING;
+        }
+
+        /// 是否正在执行子任务
+        boolean executing() {
+            return scheduleTask.isExecuting();
+        }
+
+        /// 中断正在执行子任务的虚拟线程, 返回中断的数量
+        int interruptVirtualThreads() {
+            return scheduleTask.interruptVirtualThreads();
+        }
+
+        /// 调度使用的 timer
+        ScxTimer timer() {
+            return scheduleTask.timer;
+        }
+
+        ScheduleRegistry registry() {
+            return registry;
+        }
+
+    }
+
+    private record Due(Registration registration, Instant nextRunTime) {
+
+    }
+
+}
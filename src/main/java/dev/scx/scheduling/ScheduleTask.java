@@ -1,7 +1,10 @@
 package dev.scx.scheduling;
 
+import dev.scx.function.Function1;
 import dev.scx.function.Function1Void;
 
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 
 /// 调度任务
@@ -12,9 +15,39 @@ public interface ScheduleTask<T extends ScheduleTask<T>> {
     /// 设置任务
     T task(Function1Void<TaskContext, ?> task);
 
+    /// 设置异步任务 (与 task 二选一). 返回的 CompletionStage 完成时 才算本次执行结束, 等待期间不占用线程.
+    /// - fixedDelay 从完成时开始计算下一次的间隔
+    /// - 并发策略 以完成为准判断是否重叠
+    /// - 异常完成时 交给 onError, 监听器收到的耗时 是到完成为止的耗时
+    T asyncTask(Function1<TaskContext, ? extends CompletionStage<?>, ?> asyncTask);
+
     /// 设置错误处理器
     T onError(Consumer<Throwable> errorHandler);
 
+    /// 设置执行模式 (默认值为 [ScxScheduling#defaultExecutionMode()])
+    T executionMode(ExecutionMode executionMode);
+
+    /// 设置每次执行的超时时间 (默认 null, 表示不限制).
+    /// 超时的执行以 TimeoutException 结束 (交给 onError), 调度继续. 同步任务此时会在虚拟线程中执行, 超时后被中断.
+    T timeout(Duration timeout);
+
+    /// 设置允许推迟的时间 (默认 0, 即不推迟).
+    /// 每次到期的时间会向后对齐到 slack 的整数倍, 这样到期时间相近的大量调度 (哪怕只差几微秒) 会落在同一个时间点,
+    /// 由 timer 的一次唤醒统一分发. 以不超过 slack 的精度损失 换取更少的唤醒次数.
+    T slack(Duration slack);
+
+    /// 设置失败重试策略 (默认 null, 表示不重试)
+    T retry(RetryPolicy retryPolicy);
+
+    /// 设置监听器 (默认值为 [ScxScheduling#defaultListener()], null 表示不监听)
+    T listener(ScheduleListener listener);
+
+    /// 登记到 registry 中 (默认不登记), 调度结束 (完成 或 取消) 后会自动移除
+    ///
+    /// @param id   在 registry 中唯一的 id
+    /// @param tags 标签, 可用于批量查询 和 取消
+    T registry(ScheduleRegistry registry, String id, String... tags);
+
     /// 启动任务
     ScheduleHandle start();
 
@@ -23,4 +56,9 @@ public interface ScheduleTask<T extends ScheduleTask<T>> {
         return task(task).start();
     }
 
+    /// 直接启动异步任务
+    default ScheduleHandle startAsync(Function1<TaskContext, ? extends CompletionStage<?>, ?> asyncTask) {
+        return asyncTask(asyncTask).start();
+    }
+
 }
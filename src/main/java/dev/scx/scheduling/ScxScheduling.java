@@ -2,36 +2,69 @@ package dev.scx.scheduling;
 
 import dev.scx.scheduling.cron.CronScheduleTask;
 import dev.scx.scheduling.cron.DefaultCronScheduleTask;
+import dev.scx.scheduling.one_time.DefaultOneTimeBatchScheduleTask;
 import dev.scx.scheduling.one_time.DefaultOneTimeScheduleTask;
+import dev.scx.scheduling.one_time.OneTimeBatchScheduleTask;
 import dev.scx.scheduling.one_time.OneTimeScheduleTask;
 import dev.scx.scheduling.periodic.FixedDelayPeriodicScheduleTask;
 import dev.scx.scheduling.periodic.FixedRatePeriodicScheduleTask;
 import dev.scx.scheduling.periodic.PeriodicScheduleTask;
-import dev.scx.timer.ScheduledExecutorTimer;
+import dev.scx.scheduling.timer.ElasticExecutor;
+import dev.scx.scheduling.timer.ShardedTimer;
+import dev.scx.scheduling.timer.TimingWheelTimer;
 import dev.scx.timer.ScxTimer;
 
 import java.time.Duration;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
 /// ScxScheduling
 ///
 /// 用来 快捷的 创建调度任务
 ///
+/// 默认的 Timer 是 [ShardedTimer] (多个分片的 [TimingWheelTimer] 分层时间轮), 到期的任务交给 [ElasticExecutor] 执行
+/// (线程数在 CPU 核心数 和 16 倍 CPU 核心数 之间 根据延迟自动调整).
+/// 分片数量随 CPU 核心数增长 (每 4 个核心 1 个分片), 获取默认 Timer 本身是无锁的 (只有首次创建时加锁).
+/// 如需使用其他 Timer (比如 ScheduledExecutorTimer), 可以使用 `oneTime(ScxTimer)` 等重载方法.
+///
 /// @author scx567888
 public final class ScxScheduling {
 
+    /// 立即关闭默认 Timer 时 等待 tick 线程退出的最长时间
+    private static final long TIMER_TERMINATION_TIMEOUT_MILLIS = 1000;
+
     private static final ReentrantLock defaultTimerLock = new ReentrantLock();
-    private static ScheduledExecutorService defaultScheduledExecutorService;
-    private static ScxTimer defaultTimer;
+    private static volatile ShardedTimer defaultTimer;
+    // 正在优雅地关闭默认 Timer (由 defaultTimerLock 保护写入), 期间不允许创建新的
+    private static volatile boolean defaultTimerDraining = false;
+    private static volatile ExecutionMode defaultExecutionMode = ExecutionMode.TIMER_THREAD;
+    private static volatile ScheduleListener defaultListener = null;
 
     public static ScxTimer defaultTimer() {
+        return defaultShardedTimer();
+    }
+
+    /// 同 [#defaultTimer()], 返回具体的 [ShardedTimer] (可以从中读取 分片 和 等待中的任务数 等指标)
+    ///
+    /// @throws IllegalStateException 正在优雅地关闭默认 Timer (见 [#shutdownDefaultTimer(Duration, ScheduleRegistry)])
+    public static ShardedTimer defaultShardedTimer() {
+        // 快速路径 : 已经创建过了 只需要一次 volatile 读
+        var timer = defaultTimer;
+        if (timer != null) {
+            return timer;
+        }
         defaultTimerLock.lock();
         try {
+            if (defaultTimerDraining) {
+                throw new IllegalStateException("默认 Timer 正在关闭 !!!");
+            }
             if (defaultTimer == null) {
-                defaultScheduledExecutorService = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors() * 2);
-                defaultTimer = new ScheduledExecutorTimer(defaultScheduledExecutorService);
+                var processors = Runtime.getRuntime().availableProcessors();
+                defaultTimer = new ShardedTimer(new ElasticExecutor(processors, processors * 16), Math.max(processors / 4, 1));
             }
             return defaultTimer;
         } finally {
@@ -39,23 +72,179 @@ public final class ScxScheduling {
         }
     }
 
+    /// 默认 Timer 使用的线程池 (可以从中读取 线程数 和 延迟 等指标), 总是与 [#defaultShardedTimer()] 返回的 Timer 对应
+    ///
+    /// @throws IllegalStateException 正在优雅地关闭默认 Timer (见 [#shutdownDefaultTimer(Duration, ScheduleRegistry)])
+    public static ElasticExecutor defaultExecutor() {
+        return executorOf(defaultShardedTimer());
+    }
+
+    /// 立即关闭默认 Timer, 不等待正在执行的子任务
     public static void shutdownDefaultTimer() {
+        ShardedTimer timer;
+        defaultTimerLock.lock();
+        try {
+            timer = defaultTimer;
+            defaultTimer = null;
+        } finally {
+            defaultTimerLock.unlock();
+        }
+        if (timer == null) {
+            return;
+        }
+        timer.shutdown();
+        // 等待 tick 线程退出之后 再关闭线程池, 否则正在分发的条目会被线程池拒绝 (tick 线程只做取消 和 关闭回调, 很快就会退出)
+        try {
+            timer.awaitTermination(TIMER_TERMINATION_TIMEOUT_MILLIS, MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executorOf(timer).shutdown();
+    }
+
+    /// 同 [#shutdownDefaultTimer(Duration, ScheduleRegistry)], 不提供 registry (报告中只有数量)
+    public static ShutdownReport shutdownDefaultTimer(Duration timeout) throws InterruptedException {
+        return shutdownDefaultTimer(timeout, null);
+    }
+
+    /// 优雅地关闭默认 Timer
+    ///
+    /// 1. 旧的 Timer 不再接受新的调度, 尚未到期的条目全部取消, 周期调度会在下一次提交时静默停止.
+    /// 2. 等待正在执行的子任务结束, 最多等待 timeout.
+    /// 3. 超时后 中断仍在执行的子任务 (包括 VIRTUAL_THREAD 模式的, 需要提供 registry), 丢弃已经到期但还没开始的.
+    ///
+    /// 关闭期间 [#defaultTimer()] 会抛出 IllegalStateException, 结束之后再使用默认 Timer 会重新创建一个新的.
+    ///
+    /// @param registry 可以为 null. 提供时 会取消其中使用默认 Timer 的调度 (使用其他 Timer 的不受影响),
+    ///                 等待 并在超时后中断 它们 VIRTUAL_THREAD 模式的子任务, 并在报告中列出具体的调度
+    public static ShutdownReport shutdownDefaultTimer(Duration timeout, ScheduleRegistry registry) throws InterruptedException {
+        if (timeout == null) {
+            throw new NullPointerException("timeout 不允许为空 !!!");
+        }
+        var deadlineNanos = System.nanoTime() + timeout.toNanos();
+        ShardedTimer timer;
         defaultTimerLock.lock();
         try {
-            if (defaultTimer != null) {
-                defaultScheduledExecutorService.shutdown();
-                defaultScheduledExecutorService = null;
-                defaultTimer = null;
+            timer = defaultTimer;
+            if (timer == null) {
+                return new ShutdownReport(true, 0, 0, 0, List.of(), List.of());
             }
+            defaultTimer = null;
+            defaultTimerDraining = true;
         } finally {
             defaultTimerLock.unlock();
         }
+        try {
+            return drain(timer, executorOf(timer), deadlineNanos, registry);
+        } finally {
+            defaultTimerLock.lock();
+            try {
+                defaultTimerDraining = false;
+            } finally {
+                defaultTimerLock.unlock();
+            }
+        }
+    }
+
+    private static ShutdownReport drain(ShardedTimer timer, ElasticExecutor executor, long deadlineNanos, ScheduleRegistry registry) throws InterruptedException {
+        // 0, 找出使用默认 Timer 的调度 (在关闭之前, 关闭时被拒绝的调度会立即从 registry 中移除)
+        List<ScheduleRegistry.Registration> abandonedSchedules = List.of();
+        if (registry != null) {
+            abandonedSchedules = new ArrayList<>();
+            for (var registration : registry.registrations()) {
+                if (registration.timer() == timer) {
+                    abandonedSchedules.add(registration);
+                }
+            }
+        }
+
+        // 1, 停止接受新的条目 并取消尚未到期的
+        var cancelledCount = timer.pendingCount();
+        timer.shutdown();
+        for (var registration : abandonedSchedules) {
+            var handle = registration.handle();
+            if (handle != null) {
+                handle.cancel();
+            }
+        }
+
+        // 2, 等待 tick 线程退出 (之后不会再有条目提交到线程池, 否则会被关闭的线程池拒绝), 再等待正在执行的子任务
+        timer.awaitTermination(Math.max(deadlineNanos - System.nanoTime(), 0), NANOSECONDS);
+        executor.shutdown();
+        var terminated = executor.awaitTermination(Math.max(deadlineNanos - System.nanoTime(), 0), NANOSECONDS);
+        // VIRTUAL_THREAD 模式的子任务不在线程池中
+        while (hasExecuting(abandonedSchedules) && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(Math.min(10, Math.max(NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()), 1)));
+        }
+
+        // 3, 超时了 (需要在中断之前 找出仍在执行的)
+        List<ScheduleRegistry.Registration> interruptedSchedules = List.of();
+        if (registry != null) {
+            interruptedSchedules = new ArrayList<>();
+            for (var registration : abandonedSchedules) {
+                if (registration.executing()) {
+                    interruptedSchedules.add(registration);
+                }
+            }
+            terminated = terminated && interruptedSchedules.isEmpty();
+        }
+        var abandonedCount = 0;
+        var interruptedCount = 0;
+        if (!terminated) {
+            interruptedCount = executor.getActiveCount();
+            abandonedCount = executor.shutdownNow().size();
+            for (var registration : interruptedSchedules) {
+                interruptedCount = interruptedCount + registration.interruptVirtualThreads();
+            }
+        }
+        return new ShutdownReport(terminated, cancelledCount, abandonedCount, interruptedCount, interruptedSchedules, abandonedSchedules);
+    }
+
+    private static ElasticExecutor executorOf(ShardedTimer timer) {
+        // 默认 Timer 总是使用 ElasticExecutor 创建 (见 defaultShardedTimer)
+        return (ElasticExecutor) timer.executor();
+    }
+
+    private static boolean hasExecuting(List<ScheduleRegistry.Registration> registrations) {
+        for (var registration : registrations) {
+            if (registration.executing()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// 全局默认的执行模式, 只影响之后创建的调度任务
+    public static ExecutionMode defaultExecutionMode() {
+        return defaultExecutionMode;
+    }
+
+    public static void defaultExecutionMode(ExecutionMode executionMode) {
+        if (executionMode == null) {
+            throw new NullPointerException("executionMode 不允许为空 !!!");
+        }
+        defaultExecutionMode = executionMode;
+    }
+
+    /// 全局默认的监听器, 只影响之后创建的调度任务
+    public static ScheduleListener defaultListener() {
+        return defaultListener;
+    }
+
+    /// @param listener null 表示不监听
+    public static void defaultListener(ScheduleListener listener) {
+        defaultListener = listener;
     }
 
     public static OneTimeScheduleTask oneTime() {
         return oneTime(defaultTimer());
     }
 
+    /// 批量的单次任务, 适合一次加载大量任务的场景
+    public static OneTimeBatchScheduleTask oneTimeBatch() {
+        return oneTimeBatch(defaultTimer());
+    }
+
     public static CronScheduleTask cron() {
         return cron(defaultTimer());
     }
@@ -72,6 +261,10 @@ public final class ScxScheduling {
         return new DefaultOneTimeScheduleTask(timer);
     }
 
+    public static OneTimeBatchScheduleTask oneTimeBatch(ScxTimer timer) {
+        return new DefaultOneTimeBatchScheduleTask(timer);
+    }
+
     public static CronScheduleTask cron(ScxTimer timer) {
         return new DefaultCronScheduleTask(timer);
     }
@@ -0,0 +1,21 @@
+package dev.scx.scheduling;
+
+import java.util.List;
+
+/// 关闭默认 Timer 的结果, 见 [ScxScheduling#shutdownDefaultTimer(java.time.Duration, ScheduleRegistry)]
+///
+/// @param terminated           是否在超时之前 所有正在执行的子任务都已经结束
+/// @param cancelledCount       被取消的 尚未到期的 timer 条目数量
+/// @param abandonedCount       已经到期 但还没开始执行 就被丢弃的数量
+/// @param interruptedCount     超时时仍在执行 (已被中断) 的数量
+/// @param interruptedSchedules 超时时仍在执行子任务的调度 (需要提供 registry)
+/// @param abandonedSchedules   因关闭而被取消的调度 (需要提供 registry)
+/// @author scx567888
+public record ShutdownReport(boolean terminated,
+                             long cancelledCount,
+                             int abandonedCount,
+                             int interruptedCount,
+                             List<ScheduleRegistry.Registration> interruptedSchedules,
+                             List<ScheduleRegistry.Registration> abandonedSchedules) {
+
+}
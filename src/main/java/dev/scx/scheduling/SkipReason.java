@@ -0,0 +1,17 @@
+package dev.scx.scheduling;
+
+/// 执行被跳过的原因
+///
+/// @author scx567888
+public enum SkipReason {
+
+    /// 已经过期 (启动时 或 运行时错过), 被 [ExpirationPolicy] 忽略 (或被合并为一次补偿执行)
+    EXPIRED,
+
+    /// 上一次执行还没结束, 被 [ConcurrencyPolicy#SKIP] 或 [ConcurrencyPolicy#QUEUE] 跳过
+    OVERLAP,
+
+    /// 上一次执行还没结束, 被 [ConcurrencyPolicy#COALESCE] 合并
+    COALESCED
+
+}
@@ -2,12 +2,31 @@ package dev.scx.scheduling;
 
 /// 任务上下文
 ///
+/// 注意 : TaskContext 只在子任务执行期间有效, 子任务结束后 同一个实例可能会被下一次执行复用.
+///
 /// @author scx567888
 public interface TaskContext {
 
     /// 当前运行次数 (快照)
     long currentRunCount();
 
+    /// 本次执行相对于理想调度时间点的偏差 (纳秒), 正数表示晚于理想时间点, 未知时返回 0.
+    /// - 周期任务的理想时间点 基于 System.nanoTime() 计算, 不受系统时间跳变影响
+    default long lagNanos() {
+        return 0;
+    }
+
+    /// 本次执行代表的执行次数, 普通执行为 1.
+    /// - 开启批量补偿 (batchCompensation) 时, 错过的多次执行会合并为一次, 这里返回合并的次数
+    default long batchSize() {
+        return 1;
+    }
+
+    /// 本次是第几次重试 (见 [RetryPolicy]), 首次执行为 0
+    default int retryCount() {
+        return 0;
+    }
+
     /// 调度 Handle
     ScheduleHandle scheduleHandle();
 
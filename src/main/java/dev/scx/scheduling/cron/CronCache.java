@@ -0,0 +1,169 @@
+package dev.scx.scheduling.cron;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/// CronCache
+///
+/// 编译后的 [CronExpression] 的缓存, 以 规范化后的表达式 (去除首尾空白, 合并连续空白, 转为大写) 作为 key.
+///
+/// - 命中时 不需要任何解析, 多个调度任务共享同一个 CronExpression 实例.
+/// - 容量有上限, 超出时 按 CLOCK (second chance) 算法淘汰 : 最近被访问过的条目会多保留一轮.
+/// - 线程安全, 命中路径无锁.
+///
+/// @author scx567888
+public final class CronCache {
+
+    /// 默认的最大容量
+    public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private static final CronCache SHARED = new CronCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final int maximumSize;
+    private final ConcurrentHashMap<String, Entry> entries;
+    // 淘汰队列 (按插入顺序)
+    private final ConcurrentLinkedQueue<Entry> evictionQueue;
+    private final AtomicInteger size;
+    private final LongAdder hitCount;
+    private final LongAdder missCount;
+    private final LongAdder evictionCount;
+
+    public CronCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize 必须大于 0 !!!");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new ConcurrentHashMap<>();
+        this.evictionQueue = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger(0);
+        this.hitCount = new LongAdder();
+        this.missCount = new LongAdder();
+        this.evictionCount = new LongAdder();
+    }
+
+    /// 全局共享的缓存, `cronExpression(String)` 默认使用它
+    public static CronCache shared() {
+        return SHARED;
+    }
+
+    /// 获取 (或解析并缓存) 编译后的 CronExpression
+    ///
+    /// @throws IllegalArgumentException 表达式不合法 (不合法的表达式不会被缓存)
+    public CronExpression get(String expression) throws IllegalArgumentException {
+        if (expression == null) {
+            throw new NullPointerException("expression 不允许为空 !!!");
+        }
+        var key = normalize(expression);
+        var entry = entries.get(key);
+        if (entry != null) {
+            hitCount.increment();
+            entry.touch();
+            return entry.value;
+        }
+        missCount.increment();
+        // 解析放在 map 之外, 并发未命中时 可能会重复解析, 但只有一个结果会被缓存
+        var newEntry = new Entry(key, CronExpression.parse(key));
+        var existing = entries.putIfAbsent(key, newEntry);
+        if (existing != null) {
+            existing.touch();
+            return existing.value;
+        }
+        evictionQueue.offer(newEntry);
+        if (size.incrementAndGet() > maximumSize) {
+            evict();
+        }
+        return newEntry.value;
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /// 清空缓存 (不会重置统计信息)
+    public void clear() {
+        Entry entry;
+        while ((entry = evictionQueue.poll()) != null) {
+            if (entries.remove(entry.key, entry)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    private void evict() {
+        while (size.get() > maximumSize) {
+            var entry = evictionQueue.poll();
+            if (entry == null) {
+                return;
+            }
+            // 最近被访问过 给一次机会 重新排到队尾
+            if (entry.referenced) {
+                entry.referenced = false;
+                evictionQueue.offer(entry);
+                continue;
+            }
+            if (entries.remove(entry.key, entry)) {
+                size.decrementAndGet();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /// 去除首尾空白, 合并连续空白为一个空格, 转为大写
+    static String normalize(String expression) {
+        var sb = new StringBuilder(expression.length());
+        var pendingSpace = false;
+        for (var i = 0; i < expression.length(); i = i + 1) {
+            var c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            sb.append(Character.toUpperCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final CronExpression value;
+        private volatile boolean referenced;
+
+        private Entry(String key, CronExpression value) {
+            this.key = key;
+            this.value = value;
+            this.referenced = false;
+        }
+
+        private void touch() {
+            // 先读后写, 避免热点条目上频繁的 volatile 写
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+
+    }
+
+}
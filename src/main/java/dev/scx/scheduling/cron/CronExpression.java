@@ -0,0 +1,529 @@
+package dev.scx.scheduling.cron;
+
+import com.cronutils.model.time.ExecutionTime;
+import com.cronutils.parser.CronParser;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.BitSet;
+
+import static com.cronutils.model.CronType.QUARTZ;
+import static com.cronutils.model.definition.CronDefinitionBuilder.instanceDefinitionFor;
+
+/// CronExpression
+///
+/// 编译后的 Cron 表达式 (QUARTZ 格式).
+///
+/// 表达式的每个字段会被编译为位集 (bitset), 计算下一次执行时间时 只使用 long 运算, 不会产生对象分配.
+/// 表达式的校验 仍然交给 cron-utils, 对于无法编译的写法 会回退到 cron-utils 的 ExecutionTime (兼容模式).
+///
+/// 关于夏令时 (与 cron-utils 一致) : 不存在的本地时间 (间隙) 会被跳过.
+/// 重复的本地时间 (重叠) 的两个时刻都会执行, 只有 时分秒 都是固定值的表达式 (如 `0 30 1 * * ?`) 只执行一次 (较早的那个时刻).
+///
+/// @author scx567888
+public final class CronExpression {
+
+    /// 没有下一次执行时间
+    public static final long NO_NEXT = Long.MIN_VALUE;
+
+    // 这里默认用 QUARTZ 的格式
+    private static final CronParser CRON_PARSER = new CronParser(instanceDefinitionFor(QUARTZ));
+
+    private static final String[] MONTH_NAMES = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+    private static final String[] DAY_OF_WEEK_NAMES = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+
+    /// QUARTZ 的年份范围 (即使表达式中没有年份字段, 也不会超过 MAX_YEAR)
+    private static final int MIN_YEAR = 1970;
+    private static final int MAX_YEAR = 2099;
+
+    private final String expression;
+
+    // 以下为编译结果 (fallback 不为 null 时 无效)
+    private long seconds;
+    private long minutes;
+    private long hours;
+    private long daysOfMonth;
+    private int months;
+    private int daysOfWeek;
+    private BitSet years;
+    private boolean anyDayOfMonth;
+    private boolean anyDayOfWeek;
+    // L 或 L-n, -1 表示未设置
+    private int lastDayOffset;
+    // LW
+    private boolean lastWeekday;
+    // nW, 0 表示未设置
+    private int nearestWeekday;
+    // xL, 0 表示未设置
+    private int lastDayOfWeek;
+    // x#n, 0 表示未设置
+    private int nthDayOfWeek;
+    private int nthDayOfWeekIndex;
+    // 时分秒 都是固定值 (每天只有一个时间点), 重叠时只执行较早的那个时刻
+    private boolean singleTime;
+
+    // 兼容模式
+    private final ExecutionTime fallback;
+
+    private CronExpression(String expression) {
+        this.expression = expression;
+        // 先交给 cron-utils 校验, 保证和之前的校验规则一致
+        var cron = CRON_PARSER.parse(expression);
+        ExecutionTime f = null;
+        try {
+            compile(expression.trim().toUpperCase().split("\\s+"));
+        } catch (NotCompilableException e) {
+            f = ExecutionTime.forCron(cron);
+        }
+        this.fallback = f;
+    }
+
+    public static CronExpression parse(String expression) throws IllegalArgumentException {
+        if (expression == null) {
+            throw new NullPointerException("expression 不允许为空 !!!");
+        }
+        return new CronExpression(expression);
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    /// 是否是编译模式 (false 表示使用 cron-utils 的兼容模式)
+    public boolean isCompiled() {
+        return fallback == null;
+    }
+
+    /// 计算 afterEpochSecond 之后 (不包括) 的下一次执行时间
+    ///
+    /// @return 下一次执行时间 (epochSecond), 没有则返回 [#NO_NEXT]
+    public long nextEpochSecond(long afterEpochSecond, ZoneId zone) {
+        if (fallback != null) {
+            var after = ZonedDateTime.ofInstant(Instant.ofEpochSecond(afterEpochSecond), zone);
+            var next = fallback.nextExecution(after).orElse(null);
+            return next != null ? next.toEpochSecond() : NO_NEXT;
+        }
+        var offsets = ZoneOffsetCache.of(zone);
+        if (singleTime) {
+            // 从 after 对应的本地时间开始查找 (after 位于重叠的第二遍时, 重复的本地时间已经在第一遍执行过, 会被跳过)
+            return nextEpochSecond(afterEpochSecond, afterEpochSecond + offsets.offsetAt(afterEpochSecond) + 1, offsets);
+        }
+        // 附近如果有时区转换 (如夏令时结束), 同一本地时间可能对应两个时刻,
+        // 所以需要分别以 转换前 和 转换后 的偏移量作为起点查找, 取较早的那个
+        var offsetBefore = offsets.offsetAt(afterEpochSecond - ZoneOffsetCache.MAX_OFFSET_SECONDS);
+        var offsetAfter = offsets.offsetAt(afterEpochSecond + ZoneOffsetCache.MAX_OFFSET_SECONDS);
+        var next = nextEpochSecond(afterEpochSecond, afterEpochSecond + offsetBefore + 1, offsets);
+        if (offsetAfter != offsetBefore) {
+            var next2 = nextEpochSecond(afterEpochSecond, afterEpochSecond + offsetAfter + 1, offsets);
+            if (next == NO_NEXT || next2 != NO_NEXT && next2 < next) {
+                next = next2;
+            }
+        }
+        return next;
+    }
+
+    private long nextEpochSecond(long afterEpochSecond, long localSecond, ZoneOffsetCache offsets) {
+        var local = localSecond;
+        while (true) {
+            local = nextLocalSecond(local);
+            if (local == NO_NEXT) {
+                return NO_NEXT;
+            }
+            var e = offsets.toEpochSecond(local, afterEpochSecond, singleTime);
+            if (e != NO_NEXT) {
+                return e;
+            }
+            // 本地时间不存在 (夏令时间隙) 或 早于 after 或 已经执行过 (夏令时重叠的第二遍), 继续向后查找
+            local = local + 1;
+        }
+    }
+
+    /// 计算大于等于 localSecond 的 第一个匹配的本地秒数 (以 1970-01-01T00:00:00 本地时间为 0)
+    private long nextLocalSecond(long localSecond) {
+        var days = Math.floorDiv(localSecond, 86400);
+        var secondOfDay = (int) Math.floorMod(localSecond, 86400);
+
+        // civil from days (Howard Hinnant 算法)
+        var z = days + 719468;
+        var era = Math.floorDiv(z, 146097);
+        var doe = z - era * 146097;
+        var yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        var doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        var mp = (5 * doy + 2) / 153;
+
+        var day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        var month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        var year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+        var hour = secondOfDay / 3600;
+        var minute = secondOfDay / 60 % 60;
+        var second = secondOfDay % 60;
+
+        while (year <= MAX_YEAR) {
+            // 1, 年
+            if (years != null) {
+                var y = years.nextSetBit(Math.max(year - MIN_YEAR, 0));
+                if (y < 0) {
+                    return NO_NEXT;
+                }
+                if (y + MIN_YEAR != year) {
+                    year = y + MIN_YEAR;
+                    month = 1;
+                    day = 1;
+                    hour = 0;
+                    minute = 0;
+                    second = 0;
+                }
+            }
+
+            // 2, 月
+            var m = nextBit(months, month);
+            if (m > 12) {
+                year = year + 1;
+                month = 1;
+                day = 1;
+                hour = 0;
+                minute = 0;
+                second = 0;
+                continue;
+            }
+            if (m != month) {
+                month = m;
+                day = 1;
+                hour = 0;
+                minute = 0;
+                second = 0;
+            }
+
+            // 3, 日
+            var daysInMonth = daysInMonth(year, month);
+            var d = day;
+            while (d <= daysInMonth && !dayMatches(year, month, d, daysInMonth)) {
+                d = d + 1;
+            }
+            if (d > daysInMonth) {
+                month = month + 1;
+                if (month > 12) {
+                    month = 1;
+                    year = year + 1;
+                }
+                day = 1;
+                hour = 0;
+                minute = 0;
+                second = 0;
+                continue;
+            }
+            if (d != day) {
+                day = d;
+                hour = 0;
+                minute = 0;
+                second = 0;
+            }
+
+            // 4, 时
+            var h = nextBit(hours, hour);
+            if (h > 23) {
+                day = day + 1;
+                hour = 0;
+                minute = 0;
+                second = 0;
+                if (day > daysInMonth) {
+                    day = 1;
+                    month = month + 1;
+                    if (month > 12) {
+                        month = 1;
+                        year = year + 1;
+                    }
+                }
+                continue;
+            }
+            if (h != hour) {
+                hour = h;
+                minute = 0;
+                second = 0;
+            }
+
+            // 5, 分
+            var mi = nextBit(minutes, minute);
+            if (mi > 59) {
+                // hour 可能变为 24, 交给下一轮循环的 "时" 处理进位
+                hour = hour + 1;
+                minute = 0;
+                second = 0;
+                continue;
+            }
+            if (mi != minute) {
+                minute = mi;
+                second = 0;
+            }
+
+            // 6, 秒
+            var s = nextBit(seconds, second);
+            if (s > 59) {
+                minute = minute + 1;
+                second = 0;
+                continue;
+            }
+            second = s;
+
+            return (daysFromCivil(year, month, day) * 86400) + hour * 3600L + minute * 60L + second;
+        }
+        return NO_NEXT;
+    }
+
+    private boolean dayMatches(int year, int month, int day, int daysInMonth) {
+        return (anyDayOfMonth || dayOfMonthMatches(year, month, day, daysInMonth)) &&
+            (anyDayOfWeek || dayOfWeekMatches(year, month, day, daysInMonth));
+    }
+
+    private boolean dayOfMonthMatches(int year, int month, int day, int daysInMonth) {
+        if ((daysOfMonth & (1L << day)) != 0) {
+            return true;
+        }
+        if (lastDayOffset >= 0 && day == daysInMonth - lastDayOffset) {
+            return true;
+        }
+        if (lastWeekday && day == lastWeekdayOf(year, month, daysInMonth)) {
+            return true;
+        }
+        return nearestWeekday != 0 && day == nearestWeekdayOf(year, month, nearestWeekday, daysInMonth);
+    }
+
+    private boolean dayOfWeekMatches(int year, int month, int day, int daysInMonth) {
+        var dayOfWeek = dayOfWeek(year, month, day);
+        if ((daysOfWeek & (1 << dayOfWeek)) != 0) {
+            return true;
+        }
+        if (lastDayOfWeek != 0 && dayOfWeek == lastDayOfWeek && day + 7 > daysInMonth) {
+            return true;
+        }
+        return nthDayOfWeek != 0 && dayOfWeek == nthDayOfWeek && (day - 1) / 7 + 1 == nthDayOfWeekIndex;
+    }
+
+    // ************* 编译 *************
+
+    private void compile(String[] fields) {
+        if (fields.length != 6 && fields.length != 7) {
+            throw new NotCompilableException();
+        }
+        this.seconds = parseBits(fields[0], 0, 59, null);
+        this.minutes = parseBits(fields[1], 0, 59, null);
+        this.hours = parseBits(fields[2], 0, 23, null);
+        this.singleTime = Long.bitCount(seconds) == 1 && Long.bitCount(minutes) == 1 && Long.bitCount(hours) == 1;
+        compileDayOfMonth(fields[3]);
+        this.months = (int) parseBits(fields[4], 1, 12, MONTH_NAMES);
+        compileDayOfWeek(fields[5]);
+        if (fields.length == 7 && !"*".equals(fields[6])) {
+            var bits = new BitSet();
+            for (var part : fields[6].split(",")) {
+                var range = parseRange(part, MIN_YEAR, MAX_YEAR, null);
+                for (var y = range[0]; y <= range[1]; y = y + range[2]) {
+                    bits.set(y - MIN_YEAR);
+                }
+            }
+            this.years = bits;
+        } else {
+            this.years = null;
+        }
+    }
+
+    private void compileDayOfMonth(String field) {
+        this.lastDayOffset = -1;
+        if ("?".equals(field)) {
+            this.anyDayOfMonth = true;
+            return;
+        }
+        if ("*".equals(field)) {
+            this.anyDayOfMonth = true;
+            return;
+        }
+        var bits = 0L;
+        // 每种特殊写法只能保存一个, 所以只允许出现一个 (多个时 交给兼容模式)
+        var specialCount = 0;
+        for (var part : field.split(",")) {
+            if ("L".equals(part)) {
+                lastDayOffset = 0;
+                specialCount = specialCount + 1;
+            } else if (part.startsWith("L-")) {
+                lastDayOffset = parseNumber(part.substring(2), 0, 30, null);
+                specialCount = specialCount + 1;
+            } else if ("LW".equals(part)) {
+                lastWeekday = true;
+                specialCount = specialCount + 1;
+            } else if (part.endsWith("W")) {
+                nearestWeekday = parseNumber(part.substring(0, part.length() - 1), 1, 31, null);
+                specialCount = specialCount + 1;
+            } else {
+                bits = bits | parseBits(part, 1, 31, null);
+            }
+        }
+        if (specialCount > 1) {
+            throw new NotCompilableException();
+        }
+        this.daysOfMonth = bits;
+    }
+
+    private void compileDayOfWeek(String field) {
+        if ("?".equals(field)) {
+            this.anyDayOfWeek = true;
+            return;
+        }
+        if ("*".equals(field)) {
+            this.anyDayOfWeek = true;
+            return;
+        }
+        var bits = 0L;
+        // 每种特殊写法只能保存一个, 所以只允许出现一个 (多个时 如 2#1,4#3 交给兼容模式)
+        var specialCount = 0;
+        for (var part : field.split(",")) {
+            var hashIndex = part.indexOf('#');
+            if (hashIndex != -1) {
+                nthDayOfWeek = parseNumber(part.substring(0, hashIndex), 1, 7, DAY_OF_WEEK_NAMES);
+                nthDayOfWeekIndex = parseNumber(part.substring(hashIndex + 1), 1, 5, null);
+                specialCount = specialCount + 1;
+            } else if (part.length() > 1 && part.endsWith("L")) {
+                lastDayOfWeek = parseNumber(part.substring(0, part.length() - 1), 1, 7, DAY_OF_WEEK_NAMES);
+                specialCount = specialCount + 1;
+            } else {
+                bits = bits | parseBits(part, 1, 7, DAY_OF_WEEK_NAMES);
+            }
+        }
+        if (specialCount > 1) {
+            throw new NotCompilableException();
+        }
+        this.daysOfWeek = (int) bits;
+    }
+
+    /// 解析 逗号分隔的列表 (支持 *, a, a-b, a/n, a-b/n, * /n)
+    private static long parseBits(String field, int min, int max, String[] names) {
+        var bits = 0L;
+        for (var part : field.split(",")) {
+            var range = parseRange(part, min, max, names);
+            for (var i = range[0]; i <= range[1]; i = i + range[2]) {
+                bits = bits | (1L << i);
+            }
+        }
+        return bits;
+    }
+
+    /// 返回 [起始, 结束, 步长]
+    private static int[] parseRange(String part, int min, int max, String[] names) {
+        var step = 1;
+        var slashIndex = part.indexOf('/');
+        if (slashIndex != -1) {
+            step = parseNumber(part.substring(slashIndex + 1), 1, max - min + 1, null);
+            part = part.substring(0, slashIndex);
+        }
+        if ("*".equals(part) || "?".equals(part)) {
+            return new int[]{min, max, step};
+        }
+        var dashIndex = part.indexOf('-');
+        if (dashIndex != -1) {
+            var from = parseNumber(part.substring(0, dashIndex), min, max, names);
+            var to = parseNumber(part.substring(dashIndex + 1), min, max, names);
+            // 跨越边界的范围 (如 FRI-MON) 交给兼容模式
+            if (from > to) {
+                throw new NotCompilableException();
+            }
+            return new int[]{from, to, step};
+        }
+        var value = parseNumber(part, min, max, names);
+        // a/n 表示从 a 开始 到最大值
+        return new int[]{value, slashIndex != -1 ? max : value, step};
+    }
+
+    private static int parseNumber(String str, int min, int max, String[] names) {
+        if (names != null) {
+            for (var i = 0; i < names.length; i = i + 1) {
+                if (names[i].equals(str)) {
+                    return i + 1;
+                }
+            }
+        }
+        int value;
+        try {
+            value = Integer.parseInt(str);
+        } catch (NumberFormatException e) {
+            throw new NotCompilableException();
+        }
+        if (value < min || value > max) {
+            throw new NotCompilableException();
+        }
+        return value;
+    }
+
+    // ************* 日期运算 (全部为 long / int 运算) *************
+
+    private static int nextBit(long bits, int from) {
+        if (from > 63) {
+            return 64;
+        }
+        return Long.numberOfTrailingZeros(bits & (-1L << from));
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        var y = month <= 2 ? year - 1 : year;
+        var era = Math.floorDiv(y, 400);
+        var yoe = y - era * 400;
+        var doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        var doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /// 1 = 周日 ... 7 = 周六 (QUARTZ)
+    private static int dayOfWeek(int year, int month, int day) {
+        // 1970-01-01 是周四
+        return (int) Math.floorMod(daysFromCivil(year, month, day) + 4, 7) + 1;
+    }
+
+    private static boolean isWeekday(int dayOfWeek) {
+        return dayOfWeek != 1 && dayOfWeek != 7;
+    }
+
+    private static int lastWeekdayOf(int year, int month, int daysInMonth) {
+        var d = daysInMonth;
+        while (!isWeekday(dayOfWeek(year, month, d))) {
+            d = d - 1;
+        }
+        return d;
+    }
+
+    /// 距离 day 最近的工作日 (不会跨月), 当月没有这一天时返回 -1 (与 Quartz 一致, 跳过该月)
+    private static int nearestWeekdayOf(int year, int month, int day, int daysInMonth) {
+        if (day > daysInMonth) {
+            return -1;
+        }
+        var dayOfWeek = dayOfWeek(year, month, day);
+        if (dayOfWeek == 7) {
+            // 周六 -> 周五, 如果是 1 号 则 -> 周一 (3 号)
+            return day > 1 ? day - 1 : day + 2;
+        }
+        if (dayOfWeek == 1) {
+            // 周日 -> 周一, 如果是月末 则 -> 周五
+            return day < daysInMonth ? day + 1 : day - 2;
+        }
+        return day;
+    }
+
+    /// 编译时遇到无法编译的写法, 交给兼容模式 (只在内部使用, 不需要堆栈)
+    private static final class NotCompilableException extends RuntimeException {
+
+        NotCompilableException() {
+            super(null, null, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,227 @@
+package dev.scx.scheduling.cron;
+
+import dev.scx.scheduling.timer.ShardedTimer;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+import dev.scx.timer.TaskStatus;
+
+import java.time.ZoneId;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static dev.scx.scheduling.cron.CronExpression.NO_NEXT;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/// CronGroup
+///
+/// 合并调度 : 使用 同一个 timer, 同一个表达式, 同一个时区 的 cron 调度 (开启了 coalesce) 共享一个 timer 条目
+/// 和一次下一次执行时间的计算, 到期时再分发给各个成员.
+///
+/// - 成员的 runCount, maxRunCount 和 取消 仍然由成员自己维护.
+/// - 到期时 没有偏移的成员直接交给 timer 的 executor 分发 (不再为每个成员插入 timer 条目), 只有 timer 不提供 executor 时 才经过 timer.
+/// - 成员取消或达到最大次数后 会立即离开组, 最后一个成员离开时 组会取消自己的 timer 条目并被移除.
+/// - 组因为其他原因关闭时 (没有下一次执行时间, timer 已经关闭) 会结束所有成员 (完成 或 取消, 与未合并时一致).
+/// - 组的生命周期跟随 timer : [TimingWheelTimer] 和 [ShardedTimer] 关闭时 组会立即关闭,
+///   其他 timer 则在 加入 或 查询成员状态时 发现 timer 已经取消了组的条目 再关闭.
+///
+/// @author scx567888
+final class CronGroup {
+
+    private static final ConcurrentHashMap<Key, CronGroup> GROUPS = new ConcurrentHashMap<>();
+
+    private final Key key;
+    private final CronExpression cronExpression;
+    private final Set<DefaultCronScheduleTask> members;
+    private final Runnable fireTask;
+    private final Runnable shutdownHook;
+    // timer 实际执行任务的线程池, 其他 timer 为 null
+    private final Executor executor;
+
+    // 以下时间均为 epochSecond, NO_NEXT 表示没有
+    private volatile long nextExecutionTime;
+
+    // 以下字段由 this 保护
+    private TaskHandle taskHandle;
+    private boolean closed;
+    // 关闭的原因 : 最后一个成员离开 / 没有下一次执行时间 / timer 已经关闭
+    private boolean abandoned;
+    private boolean exhausted;
+
+    private CronGroup(Key key, CronExpression cronExpression) {
+        this.key = key;
+        this.cronExpression = cronExpression;
+        this.members = ConcurrentHashMap.newKeySet();
+        this.fireTask = this::fire;
+        this.shutdownHook = this::onTimerShutdown;
+        this.executor = switch (key.timer()) {
+            case TimingWheelTimer t -> t.executor();
+            case ShardedTimer t -> t.executor();
+            default -> null;
+        };
+        this.nextExecutionTime = NO_NEXT;
+        this.taskHandle = null;
+        this.closed = false;
+        this.abandoned = false;
+        this.exhausted = false;
+    }
+
+    /// 加入 (或创建) 对应的组
+    static CronGroup join(ScxTimer timer, CronExpression cronExpression, ZoneId zone, DefaultCronScheduleTask member) {
+        var key = new Key(timer, cronExpression.expression(), zone);
+        while (true) {
+            var created = new CronGroup[1];
+            var group = GROUPS.computeIfAbsent(key, k -> created[0] = new CronGroup(k, cronExpression));
+            if (group == created[0]) {
+                group.watchTimer();
+            }
+            if (group.add(member)) {
+                return group;
+            }
+            // 最后一个成员恰好离开了, 重试
+        }
+    }
+
+    /// 检查 timer 是否已经取消了组的条目 (timer 被关闭), 是则关闭组. 返回组是否仍然有效
+    boolean checkTimer() {
+        var handle = taskHandle;
+        if (handle == null || handle.status() != TaskStatus.CANCELLED) {
+            return !closed;
+        }
+        synchronized (this) {
+            // 组自己取消条目时 closed 已经是 true
+            if (!closed) {
+                close(false);
+            }
+        }
+        return false;
+    }
+
+    long nextExecutionTime() {
+        return nextExecutionTime;
+    }
+
+    /// timer 实际执行任务的线程池, timer 不提供时为 null
+    Executor executor() {
+        return executor;
+    }
+
+    /// 返回 false 表示组已经因为最后一个成员离开而关闭 (需要重试)
+    private synchronized boolean add(DefaultCronScheduleTask member) {
+        // 第一个成员负责启动调度
+        if (!closed && taskHandle == null) {
+            scheduleNext(Math.floorDiv(System.currentTimeMillis(), 1000));
+        }
+        if (!closed) {
+            checkTimer();
+        }
+        if (closed) {
+            if (abandoned) {
+                return false;
+            }
+            // 没有下一次执行时间 或 timer 已经关闭, 成员直接结束
+            member.groupClosed(exhausted);
+            return true;
+        }
+        // 成员只会从加入之后的下一次执行开始
+        member.firstGroupExecutionTime = nextExecutionTime;
+        member.group = this;
+        members.add(member);
+        return true;
+    }
+
+    synchronized void leave(DefaultCronScheduleTask member) {
+        if (members.remove(member) && members.isEmpty() && !closed) {
+            abandoned = true;
+            close(true);
+        }
+    }
+
+    /// 关闭组, 并结束剩余的成员
+    ///
+    /// @param exhausted true 表示没有下一次执行时间了 (成员视为完成), false 表示 timer 已经关闭 (成员视为取消)
+    private void close(boolean exhausted) {
+        this.closed = true;
+        this.exhausted = exhausted;
+        if (taskHandle != null) {
+            taskHandle.cancel();
+        }
+        nextExecutionTime = NO_NEXT;
+        GROUPS.remove(key, this);
+        unwatchTimer();
+        for (var member : members) {
+            member.groupClosed(exhausted);
+        }
+        members.clear();
+    }
+
+    private void onTimerShutdown() {
+        synchronized (this) {
+            if (!closed) {
+                close(false);
+            }
+        }
+    }
+
+    /// timer 支持关闭回调时 让组跟随 timer 一起关闭, 避免 timer 关闭后 组一直留在 GROUPS 中
+    private void watchTimer() {
+        switch (timer()) {
+            case TimingWheelTimer t -> t.onShutdown(shutdownHook);
+            case ShardedTimer t -> t.onShutdown(shutdownHook);
+            default -> {
+                // 其他 timer 由 checkTimer 检测
+            }
+        }
+    }
+
+    private void unwatchTimer() {
+        switch (timer()) {
+            case TimingWheelTimer t -> t.removeShutdownHook(shutdownHook);
+            case ShardedTimer t -> t.removeShutdownHook(shutdownHook);
+            default -> {
+            }
+        }
+    }
+
+    private void scheduleNext(long after) {
+        var nowMillis = System.currentTimeMillis();
+        nextExecutionTime = cronExpression.nextEpochSecond(after, key.zone());
+        if (nextExecutionTime == NO_NEXT) {
+            // 没有下一次执行时间 组也就没有存在的意义了
+            close(true);
+            return;
+        }
+        var startDelayNanos = (nextExecutionTime * 1000 - nowMillis) * 1_000_000;
+        try {
+            taskHandle = timer().runAfter(fireTask, startDelayNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // timer 已经关闭
+            close(false);
+        }
+    }
+
+    private void fire() {
+        long executionTime;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            executionTime = nextExecutionTime;
+            scheduleNext(executionTime);
+        }
+        for (var member : members) {
+            member.runGrouped(executionTime);
+        }
+    }
+
+    private ScxTimer timer() {
+        return key.timer();
+    }
+
+    private record Key(ScxTimer timer, String expression, ZoneId zone) {
+
+    }
+
+}
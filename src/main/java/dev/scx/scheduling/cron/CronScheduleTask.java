@@ -1,14 +1,54 @@
 package dev.scx.scheduling.cron;
 
+import dev.scx.scheduling.ConcurrencyPolicy;
+import dev.scx.scheduling.ExpirationPolicy;
+import dev.scx.scheduling.ScheduleCalendar;
 import dev.scx.scheduling.ScheduleTask;
 
+import java.time.Duration;
+
 /// CronScheduleTask
 ///
 /// @author scx567888
 public interface CronScheduleTask extends ScheduleTask<CronScheduleTask> {
 
+    /// 表达式会经过 [CronCache#shared()] 缓存, 相同的表达式只会解析一次
     CronScheduleTask cronExpression(String cronExpression) throws IllegalArgumentException;
 
+    /// 直接使用已编译的表达式
+    CronScheduleTask cronExpression(CronExpression cronExpression);
+
     CronScheduleTask maxRunCount(long maxRunCount);
 
+    /// 是否开启合并调度 (默认 false).
+    /// 开启后 使用同一个 timer 和同一个表达式的调度 会共享一个 timer 条目 和 下一次执行时间的计算, 到期时再分发给各个调度.
+    /// 适合大量调度使用相同表达式的场景.
+    CronScheduleTask coalesce(boolean coalesce);
+
+    /// 运行时错过时的过期策略 (默认 BACKTRACKING_COMPENSATION, 即依次执行错过的每一次), 需要同时设置 misfireThreshold.
+    /// - IMMEDIATE_IGNORE : 跳过所有已经到期的, 不计入执行次数
+    /// - BACKTRACKING_IGNORE : 跳过所有已经到期的, 计入执行次数
+    /// - IMMEDIATE_COMPENSATION : 已经到期的合并为一次 (以最后一个到期的时间点执行)
+    /// - BACKTRACKING_COMPENSATION : 依次执行错过的每一次
+    CronScheduleTask expirationPolicy(ExpirationPolicy expirationPolicy);
+
+    /// 运行时错过的阈值 (默认 null, 表示不检测)
+    CronScheduleTask misfireThreshold(Duration misfireThreshold);
+
+    /// 偏移 (默认不偏移) : 所有执行都推迟一个由 key 的哈希值决定的固定偏移量 (在 [0, window) 之间, 精确到毫秒), 用于分散同时到期的大量调度.
+    /// nextRunTime 同样包含偏移.
+    CronScheduleTask splay(Duration window, String key);
+
+    /// 日历 (默认 null, 表示不限制) : 被排除的时间点直接跳到下一个允许的执行时间, 不会唤醒 timer, 也不计入 runCount.
+    /// 设置了日历的调度 不参与合并调度 (coalesce).
+    CronScheduleTask calendar(ScheduleCalendar calendar);
+
+    /// 并发策略 (默认 ALLOW), QUEUE 时最多排队 1 次
+    CronScheduleTask concurrencyPolicy(ConcurrencyPolicy concurrencyPolicy);
+
+    /// 并发策略 (默认 ALLOW)
+    ///
+    /// @param maxQueuedRuns 最多排队的次数 (只对 QUEUE 有效)
+    CronScheduleTask concurrencyPolicy(ConcurrencyPolicy concurrencyPolicy, int maxQueuedRuns);
+
 }
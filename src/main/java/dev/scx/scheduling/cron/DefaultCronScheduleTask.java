@@ -1,69 +1,91 @@
 package dev.scx.scheduling.cron;
 
-import com.cronutils.model.time.ExecutionTime;
-import com.cronutils.parser.CronParser;
-import dev.scx.function.Function1Void;
+import dev.scx.scheduling.AbstractScheduleTask;
+import dev.scx.scheduling.ExpirationPolicy;
 import dev.scx.scheduling.ScheduleHandle;
 import dev.scx.scheduling.ScheduleStatus;
-import dev.scx.scheduling.TaskContext;
 import dev.scx.timer.ScxTimer;
 
-import java.lang.System.Logger;
-import java.time.Duration;
 import java.time.Instant;
-import java.time.ZonedDateTime;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Consumer;
+import java.util.stream.Stream;
 
-import static com.cronutils.model.CronType.QUARTZ;
-import static com.cronutils.model.definition.CronDefinitionBuilder.instanceDefinitionFor;
+import static dev.scx.scheduling.ExecutionMode.VIRTUAL_THREAD;
+import static dev.scx.scheduling.ExpirationPolicy.*;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
+import static dev.scx.scheduling.cron.CronExpression.NO_NEXT;
 import static dev.scx.scheduling.ScheduleStatus.*;
-import static java.lang.System.Logger.Level.ERROR;
-import static java.lang.System.getLogger;
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /// DefaultCronScheduleTask
 ///
 /// @author scx567888
-public final class DefaultCronScheduleTask implements CronScheduleTask {
+public final class DefaultCronScheduleTask extends AbstractScheduleTask<CronScheduleTask> implements CronScheduleTask {
 
-    private static final Logger LOGGER = getLogger(DefaultCronScheduleTask.class.getName());
-
-    // 这里默认用 QUARTZ 的格式
-    private static final CronParser CRON_PARSER = new CronParser(instanceDefinitionFor(QUARTZ));
-
-    private final ScxTimer timer;
+    /// 按照日历查找下一个执行时间时 最多跳跃的次数 (超过视为没有)
+    private static final int MAX_CALENDAR_JUMPS = 1000;
 
     private final AtomicLong runCount;
-    private final AtomicBoolean cancel;
+    private final Runnable nextTask;
+    // 合并调度时 分发到各自线程的 Runnable (复用, 见 runGrouped)
+    private final Runnable groupedTask;
 
-    private ExecutionTime cronExecutionTime;
+    private CronExpression cronExpression;
     private long maxRunCount;
-    private Function1Void<TaskContext, ?> task;
-    private Consumer<Throwable> errorHandler;
-
-    private ScheduleHandle scheduleHandle;
-    private ZonedDateTime nextExecutionTime;
+    private boolean coalesce;
+    private ExpirationPolicy expirationPolicy;
+
+    private ZoneId zone;
+    // 合并调度时 所在的组 (由 CronGroup 设置, 未开启合并调度时为 null)
+    volatile CronGroup group;
+    // 以下时间均为 epochSecond, NO_NEXT 表示没有
+    private volatile long nextExecutionTime;
+    private volatile long currentExecutionTime;
+    // 合并调度时 加入组之后的第一次执行时间 (由 CronGroup 设置)
+    volatile long firstGroupExecutionTime;
+    // 合并调度时 等待 groupedTask 执行的 runCount, 0 表示没有
+    private volatile long groupedRunCount;
+    // BACKTRACKING_COMPENSATION 时 正在依次执行的错过的最后一个时间点 (在此之前不再重复检测)
+    private long catchUpUntil;
+    // nextRunTime(count) 上一次计算到的位置, 起点相同 且 count 不小于上一次时 从这里继续
+    private volatile Lookahead lookahead;
 
     public DefaultCronScheduleTask(ScxTimer timer) {
-        if (timer == null) {
-            throw new NullPointerException("timer 不允许为空 !!!");
-        }
-        this.timer = timer;
+        super(timer);
         this.runCount = new AtomicLong(0);
-        this.cancel = new AtomicBoolean(false);
-        this.cronExecutionTime = null;
+        // 复用同一个 Runnable, 避免每次调度都创建新的方法引用
+        this.nextTask = this::runTask;
+        this.groupedTask = this::runGroupedTask;
+        this.cronExpression = null;
         this.maxRunCount = -1;
-        this.task = null;
-        this.errorHandler = null;
-        this.scheduleHandle = null;
+        this.coalesce = false;
+        this.expirationPolicy = BACKTRACKING_COMPENSATION;
+        this.zone = null;
+        this.group = null;
+        this.nextExecutionTime = NO_NEXT;
+        this.currentExecutionTime = NO_NEXT;
+        this.firstGroupExecutionTime = NO_NEXT;
+        this.groupedRunCount = 0;
+        this.catchUpUntil = NO_NEXT;
+        this.lookahead = null;
     }
 
     @Override
     public CronScheduleTask cronExpression(String cronExpression) throws IllegalArgumentException {
-        var cron = CRON_PARSER.parse(cronExpression);
-        this.cronExecutionTime = ExecutionTime.forCron(cron);
+        this.cronExpression = CronCache.shared().get(cronExpression);
+        return this;
+    }
+
+    @Override
+    public CronScheduleTask cronExpression(CronExpression cronExpression) {
+        if (cronExpression == null) {
+            throw new NullPointerException("cronExpression 不允许为空 !!!");
+        }
+        this.cronExpression = cronExpression;
         return this;
     }
 
@@ -74,29 +96,32 @@ public final class DefaultCronScheduleTask implements CronScheduleTask {
     }
 
     @Override
-    public CronScheduleTask task(Function1Void<TaskContext, ?> task) {
-        this.task = task;
+    public CronScheduleTask coalesce(boolean coalesce) {
+        this.coalesce = coalesce;
         return this;
     }
 
     @Override
-    public CronScheduleTask onError(Consumer<Throwable> errorHandler) {
-        this.errorHandler = errorHandler;
+    public CronScheduleTask expirationPolicy(ExpirationPolicy expirationPolicy) {
+        if (expirationPolicy == null) {
+            throw new NullPointerException("expirationPolicy 不允许为空 !!!");
+        }
+        this.expirationPolicy = expirationPolicy;
         return this;
     }
 
     @Override
-    public ScheduleHandle start() {
+    protected ScheduleHandle doStart() {
         // 0, 检查 参数
-        if (task == null) {
+        if (task == null && asyncTask == null) {
             throw new IllegalStateException("task 未设置 !!!");
         }
-        if (cronExecutionTime == null) {
+        if (cronExpression == null) {
             throw new IllegalStateException("cronExecution 未设置 !!!");
         }
 
-        // 开启调度
-        scheduleNext();
+        // 使用系统默认时区
+        this.zone = ZoneId.systemDefault();
 
         // 创建 ScheduleHandle
         this.scheduleHandle = new ScheduleHandle() {
@@ -108,29 +133,74 @@ public final class DefaultCronScheduleTask implements CronScheduleTask {
 
             @Override
             public Instant nextRunTime() {
-                return nextExecutionTime != null ? nextExecutionTime.toInstant() : null;
+                var nextTime = nextExecutionTime();
+                return nextTime != NO_NEXT ? Instant.ofEpochMilli(fireMillisOf(nextTime)) : null;
             }
 
             @Override
             public Instant nextRunTime(int count) {
-                ZonedDateTime nextTime = nextExecutionTime;
-                for (int i = 0; i < count; i = i + 1) {
-                    nextTime = cronExecutionTime.nextExecution(nextTime).orElse(null);
+                var baseTime = nextExecutionTime();
+                var nextTime = baseTime;
+                var i = 0;
+                // 依次查询 nextRunTime(1), nextRunTime(2) ... 时 每次只需要计算一步
+                var last = lookahead;
+                if (last != null && last.baseTime == baseTime && last.count <= count) {
+                    nextTime = last.time;
+                    i = last.count;
                 }
-                return nextTime != null ? nextTime.toInstant() : null;
+                while (i < count && nextTime != NO_NEXT) {
+                    nextTime = nextTime(nextTime);
+                    i = i + 1;
+                }
+                if (baseTime != NO_NEXT) {
+                    lookahead = new Lookahead(baseTime, i, nextTime);
+                }
+                return nextTime != NO_NEXT ? Instant.ofEpochMilli(fireMillisOf(nextTime)) : null;
+            }
+
+            @Override
+            public Iterator<Instant> nextRunTimes() {
+                var nextTime = nextExecutionTime();
+                return nextTime != NO_NEXT ? runTimes(nextTime).iterator() : Collections.emptyIterator();
+            }
+
+            @Override
+            public Stream<Instant> runTimesBetween(Instant from, Instant to) {
+                var nextTime = nextExecutionTime();
+                if (nextTime == NO_NEXT) {
+                    return Stream.empty();
+                }
+                // 有次数限制时 需要从下一次开始计数
+                if (maxRunCount != -1) {
+                    return ScheduleHandle.super.runTimesBetween(from, to);
+                }
+                // 直接从 from 开始计算, 不需要逐个跳过
+                var fromSecond = Math.ceilDiv(from.toEpochMilli() - splayNanos / 1_000_000, 1000);
+                var seed = fromSecond > nextTime ? nextTime(fromSecond - 1) : nextTime;
+                return seed != NO_NEXT ? runTimes(seed).takeWhile(t -> t.isBefore(to)) : Stream.empty();
             }
 
             @Override
             public void cancel() {
-                cancel.set(true);
+                cancelSchedule();
+                // 合并调度时 立即离开组
+                var group = DefaultCronScheduleTask.this.group;
+                if (group != null) {
+                    group.leave(DefaultCronScheduleTask.this);
+                }
             }
 
             @Override
             public ScheduleStatus status() {
-                if (cancel.get()) {
+                // 合并调度时 组的 timer 可能已经被关闭了
+                var group = DefaultCronScheduleTask.this.group;
+                if (group != null) {
+                    group.checkTimer();
+                }
+                if (isCancelled()) {
                     return CANCELLED;
                 }
-                if (maxRunCount != -1 && runCount.get() >= maxRunCount) {
+                if (isExhausted() || maxRunCount != -1 && runCount.get() >= maxRunCount) {
                     return DONE;
                 }
                 return RUNNING;
@@ -138,71 +208,298 @@ public final class DefaultCronScheduleTask implements CronScheduleTask {
 
         };
 
+        // 开启调度 (设置了日历的 各自计算执行时间, 不参与合并)
+        if (coalesce && calendar == null) {
+            CronGroup.join(timer, cronExpression, zone, this);
+        } else {
+            scheduleNext();
+        }
+
         return scheduleHandle;
     }
 
+    private long nextExecutionTime() {
+        // 已经取消 或者 已经完成的 没有下一次执行时间
+        if (scheduleHandle.status() != RUNNING) {
+            return NO_NEXT;
+        }
+        // 合并调度时 使用组的下一次执行时间
+        var group = this.group;
+        return group != null ? group.nextExecutionTime() : nextExecutionTime;
+    }
+
     private void scheduleNext() {
 
-        var now = ZonedDateTime.now();
+        var nowMillis = System.currentTimeMillis();
 
-        if (nextExecutionTime == null) {
-            nextExecutionTime = now;
-        }
+        // 首次以当前时间为基准 (减去偏移, 偏移后仍未到的也算), 之后以上一次的执行时间为基准
+        var after = nextExecutionTime != NO_NEXT ? nextExecutionTime : latestDueSecond(nowMillis);
 
-        nextExecutionTime = cronExecutionTime.nextExecution(nextExecutionTime).orElse(null);
+        nextExecutionTime = nextTime(after);
 
-        if (nextExecutionTime == null) {
+        if (nextExecutionTime == NO_NEXT) {
             // 没有下一次执行时间，停止调度 这种情况很难发生
+            markExhausted();
             return;
         }
 
-        var startDelayNanos = Duration.between(now, nextExecutionTime).toNanos();
+        var startDelayNanos = (fireMillisOf(nextExecutionTime) - nowMillis) * 1_000_000;
 
-        // 此处我们不使用返回的 TaskHandle 来控制取消.
-        timer.runAfter(this::runTask, startDelayNanos, NANOSECONDS);
+        schedule(nextTask, startDelayNanos);
 
     }
 
-    // 此处使用 cancel 标记来实现取消. 而不是真正使用 TaskHandle 取消任务.
-    // 也就是说即使用户调用取消, 后续也会触发一次回调(但会在回调开头被拦截)
-    // 采用这种方式的原因是, 保存 TaskHandle 的复杂度要比使用 cancel 标记的复杂度更高, 而且多余的这一次回调开销也很小(几乎可以忽略).
     private void runTask() {
+        // 运行时检测是否错过
+        if (misfireThresholdNanos != -1 && handleMisfire()) {
+            return;
+        }
+
         var l = runCount.incrementAndGet();
         // 已经取消了 或者 达到了最大次数
-        if (cancel.get() || maxRunCount != -1 && l > maxRunCount) {
+        if (isCancelled() || maxRunCount != -1 && l > maxRunCount) {
             return;
         }
 
-        // 递归调用下一次
-        scheduleNext();
+        // 记录本次的理想执行时间 用于计算 lagNanos
+        currentExecutionTime = nextExecutionTime;
 
-        try {
-            task.apply(new TaskContext() {
+        // 递归调用下一次 (最后一次执行 无需再调度)
+        if (maxRunCount == -1 || l < maxRunCount) {
+            scheduleNext();
+        }
 
-                @Override
-                public long currentRunCount() {
-                    return l;
-                }
+        dispatch(l);
 
-                @Override
-                public ScheduleHandle scheduleHandle() {
-                    // 这里有可能是 null, 假设 startDelay 为 0 时 有可能先调用 runTask 然后才有返回值
-                    return scheduleHandle;
+    }
+
+    /// 按照过期策略处理运行时的错过, 返回 true 表示本次不再执行 (下一次的调度也已经处理)
+    private boolean handleMisfire() {
+        var nowMillis = System.currentTimeMillis();
+        var lagNanos = (nowMillis - fireMillisOf(nextExecutionTime)) * 1_000_000;
+        // 正在依次执行之前检测到的错过
+        if (!isMisfire(lagNanos) || nextExecutionTime <= catchUpUntil) {
+            return false;
+        }
+        // 找到最后一个已经到期的时间点 并计算 除了本次之外 还错过了多少次
+        var nowSecond = latestDueSecond(nowMillis);
+        var last = nextExecutionTime;
+        var missCount = 0L;
+        while (true) {
+            var t = nextTime(last);
+            if (t == NO_NEXT || t > nowSecond) {
+                break;
+            }
+            last = t;
+            missCount = missCount + 1;
+        }
+        notifyMisfire(lagNanos, missCount + 1);
+        switch (expirationPolicy) {
+            case IMMEDIATE_IGNORE -> {
+                notifySkipped(missCount + 1, EXPIRED);
+                nextExecutionTime = last;
+                scheduleNext();
+                return true;
+            }
+            case BACKTRACKING_IGNORE -> {
+                // 跳过的计入次数 (不能超过最大次数)
+                var current = runCount.get();
+                var skipCount = maxRunCount != -1 ? Math.min(missCount + 1, maxRunCount - current) : missCount + 1;
+                notifySkipped(skipCount, EXPIRED);
+                var l = runCount.addAndGet(skipCount);
+                if (maxRunCount == -1 || l < maxRunCount) {
+                    nextExecutionTime = last;
+                    scheduleNext();
+                } else {
+                    // 最后一次被跳过了, 调度在这里结束
+                    unregister();
                 }
+                return true;
+            }
+            case IMMEDIATE_COMPENSATION -> {
+                // 错过的多次执行 合并为这一次 (以最后一个到期的时间点执行)
+                notifySkipped(missCount, EXPIRED);
+                nextExecutionTime = last;
+                return false;
+            }
+            case BACKTRACKING_COMPENSATION -> {
+                // 依次执行错过的每一次
+                catchUpUntil = last;
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /// 合并调度时 由 CronGroup 在到期时调用 (在组的 timer 线程中)
+    void runGrouped(long executionTime) {
+        // 加入组之前的那次执行 与本成员无关
+        if (executionTime < firstGroupExecutionTime) {
+            return;
+        }
+        if (isCancelled()) {
+            group.leave(this);
+            return;
+        }
+        // 运行时检测是否错过 (组会依次触发错过的每一次, 这里逐次处理)
+        if (misfireThresholdNanos != -1 && skipGroupedMisfire(executionTime)) {
+            return;
+        }
+        var l = runCount.incrementAndGet();
+        if (maxRunCount != -1 && l >= maxRunCount) {
+            // 最后一次 (或者已经超出), 离开组
+            group.leave(this);
+            if (l > maxRunCount) {
+                return;
+            }
+        }
+
+        currentExecutionTime = executionTime;
 
-            });
-        } catch (Throwable e) {
-            if (errorHandler != null) {
-                try {
-                    errorHandler.accept(e);
-                } catch (Throwable ex) {
-                    e.addSuppressed(ex);
-                    LOGGER.log(ERROR, "errorHandler 发生错误 !!!", e);
+        if (splayNanos == 0 && executionMode == VIRTUAL_THREAD) {
+            dispatch(l);
+            return;
+        }
+        // 组按照表达式的时间点触发, 偏移由各个成员自己处理.
+        // 分发到各自的线程, 避免一个成员的耗时影响同组的其他成员.
+        if (groupedRunCount == 0) {
+            groupedRunCount = l;
+            fanOut(groupedTask);
+        } else {
+            // 上一次还没有开始 (偏移不小于表达式的间隔), 只能单独创建
+            fanOut(() -> runDeferred(l));
+        }
+    }
+
+    /// 没有偏移时 直接交给 timer 的 executor (同一时刻到期的成员 不再各自插入 timer 条目).
+    /// 有偏移 或 timer 不提供 executor 时 通过 schedule 提交 : 记录 TaskHandle (取消时移除), timer 关闭时结束调度 而不是抛出异常
+    private void fanOut(Runnable task) {
+        var executor = group.executor();
+        if (splayNanos != 0 || executor == null) {
+            schedule(task, splayNanos);
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // executor 已经关闭, 调度随之结束 (与 timer 拒绝时一致)
+            cancelSchedule();
+        }
+    }
+
+    private void runGroupedTask() {
+        var l = groupedRunCount;
+        groupedRunCount = 0;
+        runDeferred(l);
+    }
+
+    private void runDeferred(long l) {
+        // 等待期间 可能已经取消了
+        if (isCancelled()) {
+            return;
+        }
+        dispatch(l);
+    }
+
+    /// 合并调度时 由 CronGroup 在组关闭时调用 (组中仍然剩余的成员)
+    ///
+    /// @param exhausted true 表示没有下一次执行时间了, false 表示 timer 已经关闭
+    void groupClosed(boolean exhausted) {
+        if (exhausted) {
+            markExhausted();
+        } else {
+            // 与未合并时 timer 关闭的处理一致
+            cancelSchedule();
+        }
+    }
+
+    /// 合并调度时 按照过期策略处理运行时的错过, 返回 true 表示跳过本次
+    private boolean skipGroupedMisfire(long executionTime) {
+        var nowMillis = System.currentTimeMillis();
+        var lagNanos = (nowMillis - fireMillisOf(executionTime)) * 1_000_000;
+        if (!isMisfire(lagNanos)) {
+            return false;
+        }
+        notifyMisfire(lagNanos, 1);
+        switch (expirationPolicy) {
+            case IMMEDIATE_IGNORE -> {
+                notifySkipped(1, EXPIRED);
+                return true;
+            }
+            case BACKTRACKING_IGNORE -> {
+                notifySkipped(1, EXPIRED);
+                var l = runCount.incrementAndGet();
+                if (maxRunCount != -1 && l >= maxRunCount) {
+                    group.leave(this);
+                    // 最后一次被跳过了, 调度在这里结束
+                    unregister();
+                }
+                return true;
+            }
+            case IMMEDIATE_COMPENSATION -> {
+                // 只执行最后一个到期的
+                var next = cronExpression.nextEpochSecond(executionTime, zone);
+                if (next != NO_NEXT && next <= latestDueSecond(nowMillis)) {
+                    notifySkipped(1, EXPIRED);
+                    return true;
                 }
-            } else {
-                LOGGER.log(ERROR, "调度任务时发生错误 !!!", e);
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /// after 之后的下一个执行时间 (epochSecond), 没有则返回 NO_NEXT.
+    /// 设置了日历时 触发时间被排除的 直接从下一个允许的时间点重新计算, 一次跳过整段 (而不是逐个检查被排除的执行时间).
+    private long nextTime(long after) {
+        var t = cronExpression.nextEpochSecond(after, zone);
+        var calendar = this.calendar;
+        if (calendar == null) {
+            return t;
+        }
+        for (var i = 0; i < MAX_CALENDAR_JUMPS && t != NO_NEXT; i = i + 1) {
+            var fireTime = Instant.ofEpochMilli(fireMillisOf(t));
+            var allowed = calendar.nextAllowed(fireTime);
+            if (allowed == null) {
+                return NO_NEXT;
             }
+            if (!allowed.isAfter(fireTime)) {
+                return t;
+            }
+            // 触发时间不早于 allowed 的第一个执行时间
+            var allowedSecond = Math.ceilDiv(allowed.toEpochMilli() - splayNanos / 1_000_000, 1000);
+            t = cronExpression.nextEpochSecond(allowedSecond - 1, zone);
         }
+        return NO_NEXT;
+    }
+
+    /// 从 firstTime 开始的所有执行时间, 每个元素只计算一次 nextTime
+    private Stream<Instant> runTimes(long firstTime) {
+        var limit = maxRunCount != -1 ? Math.max(maxRunCount - runCount.get(), 0) : Long.MAX_VALUE;
+        return Stream.iterate(firstTime, t -> t != NO_NEXT, this::nextTime)
+            .limit(limit)
+            .map(t -> Instant.ofEpochMilli(fireMillisOf(t)));
+    }
+
+    /// 执行时间点 (epochSecond) 加上偏移后 实际触发的时间 (epochMilli)
+    private long fireMillisOf(long executionTime) {
+        return executionTime * 1000 + splayNanos / 1_000_000;
+    }
+
+    /// 加上偏移后 已经到期的最晚的时间点 (epochSecond)
+    private long latestDueSecond(long nowMillis) {
+        return Math.floorDiv(nowMillis - splayNanos / 1_000_000, 1000);
+    }
+
+    @Override
+    protected CompletionStage<?> execute(long currentRunCount) {
+        var lagNanos = (System.currentTimeMillis() - fireMillisOf(currentExecutionTime)) * 1_000_000;
+        return invokeTask(currentRunCount, lagNanos);
+    }
+
+    private record Lookahead(long baseTime, int count, long time) {
 
     }
 
@@ -0,0 +1,109 @@
+package dev.scx.scheduling.cron;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// ZoneOffsetCache
+///
+/// 时区偏移的缓存, 用来在 epochSecond 和 本地秒数 之间做无分配的转换.
+///
+/// - 固定偏移的时区 直接返回偏移量.
+/// - 其他时区 会缓存 "当前偏移量的有效区间" (两次时区转换之间), 只有跨越转换点 (如夏令时切换) 时才会重新计算.
+///
+/// @author scx567888
+final class ZoneOffsetCache {
+
+    private static final ConcurrentHashMap<ZoneId, ZoneOffsetCache> CACHES = new ConcurrentHashMap<>();
+
+    /// 时区偏移量的最大绝对值 (18 小时)
+    static final long MAX_OFFSET_SECONDS = 18 * 3600;
+
+    private final ZoneRules rules;
+    private final boolean fixed;
+    private final int fixedOffset;
+
+    private volatile OffsetWindow window;
+
+    private ZoneOffsetCache(ZoneId zone) {
+        this.rules = zone.getRules();
+        this.fixed = rules.isFixedOffset();
+        this.fixedOffset = fixed ? rules.getOffset(Instant.EPOCH).getTotalSeconds() : 0;
+        this.window = null;
+    }
+
+    static ZoneOffsetCache of(ZoneId zone) {
+        var cache = CACHES.get(zone);
+        if (cache != null) {
+            return cache;
+        }
+        return CACHES.computeIfAbsent(zone, ZoneOffsetCache::new);
+    }
+
+    /// 指定时刻的偏移量 (秒)
+    int offsetAt(long epochSecond) {
+        if (fixed) {
+            return fixedOffset;
+        }
+        var w = window;
+        if (w != null && epochSecond >= w.from() && epochSecond < w.to()) {
+            return w.offset();
+        }
+        w = computeWindow(epochSecond);
+        window = w;
+        return w.offset();
+    }
+
+    /// 将本地秒数转换为 epochSecond, 只返回大于 after 的时刻.
+    /// - 重叠 (如夏令时结束, 同一本地时间出现两次) 时 返回大于 after 的较早的那一个,
+    ///   earlierOnly 为 true 时 只使用较早的那一个 (与 ZonedDateTime 默认的解析一致)
+    /// - 间隙 (如夏令时开始, 本地时间不存在) 或 没有大于 after 的时刻时 返回 [CronExpression#NO_NEXT]
+    long toEpochSecond(long localSecond, long after, boolean earlierOnly) {
+        if (fixed) {
+            var e = localSecond - fixedOffset;
+            return e > after ? e : CronExpression.NO_NEXT;
+        }
+        // 假设 ±18 小时内最多只有一次时区转换, 那么候选的偏移量只有 转换前 和 转换后 两个
+        var offsetBefore = offsetAt(localSecond - MAX_OFFSET_SECONDS);
+        var offsetAfter = offsetAt(localSecond + MAX_OFFSET_SECONDS);
+        var e1 = localSecond - offsetBefore;
+        var valid1 = offsetAt(e1) == offsetBefore;
+        if (offsetBefore == offsetAfter) {
+            return valid1 && e1 > after ? e1 : CronExpression.NO_NEXT;
+        }
+        var e2 = localSecond - offsetAfter;
+        var valid2 = offsetAt(e2) == offsetAfter;
+        if (earlierOnly && valid1 && valid2) {
+            var e = Math.min(e1, e2);
+            return e > after ? e : CronExpression.NO_NEXT;
+        }
+        valid1 = valid1 && e1 > after;
+        valid2 = valid2 && e2 > after;
+        if (valid1 && valid2) {
+            return Math.min(e1, e2);
+        }
+        if (valid1) {
+            return e1;
+        }
+        if (valid2) {
+            return e2;
+        }
+        return CronExpression.NO_NEXT;
+    }
+
+    private OffsetWindow computeWindow(long epochSecond) {
+        var instant = Instant.ofEpochSecond(epochSecond);
+        var offset = rules.getOffset(instant).getTotalSeconds();
+        var previous = rules.previousTransition(instant.plusSeconds(1));
+        var next = rules.nextTransition(instant);
+        var from = previous != null ? previous.toEpochSecond() : Long.MIN_VALUE;
+        var to = next != null ? next.toEpochSecond() : Long.MAX_VALUE;
+        return new OffsetWindow(from, to, offset);
+    }
+
+    private record OffsetWindow(long from, long to, int offset) {
+
+    }
+
+}
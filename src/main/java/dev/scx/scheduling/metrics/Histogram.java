@@ -0,0 +1,111 @@
+package dev.scx.scheduling.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/// 无锁的 对数线性 直方图 (类似 HdrHistogram)
+///
+/// - 每个 2 的幂区间被分为 8 个子桶, 所以百分位数的相对误差不超过 12.5%.
+/// - 覆盖 0 ~ Long.MAX_VALUE, 负数按 0 记录.
+/// - 记录只是一次数组下标计算 和 几次原子自增, 不加锁 也不分配对象. 读取 (百分位数等) 不会阻塞记录.
+/// - 大小固定 (约 4KB).
+///
+/// @author scx567888
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+    private final LongAdder totalCount;
+    private final LongAdder totalSum;
+    private final AtomicLong max;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.totalCount = new LongAdder();
+        this.totalSum = new LongAdder();
+        this.max = new AtomicLong(0);
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalSum.add(value);
+        // 先读后写, 大多数情况下无需 CAS
+        var currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long count() {
+        return totalCount.sum();
+    }
+
+    public long sum() {
+        return totalSum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        var count = count();
+        return count == 0 ? 0 : (double) sum() / count;
+    }
+
+    /// 百分位数 (返回所在子桶的上界, 即 真实值 <= 返回值)
+    ///
+    /// @param percentile 0 ~ 100
+    public long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile 必须在 0 ~ 100 之间 !!!");
+        }
+        // 因为记录是并发的, 这里以实际扫描到的总数为准
+        var total = 0L;
+        for (var i = 0; i < BUCKET_COUNT; i = i + 1) {
+            total = total + counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        var target = Math.max((long) Math.ceil(percentile / 100 * total), 1);
+        var seen = 0L;
+        for (var i = 0; i < BUCKET_COUNT; i = i + 1) {
+            seen = seen + counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /// 子桶中的最大值
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        var exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        var subBucket = index % SUB_BUCKET_COUNT;
+        var shift = exponent - SUB_BUCKET_BITS;
+        var lowest = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+
+}
@@ -0,0 +1,92 @@
+package dev.scx.scheduling.metrics;
+
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScheduleListener;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.SkipReason;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// ScheduleMetrics
+///
+/// 内置的低开销统计 (延迟 和 执行耗时 的直方图, 执行 / 失败 / 跳过 / 错过 次数), 同时统计全局 和 每个调度.
+///
+/// - 记录是无锁的, 可以随时读取而不会拖慢调度.
+/// - 每个调度的统计大约占用 8KB, 调度结束后需要调用 [#prune()] 移除 (或者使用 `perSchedule = false` 只统计全局).
+///
+/// 用法 : `ScxScheduling.defaultListener(metrics)` 或 `task.listener(metrics)`.
+///
+/// @author scx567888
+public final class ScheduleMetrics implements ScheduleListener {
+
+    private final boolean perSchedule;
+    private final ScheduleStats global;
+    private final ConcurrentHashMap<ScheduleHandle, ScheduleStats> schedules;
+
+    public ScheduleMetrics() {
+        this(true);
+    }
+
+    /// @param perSchedule 是否为每个调度单独统计
+    public ScheduleMetrics(boolean perSchedule) {
+        this.perSchedule = perSchedule;
+        this.global = new ScheduleStats();
+        this.schedules = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void onRun(ScheduleHandle handle, long runCount, long scheduledNanos, long startNanos, long durationNanos, Throwable error) {
+        var lagNanos = startNanos - scheduledNanos;
+        global.recordRun(lagNanos, durationNanos, error);
+        if (perSchedule && handle != null) {
+            statsOf(handle).recordRun(lagNanos, durationNanos, error);
+        }
+    }
+
+    @Override
+    public void onSkip(ScheduleHandle handle, long skipCount, SkipReason reason) {
+        global.recordSkip(skipCount, reason);
+        if (perSchedule && handle != null) {
+            statsOf(handle).recordSkip(skipCount, reason);
+        }
+    }
+
+    @Override
+    public void onMisfire(ScheduleHandle handle, long lagNanos, long missCount) {
+        global.recordMisfire();
+        if (perSchedule && handle != null) {
+            statsOf(handle).recordMisfire();
+        }
+    }
+
+    /// 全局统计
+    public ScheduleStats global() {
+        return global;
+    }
+
+    /// 指定调度的统计, 没有则返回 null
+    public ScheduleStats of(ScheduleHandle handle) {
+        return schedules.get(handle);
+    }
+
+    /// 所有调度的统计 (只读视图)
+    public Map<ScheduleHandle, ScheduleStats> schedules() {
+        return Collections.unmodifiableMap(schedules);
+    }
+
+    /// 移除已经结束 (完成 或 取消) 的调度的统计, 全局统计不受影响
+    public void prune() {
+        schedules.keySet().removeIf(handle -> handle.status() != ScheduleStatus.RUNNING);
+    }
+
+    private ScheduleStats statsOf(ScheduleHandle handle) {
+        var stats = schedules.get(handle);
+        if (stats != null) {
+            return stats;
+        }
+        return schedules.computeIfAbsent(handle, k -> new ScheduleStats());
+    }
+
+}
@@ -0,0 +1,100 @@
+package dev.scx.scheduling.metrics;
+
+import dev.scx.scheduling.SkipReason;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/// ScheduleStats
+///
+/// 一组调度统计 (全局 或 单个调度), 所有时间单位均为纳秒.
+///
+/// @author scx567888
+public final class ScheduleStats {
+
+    private final Histogram lag;
+    private final Histogram duration;
+    private final LongAdder runCount;
+    private final LongAdder failureCount;
+    private final LongAdder timeoutCount;
+    private final LongAdder misfireCount;
+    private final LongAdder[] skipCounts;
+
+    ScheduleStats() {
+        this.lag = new Histogram();
+        this.duration = new Histogram();
+        this.runCount = new LongAdder();
+        this.failureCount = new LongAdder();
+        this.timeoutCount = new LongAdder();
+        this.misfireCount = new LongAdder();
+        this.skipCounts = new LongAdder[SkipReason.values().length];
+        for (var i = 0; i < skipCounts.length; i = i + 1) {
+            this.skipCounts[i] = new LongAdder();
+        }
+    }
+
+    void recordRun(long lagNanos, long durationNanos, Throwable error) {
+        lag.record(lagNanos);
+        duration.record(durationNanos);
+        runCount.increment();
+        if (error != null) {
+            failureCount.increment();
+            if (error instanceof TimeoutException) {
+                timeoutCount.increment();
+            }
+        }
+    }
+
+    void recordMisfire() {
+        misfireCount.increment();
+    }
+
+    void recordSkip(long count, SkipReason reason) {
+        skipCounts[reason.ordinal()].add(count);
+    }
+
+    /// 延迟 (实际开始时间 - 理想执行时间), 提前执行按 0 记录
+    public Histogram lag() {
+        return lag;
+    }
+
+    /// 执行耗时
+    public Histogram duration() {
+        return duration;
+    }
+
+    /// 执行次数 (包括失败的)
+    public long runCount() {
+        return runCount.sum();
+    }
+
+    /// 失败次数
+    public long failureCount() {
+        return failureCount.sum();
+    }
+
+    /// 超时次数 (同时计入失败次数)
+    public long timeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /// 运行时检测到错过的次数 (每次检测记一次, 与错过了多少个时间点无关)
+    public long misfireCount() {
+        return misfireCount.sum();
+    }
+
+    /// 跳过次数 (所有原因)
+    public long skipCount() {
+        var sum = 0L;
+        for (var skipCount : skipCounts) {
+            sum = sum + skipCount.sum();
+        }
+        return sum;
+    }
+
+    /// 指定原因的跳过次数
+    public long skipCount(SkipReason reason) {
+        return skipCounts[reason.ordinal()].sum();
+    }
+
+}
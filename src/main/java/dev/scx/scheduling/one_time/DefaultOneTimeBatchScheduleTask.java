@@ -0,0 +1,524 @@
+package dev.scx.scheduling.one_time;
+
+import dev.scx.function.Function1Void;
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ExpirationPolicy;
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScheduleListener;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.TaskContext;
+import dev.scx.scheduling.timer.ShardedTimer;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+
+import java.lang.System.Logger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static dev.scx.scheduling.ExecutionMode.VIRTUAL_THREAD;
+import static dev.scx.scheduling.ExpirationPolicy.IMMEDIATE_COMPENSATION;
+import static dev.scx.scheduling.ScheduleStatus.*;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.getLogger;
+import static java.time.Instant.now;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/// DefaultOneTimeBatchScheduleTask
+///
+/// 所有任务按开始时间排序, timer 中只保留 "下一个到期的" 那一个条目 (游标), 到期时依次分发所有已经到期的任务, 再提交下一个.
+///
+/// - 到期的任务直接交给 timer 的 executor (不再逐个插入 timer), 只有 timer 不提供 executor 时 才经过 timer.
+/// - timer 或 executor 已经关闭 (拒绝提交) 时 取消所有尚未开始的任务, 与其他调度在 timer 关闭时的处理一致.
+///
+/// @author scx567888
+public final class DefaultOneTimeBatchScheduleTask implements OneTimeBatchScheduleTask {
+
+    private static final Logger LOGGER = getLogger(DefaultOneTimeBatchScheduleTask.class.getName());
+
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = Thread.ofVirtual().name("scx-scheduling-batch-", 0).factory();
+
+    // Entry 的状态
+    private static final int PENDING = 0;
+    private static final int STARTED = 1;
+    private static final int CANCELED = 2;
+    private static final int SKIPPED = 3;
+
+    private static final AtomicIntegerFieldUpdater<Entry> STATE = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "state");
+
+    private final ScxTimer timer;
+    // timer 实际执行任务的线程池, 其他 timer 为 null
+    private final Executor executor;
+    private final ArrayList<Entry> entryList;
+    private final Runnable fireTask;
+    private final AtomicLong runCount;
+    private final AtomicLong pendingCount;
+    private final AtomicBoolean cancelled;
+
+    private ExpirationPolicy expirationPolicy;
+    private Consumer<Throwable> errorHandler;
+    private ExecutionMode executionMode;
+    private ScheduleListener listener;
+
+    private OneTimeBatchHandle batchHandle;
+    // 按添加顺序
+    private Entry[] entries;
+    // 按开始时间排序
+    private Entry[] sortedEntries;
+    // 下一个需要检查的 sortedEntries 的下标 (只会在 timer 的回调中依次修改)
+    private volatile int cursor;
+    private volatile TaskHandle pendingTaskHandle;
+
+    public DefaultOneTimeBatchScheduleTask(ScxTimer timer) {
+        if (timer == null) {
+            throw new NullPointerException("timer 不允许为空 !!!");
+        }
+        this.timer = timer;
+        if (timer instanceof TimingWheelTimer t) {
+            this.executor = t.executor();
+        } else if (timer instanceof ShardedTimer t) {
+            this.executor = t.executor();
+        } else {
+            this.executor = null;
+        }
+        this.entryList = new ArrayList<>();
+        this.fireTask = this::fire;
+        this.runCount = new AtomicLong(0);
+        this.pendingCount = new AtomicLong(0);
+        this.cancelled = new AtomicBoolean(false);
+        this.expirationPolicy = IMMEDIATE_COMPENSATION; // 默认过期补偿
+        this.errorHandler = null;
+        this.executionMode = ScxScheduling.defaultExecutionMode();
+        this.listener = ScxScheduling.defaultListener();
+        this.batchHandle = null;
+        this.entries = null;
+        this.sortedEntries = null;
+        this.cursor = 0;
+        this.pendingTaskHandle = null;
+    }
+
+    @Override
+    public OneTimeBatchScheduleTask add(Instant startTime, Function1Void<TaskContext, ?> task) {
+        if (startTime == null) {
+            throw new NullPointerException("startTime 不允许为空 !!!");
+        }
+        if (task == null) {
+            throw new NullPointerException("task 不允许为空 !!!");
+        }
+        entryList.add(new Entry(startTime, task));
+        return this;
+    }
+
+    @Override
+    public <E> OneTimeBatchScheduleTask addAll(Stream<E> items, Function<? super E, Instant> startTime, Function<? super E, Function1Void<TaskContext, ?>> task) {
+        items.forEach(item -> add(startTime.apply(item), task.apply(item)));
+        return this;
+    }
+
+    @Override
+    public OneTimeBatchScheduleTask expirationPolicy(ExpirationPolicy expirationPolicy) {
+        if (expirationPolicy == null) {
+            throw new NullPointerException("expirationPolicy 不允许为空 !!!");
+        }
+        this.expirationPolicy = expirationPolicy;
+        return this;
+    }
+
+    @Override
+    public OneTimeBatchScheduleTask onError(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    @Override
+    public OneTimeBatchScheduleTask executionMode(ExecutionMode executionMode) {
+        if (executionMode == null) {
+            throw new NullPointerException("executionMode 不允许为空 !!!");
+        }
+        this.executionMode = executionMode;
+        return this;
+    }
+
+    @Override
+    public OneTimeBatchScheduleTask listener(ScheduleListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    @Override
+    public OneTimeBatchHandle start() {
+        if (entries != null) {
+            throw new IllegalStateException("已经启动 !!!");
+        }
+
+        // 1, 此处立即获取当前时间保证准确, 之后全部基于 System.nanoTime()
+        var now = now();
+        var nowNanos = System.nanoTime();
+
+        this.entries = entryList.toArray(new Entry[0]);
+        entryList.clear();
+
+        this.batchHandle = new BatchHandle();
+
+        // 2, 计算开始时间 并统一处理过期策略
+        var expiredCount = 0L;
+        for (var entry : entries) {
+            var startDelayNanos = nanosBetween(now, entry.startTime);
+            if (startDelayNanos >= 0) {
+                entry.startNanos = nowNanos + startDelayNanos;
+                continue;
+            }
+            switch (expirationPolicy) {
+                case IMMEDIATE_IGNORE -> {
+                    entry.state = SKIPPED;
+                    expiredCount = expiredCount + 1;
+                }
+                case BACKTRACKING_IGNORE -> {
+                    // 这里需要 "补账"
+                    entry.state = SKIPPED;
+                    entry.runCount = 1;
+                    runCount.incrementAndGet();
+                    expiredCount = expiredCount + 1;
+                }
+                // 单次任务的补偿策略就是立即执行
+                case IMMEDIATE_COMPENSATION, BACKTRACKING_COMPENSATION -> {
+                    entry.startNanos = nowNanos;
+                }
+            }
+        }
+        notifySkipped(expiredCount);
+
+        // 3, 排序 (跳过的不参与调度)
+        var sorted = new Entry[entries.length - (int) expiredCount];
+        var i = 0;
+        for (var entry : entries) {
+            if (entry.state == PENDING) {
+                sorted[i] = entry;
+                i = i + 1;
+            }
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.startNanos, b.startNanos));
+        this.sortedEntries = sorted;
+        this.pendingCount.set(sorted.length);
+
+        // 4, 只提交最早的那一个
+        if (sorted.length > 0) {
+            schedule(sorted[0].startNanos - System.nanoTime());
+        }
+
+        return batchHandle;
+    }
+
+    private void schedule(long delayNanos) {
+        TaskHandle taskHandle;
+        try {
+            taskHandle = timer.runAfter(fireTask, delayNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // timer 已经关闭, 尚未开始的任务都不会再执行了
+            cancelAll();
+            return;
+        }
+        pendingTaskHandle = taskHandle;
+        // 与 cancel 并发时 由这里负责取消新的 TaskHandle
+        if (cancelled.get()) {
+            taskHandle.cancel();
+        }
+    }
+
+    /// 分发所有已经到期的任务, 然后提交下一个
+    private void fire() {
+        if (cancelled.get()) {
+            return;
+        }
+        var sorted = sortedEntries;
+        var i = cursor;
+        var nowNanos = System.nanoTime();
+        while (i < sorted.length && sorted[i].startNanos <= nowNanos) {
+            var entry = sorted[i];
+            i = i + 1;
+            if (STATE.compareAndSet(entry, PENDING, STARTED)) {
+                pendingCount.decrementAndGet();
+                if (!dispatch(entry)) {
+                    // executor (或 timer) 已经关闭, 这一个 和 剩余的都不会再执行了
+                    entry.state = CANCELED;
+                    cursor = i;
+                    cancelAll();
+                    return;
+                }
+            }
+        }
+        cursor = i;
+        // 跳过已经取消的
+        while (i < sorted.length && sorted[i].state != PENDING) {
+            i = i + 1;
+        }
+        if (i < sorted.length) {
+            schedule(sorted[i].startNanos - System.nanoTime());
+        }
+    }
+
+    /// 分发到各自的线程, 避免一个任务的耗时影响同时到期的其他任务. 被拒绝时返回 false
+    private boolean dispatch(Entry entry) {
+        if (executionMode == VIRTUAL_THREAD) {
+            VIRTUAL_THREAD_FACTORY.newThread(entry).start();
+            return true;
+        }
+        try {
+            if (executor != null) {
+                executor.execute(entry);
+            } else {
+                timer.runAfter(entry, 0, NANOSECONDS);
+            }
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /// 取消整个批次 : 移除 timer 中等待的条目, 取消所有尚未开始的任务
+    private void cancelAll() {
+        cancelled.set(true);
+        var taskHandle = pendingTaskHandle;
+        if (taskHandle != null) {
+            taskHandle.cancel();
+        }
+        for (var entry : entries) {
+            entry.cancel();
+        }
+    }
+
+    private void execute(Entry entry) {
+        var l = runCount.incrementAndGet();
+        entry.runCount = 1;
+        var startNanos = System.nanoTime();
+        entry.lagNanos = startNanos - entry.startNanos;
+        Throwable error = null;
+        try {
+            entry.task.apply(entry);
+        } catch (Throwable e) {
+            error = e;
+        }
+        var listener = this.listener;
+        if (listener != null) {
+            try {
+                listener.onRun(batchHandle, l, entry.startNanos, startNanos, System.nanoTime() - startNanos, error);
+            } catch (Throwable e) {
+                LOGGER.log(ERROR, "listener 发生错误 !!!", e);
+            }
+        }
+        if (error != null) {
+            handleError(error);
+        }
+    }
+
+    private void notifySkipped(long skipCount) {
+        var listener = this.listener;
+        if (listener == null || skipCount <= 0) {
+            return;
+        }
+        try {
+            listener.onSkip(batchHandle, skipCount, EXPIRED);
+        } catch (Throwable e) {
+            LOGGER.log(ERROR, "listener 发生错误 !!!", e);
+        }
+    }
+
+    private void handleError(Throwable e) {
+        if (errorHandler != null) {
+            try {
+                errorHandler.accept(e);
+            } catch (Throwable ex) {
+                e.addSuppressed(ex);
+                LOGGER.log(ERROR, "errorHandler 发生错误 !!!", e);
+            }
+        } else {
+            LOGGER.log(ERROR, "调度任务时发生错误 !!!", e);
+        }
+    }
+
+    /// 两个时间点之间的纳秒数, 限制在 ±(Long.MAX_VALUE >> 2) 之内 (加上 System.nanoTime() 也不会溢出)
+    private static long nanosBetween(Instant from, Instant to) {
+        try {
+            return Math.clamp(Duration.between(from, to).toNanos(), -(Long.MAX_VALUE >> 2), Long.MAX_VALUE >> 2);
+        } catch (ArithmeticException e) {
+            return to.isBefore(from) ? -(Long.MAX_VALUE >> 2) : Long.MAX_VALUE >> 2;
+        }
+    }
+
+    /// 单个任务, 同时也是它的 ScheduleHandle 和 TaskContext (任务只会执行一次, 所以可以直接复用)
+    private final class Entry implements ScheduleHandle, TaskContext, Runnable {
+
+        private final Instant startTime;
+        private final Function1Void<TaskContext, ?> task;
+        private long startNanos;
+        private long lagNanos;
+        private volatile long runCount;
+        // 由 STATE 更新
+        volatile int state;
+
+        private Entry(Instant startTime, Function1Void<TaskContext, ?> task) {
+            this.startTime = startTime;
+            this.task = task;
+            this.startNanos = 0;
+            this.lagNanos = 0;
+            this.runCount = 0;
+            this.state = PENDING;
+        }
+
+        @Override
+        public void run() {
+            execute(this);
+        }
+
+        @Override
+        public void cancel() {
+            if (STATE.compareAndSet(this, PENDING, CANCELED)) {
+                pendingCount.decrementAndGet();
+            }
+        }
+
+        @Override
+        public ScheduleStatus status() {
+            return switch (state) {
+                case PENDING -> RUNNING;
+                case CANCELED -> CANCELLED;
+                default -> DONE;
+            };
+        }
+
+        @Override
+        public long runCount() {
+            return runCount;
+        }
+
+        @Override
+        public Instant nextRunTime() {
+            return state == PENDING ? startTime : null;
+        }
+
+        @Override
+        public Instant nextRunTime(int count) {
+            return count == 1 ? nextRunTime() : null;
+        }
+
+        @Override
+        public long currentRunCount() {
+            return runCount;
+        }
+
+        @Override
+        public long lagNanos() {
+            return lagNanos;
+        }
+
+        @Override
+        public ScheduleHandle scheduleHandle() {
+            return this;
+        }
+
+    }
+
+    private final class BatchHandle implements OneTimeBatchHandle {
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+
+        @Override
+        public ScheduleHandle get(int index) {
+            return entries[index];
+        }
+
+        @Override
+        public long pendingCount() {
+            return pendingCount.get();
+        }
+
+        @Override
+        public void cancel() {
+            cancelAll();
+        }
+
+        @Override
+        public ScheduleStatus status() {
+            if (cancelled.get()) {
+                return CANCELLED;
+            }
+            return pendingCount.get() > 0 ? RUNNING : DONE;
+        }
+
+        @Override
+        public long runCount() {
+            return runCount.get();
+        }
+
+        @Override
+        public Instant nextRunTime() {
+            return nextRunTime(1);
+        }
+
+        /// 第 count 个 (从 1 开始) 尚未开始的任务的开始时间
+        @Override
+        public Instant nextRunTime(int count) {
+            var sorted = sortedEntries;
+            var n = 0;
+            for (var i = cursor; i < sorted.length; i = i + 1) {
+                if (sorted[i].state == PENDING) {
+                    n = n + 1;
+                    if (n == count) {
+                        return sorted[i].startTime;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Iterator<Instant> nextRunTimes() {
+            var sorted = sortedEntries;
+            return sorted != null ? pendingStartTimes(sorted, cursor).iterator() : Collections.emptyIterator();
+        }
+
+        @Override
+        public Stream<Instant> runTimesBetween(Instant from, Instant to) {
+            var sorted = sortedEntries;
+            if (sorted == null) {
+                return Stream.empty();
+            }
+            // 二分查找 第一个不早于 from 的
+            var low = cursor;
+            var high = sorted.length;
+            while (low < high) {
+                var mid = (low + high) >>> 1;
+                if (sorted[mid].startTime.isBefore(from)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return pendingStartTimes(sorted, low).takeWhile(t -> t.isBefore(to));
+        }
+
+        private Stream<Instant> pendingStartTimes(Entry[] sorted, int fromIndex) {
+            return Arrays.stream(sorted, fromIndex, sorted.length).filter(e -> e.state == PENDING).map(e -> e.startTime);
+        }
+
+    }
+
+}
@@ -1,56 +1,44 @@
 package dev.scx.scheduling.one_time;
 
-import dev.scx.function.Function1Void;
+import dev.scx.scheduling.AbstractScheduleTask;
 import dev.scx.scheduling.ExpirationPolicy;
 import dev.scx.scheduling.ScheduleHandle;
 import dev.scx.scheduling.ScheduleStatus;
-import dev.scx.scheduling.TaskContext;
 import dev.scx.timer.ScxTimer;
-import dev.scx.timer.TaskStatus;
 
-import java.lang.System.Logger;
 import java.time.Instant;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static dev.scx.scheduling.ExpirationPolicy.IMMEDIATE_COMPENSATION;
 import static dev.scx.scheduling.ScheduleStatus.*;
-import static java.lang.System.Logger.Level.ERROR;
-import static java.lang.System.getLogger;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
 import static java.time.Duration.between;
 import static java.time.Instant.now;
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /// DefaultOneTimeScheduleTask
 ///
+/// 状态由最终的结果决定 : 执行 (包括重试) 结束之后才是 DONE, 并在此时从 registry 中移除; 结束之前取消的 为 CANCELLED.
+///
 /// @author scx567888
-public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
-
-    private static final Logger LOGGER = getLogger(DefaultOneTimeScheduleTask.class.getName());
-
-    private final ScxTimer timer;
+public final class DefaultOneTimeScheduleTask extends AbstractScheduleTask<OneTimeScheduleTask> implements OneTimeScheduleTask {
 
     private final AtomicLong runCount;
 
     private Supplier<Instant> startTimeSupplier;
     private ExpirationPolicy expirationPolicy;
-    private Function1Void<TaskContext, ?> task;
-    private Consumer<Throwable> errorHandler;
 
-    private ScheduleHandle scheduleHandle;
+    private long firstRunNanos;
+    // 执行 (包括重试) 已经结束
+    private volatile boolean completed;
 
     public DefaultOneTimeScheduleTask(ScxTimer timer) {
-        if (timer == null) {
-            throw new NullPointerException("timer 不允许为空 !!!");
-        }
-        this.timer = timer;
+        super(timer);
         this.runCount = new AtomicLong(0);
         this.startTimeSupplier = null;
         this.expirationPolicy = IMMEDIATE_COMPENSATION; // 默认过期补偿
-        this.task = null;
-        this.errorHandler = null;
-        this.scheduleHandle = null;
+        this.completed = false;
     }
 
     @Override
@@ -66,21 +54,9 @@ public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
     }
 
     @Override
-    public OneTimeScheduleTask task(Function1Void<TaskContext, ?> task) {
-        this.task = task;
-        return this;
-    }
-
-    @Override
-    public OneTimeScheduleTask onError(Consumer<Throwable> errorHandler) {
-        this.errorHandler = errorHandler;
-        return this;
-    }
-
-    @Override
-    public ScheduleHandle start() {
+    protected ScheduleHandle doStart() {
         // 0, 检查 参数
-        if (task == null) {
+        if (task == null && asyncTask == null) {
             throw new IllegalStateException("task 未设置 !!!");
         }
 
@@ -105,13 +81,19 @@ public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
             switch (expirationPolicy) {
                 case IMMEDIATE_IGNORE -> {
                     // 单次任务 直接返回虚拟的 Status 即可 无需执行
-                    return virtualScheduleHandle();
+                    this.scheduleHandle = virtualScheduleHandle();
+                    notifySkipped(1, EXPIRED);
+                    unregister();
+                    return scheduleHandle;
                 }
                 case BACKTRACKING_IGNORE -> {
                     // 这里需要 "补账"
                     runCount.incrementAndGet();
                     // 单次任务 直接返回虚拟的 Status 即可 无需执行
-                    return virtualScheduleHandle();
+                    this.scheduleHandle = virtualScheduleHandle();
+                    notifySkipped(1, EXPIRED);
+                    unregister();
+                    return scheduleHandle;
                 }
                 // 单次任务的补偿策略就是立即执行
                 case IMMEDIATE_COMPENSATION, BACKTRACKING_COMPENSATION -> {
@@ -122,26 +104,28 @@ public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
 
         // 计算任务的实际启动时间
         var firstRunTime = now.plusNanos(startDelayNanos);
-
-        // 创建执行任务
-        var taskHandle = timer.runAfter(this::runTask, startDelayNanos, NANOSECONDS);
+        this.firstRunNanos = System.nanoTime() + startDelayNanos;
 
         // 创建 ScheduleHandle
         this.scheduleHandle = new ScheduleHandle() {
 
             @Override
             public void cancel() {
-                taskHandle.cancel();
+                // 已经结束的 无需取消
+                if (!completed) {
+                    cancelSchedule();
+                }
             }
 
             @Override
             public ScheduleStatus status() {
-                var taskStatus = taskHandle.status();
-                return switch (taskStatus) {
-                    case PENDING, RUNNING -> RUNNING;
-                    case SUCCESS, FAILED -> DONE;
-                    case CANCELLED -> CANCELLED;
-                };
+                if (completed) {
+                    return DONE;
+                }
+                if (isCancelled()) {
+                    return CANCELLED;
+                }
+                return RUNNING;
             }
 
             @Override
@@ -152,7 +136,7 @@ public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
             @Override
             public Instant nextRunTime() {
                 // 只有没执行才有下一次的时间
-                if (taskHandle.status() == TaskStatus.PENDING) {
+                if (runCount.get() == 0 && !isCancelled()) {
                     return firstRunTime;
                 }
                 return null;
@@ -165,6 +149,9 @@ public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
 
         };
 
+        // 创建执行任务 (先创建 ScheduleHandle, timer 已经关闭时 会立即取消)
+        schedule(this::runTask, startDelayNanos);
+
         return scheduleHandle;
     }
 
@@ -201,36 +188,34 @@ public final class DefaultOneTimeScheduleTask implements OneTimeScheduleTask {
     }
 
     private void runTask() {
-        var l = runCount.incrementAndGet();
+        if (isCancelled()) {
+            return;
+        }
 
-        try {
-            task.apply(new TaskContext() {
+        var l = runCount.incrementAndGet();
 
-                @Override
-                public long currentRunCount() {
-                    return l;
-                }
+        dispatch(l);
 
-                @Override
-                public ScheduleHandle scheduleHandle() {
-                    // 这里有可能是 null, 假设 startDelay 为 0 时 有可能先调用 runTask 然后才有返回值
-                    return scheduleHandle;
-                }
+    }
 
-            });
-        } catch (Throwable e) {
-            if (errorHandler != null) {
-                try {
-                    errorHandler.accept(e);
-                } catch (Throwable ex) {
-                    e.addSuppressed(ex);
-                    LOGGER.log(ERROR, "errorHandler 发生错误 !!!", e);
-                }
-            } else {
-                LOGGER.log(ERROR, "调度任务时发生错误 !!!", e);
-            }
+    @Override
+    protected CompletionStage<?> execute(long currentRunCount) {
+        var stage = invokeTask(currentRunCount, System.nanoTime() - firstRunNanos);
+        // 单次任务 执行 (包括重试) 结束就完成了
+        if (stage == null) {
+            complete();
+        } else {
+            stage.whenComplete((r, e) -> complete());
         }
+        return stage;
+    }
 
+    private void complete() {
+        // 执行期间取消的 仍然视为取消 (重试已经被放弃)
+        if (!isCancelled()) {
+            completed = true;
+        }
+        unregister();
     }
 
 }
@@ -0,0 +1,22 @@
+package dev.scx.scheduling.one_time;
+
+import dev.scx.scheduling.ScheduleHandle;
+
+/// 整批单次任务的 Handle
+///
+/// - [#cancel()] 取消所有尚未开始的任务, [#runCount()] 是所有任务的执行次数之和.
+/// - [#nextRunTime()] 是最早的 尚未开始的任务的开始时间.
+///
+/// @author scx567888
+public interface OneTimeBatchHandle extends ScheduleHandle {
+
+    /// 任务数量
+    int size();
+
+    /// 单个任务的 Handle (按添加的顺序)
+    ScheduleHandle get(int index);
+
+    /// 尚未开始 (也未取消) 的任务数量
+    long pendingCount();
+
+}
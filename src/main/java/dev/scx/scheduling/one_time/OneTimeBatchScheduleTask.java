@@ -0,0 +1,55 @@
+package dev.scx.scheduling.one_time;
+
+import dev.scx.function.Function1Void;
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ExpirationPolicy;
+import dev.scx.scheduling.ScheduleListener;
+import dev.scx.scheduling.TaskContext;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/// 批量的单次任务 (比如 从数据库中加载的大量提醒)
+///
+/// 与逐个调用 `oneTime().startTime(...).start(...)` 相比:
+/// - 所有任务按开始时间排序后 只占用 timer 中的一个条目 (到期后再提交下一个), 加载时几乎没有队列操作.
+/// - 每个任务只有一个很小的对象 (同时作为 ScheduleHandle 和 TaskContext).
+/// - 过期策略 对整批任务统一生效.
+///
+/// 监听器收到的 ScheduleHandle 是整批的 [OneTimeBatchHandle], 而不是单个任务的.
+///
+/// @author scx567888
+public interface OneTimeBatchScheduleTask {
+
+    /// 添加一个任务
+    OneTimeBatchScheduleTask add(Instant startTime, Function1Void<TaskContext, ?> task);
+
+    /// 添加多个任务
+    ///
+    /// @param startTime 获取开始时间
+    /// @param task      获取任务
+    <E> OneTimeBatchScheduleTask addAll(Stream<E> items, Function<? super E, Instant> startTime, Function<? super E, Function1Void<TaskContext, ?>> task);
+
+    OneTimeBatchScheduleTask expirationPolicy(ExpirationPolicy expirationPolicy);
+
+    /// 设置错误处理器
+    OneTimeBatchScheduleTask onError(Consumer<Throwable> errorHandler);
+
+    /// 设置执行模式 (默认值为 [dev.scx.scheduling.ScxScheduling#defaultExecutionMode()])
+    OneTimeBatchScheduleTask executionMode(ExecutionMode executionMode);
+
+    /// 设置监听器 (默认值为 [dev.scx.scheduling.ScxScheduling#defaultListener()], null 表示不监听)
+    OneTimeBatchScheduleTask listener(ScheduleListener listener);
+
+    /// 启动所有任务
+    OneTimeBatchHandle start();
+
+    /// 同上
+    default <E> OneTimeBatchScheduleTask addAll(Collection<E> items, Function<? super E, Instant> startTime, Function<? super E, Function1Void<TaskContext, ?>> task) {
+        return addAll(items.stream(), startTime, task);
+    }
+
+}
@@ -1,42 +1,66 @@
 package dev.scx.scheduling.periodic;
 
-import dev.scx.function.Function1Void;
+import dev.scx.scheduling.AbstractScheduleTask;
 import dev.scx.scheduling.ExpirationPolicy;
-import dev.scx.scheduling.TaskContext;
 import dev.scx.timer.ScxTimer;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
 import java.util.function.Supplier;
 
 import static dev.scx.scheduling.ExpirationPolicy.IMMEDIATE_COMPENSATION;
 
 /// AbstractPeriodicScheduleTask
 ///
+/// "补偿运行" (BACKTRACKING_COMPENSATION) 在这里统一处理 : 在 timer 中分批异步执行, 可以限速 或 合并为一次,
+/// 全部完成后 再由子类开启正常调度.
+///
+/// 每一次 "补偿运行" 和正常的执行一样 经过 dispatch (executionMode, 并发策略, 超时, 重试 都会生效).
+/// sequentialCompensation 时 (fixedDelay) 每一次 "补偿运行" 结束之后 (包括异步任务的 CompletionStage) 才会开始下一次.
+///
 /// @author scx567888
-public abstract class AbstractPeriodicScheduleTask implements PeriodicScheduleTask {
+public abstract class AbstractPeriodicScheduleTask extends AbstractScheduleTask<PeriodicScheduleTask> implements PeriodicScheduleTask {
 
-    protected final ScxTimer timer;
+    /// 不限速时 每批 "补偿运行" 的次数
+    private static final int COMPENSATION_BATCH = 1000;
+
+    /// 按照日历查找下一个时间点时 最多跳跃的次数 (超过视为没有)
+    private static final int MAX_CALENDAR_JUMPS = 1000;
 
     protected Supplier<Instant> startTimeSupplier;
     protected Duration interval;
     protected long maxRunCount;
     protected ExpirationPolicy expirationPolicy;
-    protected Function1Void<TaskContext, ?> task;
-    protected Consumer<Throwable> errorHandler;
+    protected int compensationRate;
+    protected boolean batchCompensation;
 
-    public AbstractPeriodicScheduleTask(ScxTimer timer) {
-        if (timer == null) {
-            throw new NullPointerException("timer 不允许为空 !!!");
-        }
-        this.timer = timer;
+    // 以下为 "补偿运行" 的状态, 只会在 timer 的回调中依次访问
+    private final boolean sequentialCompensation;
+    private final Runnable compensationTask;
+    private long compensationRemaining;
+    private Runnable compensationFinished;
+    // sequentialCompensation 时 交接正在执行的那一次 : 发起的一方 和 结束的一方 各减一次, 后到的一方负责继续
+    private final AtomicInteger compensationHandoff;
+    // 等待异步结束时 本批已经执行的次数 (用于限速)
+    private long compensationBatchCount;
+
+    /// @param sequentialCompensation 每一次 "补偿运行" 结束之后 才开始下一次 (子类需要在结束时调用 [#compensationCompleted()])
+    public AbstractPeriodicScheduleTask(ScxTimer timer, boolean sequentialCompensation) {
+        super(timer);
+        this.sequentialCompensation = sequentialCompensation;
+        this.compensationHandoff = new AtomicInteger(0);
+        this.compensationBatchCount = 0;
         this.startTimeSupplier = null;
         this.interval = null;
         this.maxRunCount = -1;
         this.expirationPolicy = IMMEDIATE_COMPENSATION;
-        this.task = null;
-        this.errorHandler = null;
+        this.compensationRate = 0;
+        this.batchCompensation = false;
+        this.compensationTask = this::runCompensation;
+        this.compensationRemaining = 0;
+        this.compensationFinished = null;
     }
 
     @Override
@@ -64,15 +88,105 @@ public abstract class AbstractPeriodicScheduleTask implements PeriodicScheduleTa
     }
 
     @Override
-    public PeriodicScheduleTask task(Function1Void<TaskContext, ?> task) {
-        this.task = task;
+    public PeriodicScheduleTask compensationRate(int maxRunsPerSecond) {
+        if (maxRunsPerSecond < 0) {
+            throw new IllegalArgumentException("maxRunsPerSecond 不能小于 0 !!!");
+        }
+        this.compensationRate = maxRunsPerSecond;
         return this;
     }
 
     @Override
-    public PeriodicScheduleTask onError(Consumer<Throwable> errorHandler) {
-        this.errorHandler = errorHandler;
+    public PeriodicScheduleTask batchCompensation(boolean batchCompensation) {
+        this.batchCompensation = batchCompensation;
         return this;
     }
 
+    /// 异步执行 missCount 次 "补偿运行", 全部完成后 (且未取消) 调用 onFinished
+    protected final void startCompensation(long missCount, Runnable onFinished) {
+        this.compensationRemaining = missCount;
+        this.compensationFinished = onFinished;
+        schedule(compensationTask, 0);
+    }
+
+    /// 通过 dispatch 执行一次 "补偿运行", 返回 false 表示没有执行 (已经取消 或者 达到了最大次数)
+    protected abstract boolean compensate();
+
+    /// from 到 to 之间的纳秒数, 超出 long 范围时取 ±Long.MAX_VALUE / 4 (用于与 System.nanoTime() 相加而不溢出)
+    protected static long nanosBetween(Instant from, Instant to) {
+        try {
+            return Math.clamp(Duration.between(from, to).toNanos(), -(Long.MAX_VALUE >> 2), Long.MAX_VALUE >> 2);
+        } catch (ArithmeticException e) {
+            return to.isBefore(from) ? -(Long.MAX_VALUE >> 2) : Long.MAX_VALUE >> 2;
+        }
+    }
+
+    /// 从第 first 个时间点开始 (timeOf 将序号换算为时间, 间隔为 intervalNanos), 第一个不被日历排除的序号, 没有则返回 -1.
+    /// 每次跳过一整段被排除的时间 (直接计算落在允许的时间点之后的第一个序号), 而不是逐个检查.
+    protected final long nextAllowedIndex(long first, LongFunction<Instant> timeOf, long intervalNanos) {
+        var calendar = this.calendar;
+        if (calendar == null) {
+            return first;
+        }
+        var index = first;
+        for (var i = 0; i < MAX_CALENDAR_JUMPS; i = i + 1) {
+            var time = timeOf.apply(index);
+            var allowed = calendar.nextAllowed(time);
+            if (allowed == null) {
+                return -1;
+            }
+            if (!allowed.isAfter(time)) {
+                return index;
+            }
+            index = index + Math.ceilDiv(nanosBetween(time, allowed), intervalNanos);
+        }
+        return -1;
+    }
+
+    /// 通过 dispatch 执行一次合并了 count 次的 "补偿运行", 返回值同 [#compensate()]
+    protected abstract boolean compensateBatch(long count);
+
+    /// sequentialCompensation 时 由子类在一次 "补偿运行" 结束时调用 (可能在任意线程)
+    protected final void compensationCompleted() {
+        if (compensationHandoff.decrementAndGet() == 0) {
+            // 异步结束的, 回到 timer 中继续
+            schedule(compensationTask, compensationDelay(compensationBatchCount));
+        }
+    }
+
+    private void runCompensation() {
+        if (isCancelled()) {
+            return;
+        }
+        // 合并时 一次执行全部;
+        // 不限速时 每批 COMPENSATION_BATCH 次, 批与批之间让出线程;
+        // 限速时 每批 1/100 秒的量, 按速率计算下一批的延迟.
+        var batch = batchCompensation ? compensationRemaining : compensationRate > 0 ? Math.max(compensationRate / 100, 1) : COMPENSATION_BATCH;
+        var n = Math.min(batch, compensationRemaining);
+        var i = 0L;
+        while (i < n && !isCancelled()) {
+            var count = batchCompensation ? n : 1;
+            i = i + count;
+            compensationRemaining = compensationRemaining - count;
+            compensationBatchCount = i;
+            compensationHandoff.set(2);
+            var started = batchCompensation ? compensateBatch(count) : compensate();
+            if (started && sequentialCompensation && compensationHandoff.decrementAndGet() != 0) {
+                // 还没有结束, 由 compensationCompleted 继续
+                return;
+            }
+        }
+        if (compensationRemaining > 0) {
+            schedule(compensationTask, compensationDelay(n));
+            return;
+        }
+        if (!isCancelled()) {
+            compensationFinished.run();
+        }
+    }
+
+    private long compensationDelay(long count) {
+        return compensationRate > 0 ? count * 1_000_000_000L / compensationRate : 0;
+    }
+
 }
@@ -2,46 +2,57 @@ package dev.scx.scheduling.periodic;
 
 import dev.scx.scheduling.ScheduleHandle;
 import dev.scx.scheduling.ScheduleStatus;
-import dev.scx.scheduling.TaskContext;
 import dev.scx.timer.ScxTimer;
 
-import java.lang.System.Logger;
 import java.time.Instant;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static dev.scx.scheduling.ScheduleStatus.*;
-import static java.lang.System.Logger.Level.ERROR;
-import static java.lang.System.getLogger;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
 import static java.time.Duration.between;
 import static java.time.Instant.now;
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /// FixedDelayPeriodicScheduleTask
 ///
 /// @author scx567888
 public final class FixedDelayPeriodicScheduleTask extends AbstractPeriodicScheduleTask {
 
-    private static final Logger LOGGER = getLogger(FixedDelayPeriodicScheduleTask.class.getName());
+    private static final long NO_NEXT = Long.MIN_VALUE;
 
     private final AtomicLong runCount;
-    private final AtomicBoolean cancel;
-
-    private ScheduleHandle scheduleHandle;
-    private volatile Instant lastExecutionEndTime;
+    private final Runnable nextTask;
+    private final Runnable resumeTask;
+
+    private Instant anchorTime;
+    private long anchorNanos;
+    private long intervalNanos;
+    // NO_NEXT 表示按照日历 没有允许的时间点了
+    private volatile long nextRunNanos;
+    // 正在进行的 "补偿运行" 的 runCount 和 合并的次数 (execute 据此区分 "补偿运行" 和 正常的执行)
+    private volatile long compensationRunCount;
+    private volatile long compensationBatchSize;
 
     public FixedDelayPeriodicScheduleTask(ScxTimer timer) {
-        super(timer);
+        super(timer, true);
         this.runCount = new AtomicLong(0);
-        this.cancel = new AtomicBoolean(false);
-        this.scheduleHandle = null;
-        this.lastExecutionEndTime = null;
+        // 复用同一个 Runnable, 避免每次调度都创建新的方法引用
+        this.nextTask = this::runTask;
+        // "补偿运行" 完成后 立即恢复正常调度
+        this.resumeTask = () -> {
+            var nowNanos = System.nanoTime();
+            scheduleAt(nowNanos, nowNanos);
+        };
     }
 
     @Override
-    public ScheduleHandle start() {
+    protected ScheduleHandle doStart() {
         // 0, 检查 参数
-        if (task == null) {
+        if (task == null && asyncTask == null) {
             throw new IllegalStateException("task 未设置 !!!");
         }
         if (interval == null) {
@@ -49,7 +60,12 @@ public final class FixedDelayPeriodicScheduleTask extends AbstractPeriodicSchedu
         }
 
         // 1, 此处立即获取当前时间保证准确
+        // 墙上时间只在这里锚定一次, 之后的调度全部基于 System.nanoTime() 的 long 运算.
         var now = now();
+        var nowNanos = System.nanoTime();
+        this.anchorTime = now;
+        this.anchorNanos = nowNanos;
+        this.intervalNanos = interval.toNanos();
 
         // 2, 获取开始时间
         var startTime = startTimeSupplier != null ? startTimeSupplier.get() : null;
@@ -59,51 +75,12 @@ public final class FixedDelayPeriodicScheduleTask extends AbstractPeriodicSchedu
             startTime = now;
         }
 
-        // 计算差值
-        var diff = between(now, startTime);
-
-        long startDelayNanos = diff.toNanos();
-
-        // 如果过期 需要处理过期策略
-        if (diff.isNegative()) {
-            // 计算丢失了多少次执行次数
-            var missCount = diff.dividedBy(interval) * -1;
-            // 计算最近开始的时间
-            var nearestTime = startTime.plus(interval.multipliedBy(missCount + 1));
-            // 以下处理过期情况
-            switch (expirationPolicy) {
-                case IMMEDIATE_IGNORE -> {
-                    // 使用 nearestTime 计算 startDelayNanos
-                    startDelayNanos = between(now, nearestTime).toNanos();
-                }
-                case BACKTRACKING_IGNORE -> {
-                    // 这里需要 "补账"
-                    runCount.addAndGet(missCount);
-                    // 使用 nearestTime 计算 startDelayNanos
-                    startDelayNanos = between(now, nearestTime).toNanos();
-                }
-                case IMMEDIATE_COMPENSATION -> {
-                    // 立即执行.
-                    startDelayNanos = 0;
-                }
-                case BACKTRACKING_COMPENSATION -> {
-                    // 这里需要 "补偿运行", 无需矫正 startTime (因为 runCount 会增长)
-                    for (var i = 0; i < missCount; i = i + 1) {
-                        runTask(false);
-                    }
-                    // "补偿运行" 完 立即执行.
-                    startDelayNanos = 0;
-                }
-            }
-        }
-
-        // 计算任务的实际启动时间
-        var firstRunTime = now.plusNanos(startDelayNanos);
+        // 计算差值 (包含偏移, 相当于把开始时间推迟了偏移量)
+        long startDelayNanos = between(now, startTime).toNanos() + splayNanos;
 
-        // 开启首次调度
-        timer.runAfter(() -> runTask(true), startDelayNanos, NANOSECONDS);
+        this.nextRunNanos = nowNanos + startDelayNanos;
 
-        // 创建 ScheduleHandle
+        // 创建 ScheduleHandle (需要在 "补偿运行" 之前创建, 子任务中可能会用到)
         this.scheduleHandle = new ScheduleHandle() {
 
             @Override
@@ -113,101 +90,271 @@ public final class FixedDelayPeriodicScheduleTask extends AbstractPeriodicSchedu
 
             @Override
             public Instant nextRunTime() {
-                if (cancel.get()) {
+                if (isCancelled()) {
                     return null;
                 }
                 if (maxRunCount != -1 && runCount.get() >= maxRunCount) {
                     return null;
                 }
-                return lastExecutionEndTime != null ? lastExecutionEndTime.plus(interval) : firstRunTime;
+                var nextNanos = nextRunNanos;
+                return nextNanos != NO_NEXT ? anchorTime.plusNanos(nextNanos - anchorNanos) : null;
             }
 
             @Override
             public Instant nextRunTime(int count) {
-                if (cancel.get()) {
+                if (count < 1 || isCancelled()) {
                     return null;
                 }
                 if (maxRunCount != -1 && runCount.get() + count > maxRunCount) {
                     return null;
                 }
+                // 有日历时 每一次都可能被推迟, 只能依次计算
+                if (calendar != null) {
+                    return runTimes(0, nextRunNanos).skip(count - 1).findFirst().orElse(null);
+                }
                 // 这里假设的是 任务执行耗时 0
                 var nextRunTime = nextRunTime();
                 return nextRunTime != null ? nextRunTime.plus(interval.multipliedBy(count - 1)) : null;
             }
 
+            @Override
+            public Iterator<Instant> nextRunTimes() {
+                return isCancelled() ? Collections.emptyIterator() : runTimes(0, nextRunNanos).iterator();
+            }
+
+            @Override
+            public Stream<Instant> runTimesBetween(Instant from, Instant to) {
+                if (isCancelled()) {
+                    return Stream.empty();
+                }
+                // 有日历时 每一次都依赖上一次, 需要从下一次开始计算
+                if (calendar != null) {
+                    return ScheduleHandle.super.runTimesBetween(from, to);
+                }
+                var nextNanos = nextRunNanos;
+                // 直接计算 from 之后的第一次, 不需要逐个跳过
+                var fromNanos = anchorNanos + nanosBetween(anchorTime, from);
+                var skip = Math.max(0, Math.ceilDiv(fromNanos - nextNanos, intervalNanos));
+                return runTimes(skip, nextNanos).takeWhile(t -> t.isBefore(to));
+            }
+
             @Override
             public void cancel() {
-                cancel.set(true);
+                cancelSchedule();
             }
 
             @Override
             public ScheduleStatus status() {
-                if (cancel.get()) {
+                if (isCancelled()) {
                     return CANCELLED;
                 }
                 if (maxRunCount != -1 && runCount.get() >= maxRunCount) {
                     return DONE;
                 }
+                // 按照日历 没有允许的时间点了
+                if (isExhausted()) {
+                    return DONE;
+                }
                 return RUNNING;
             }
 
         };
 
+        // 如果过期 需要处理过期策略
+        if (startDelayNanos < 0) {
+            // 计算丢失了多少次执行次数
+            var missCount = -startDelayNanos / intervalNanos;
+            // 计算最近开始的时间
+            var nearestNanos = nextRunNanos + (missCount + 1) * intervalNanos;
+            // 以下处理过期情况
+            switch (expirationPolicy) {
+                case IMMEDIATE_IGNORE -> {
+                    notifySkipped(missCount + 1, EXPIRED);
+                    // 使用 nearestNanos 计算 startDelayNanos
+                    startDelayNanos = nearestNanos - nowNanos;
+                }
+                case BACKTRACKING_IGNORE -> {
+                    notifySkipped(missCount + 1, EXPIRED);
+                    // 这里需要 "补账"
+                    runCount.addAndGet(missCount);
+                    // 使用 nearestNanos 计算 startDelayNanos
+                    startDelayNanos = nearestNanos - nowNanos;
+                }
+                case IMMEDIATE_COMPENSATION -> {
+                    // 错过的多次执行 合并为这一次
+                    notifySkipped(missCount, EXPIRED);
+                    // 立即执行.
+                    startDelayNanos = 0;
+                }
+                case BACKTRACKING_COMPENSATION -> {
+                    // 这里需要 "补偿运行", 无需矫正 startTime (因为 runCount 会增长)
+                    // "补偿运行" 是异步的, 完成后 立即执行.
+                    startCompensation(missCount, resumeTask);
+                    return scheduleHandle;
+                }
+            }
+        }
+
+        // 计算任务的实际启动时间 并开启首次调度
+        scheduleAt(nowNanos + startDelayNanos, nowNanos);
+
         return scheduleHandle;
     }
 
-    // 此处使用 cancel 标记来实现取消. 而不是真正使用 TaskHandle 取消任务.
-    // 也就是说即使用户调用取消, 后续也会触发一次回调(但会在回调开头被拦截)
-    // 采用这种方式的原因是, 保存 TaskHandle 的复杂度要比使用 cancel 标记的复杂度更高, 而且多余的这一次回调开销也很小(几乎可以忽略).
-    private void runTask(boolean scheduleNext) {
+    /// 从下一次之后的第 skip 次开始的预计时间点 (假设任务执行耗时 0), 每个元素 O(1) (有日历时 每个元素跳过一整段被排除的时间)
+    private Stream<Instant> runTimes(long skip, long nextNanos) {
+        if (nextNanos == NO_NEXT) {
+            return Stream.empty();
+        }
+        var remaining = maxRunCount != -1 ? maxRunCount - runCount.get() : Long.MAX_VALUE;
+        var calendar = this.calendar;
+        if (calendar != null) {
+            return Stream.iterate(anchorTime.plusNanos(nextNanos - anchorNanos), t -> t != null, t -> calendar.nextAllowed(t.plus(interval)))
+                .skip(skip)
+                .limit(Math.max(remaining - skip, 0));
+        }
+        return LongStream.range(skip, Math.max(remaining, skip)).mapToObj(i -> anchorTime.plusNanos(nextNanos + i * intervalNanos - anchorNanos));
+    }
+
+    private void runTask() {
+        // 运行时检测是否错过
+        if (misfireThresholdNanos != -1) {
+            var nowNanos = System.nanoTime();
+            var lagNanos = nowNanos - nextRunNanos;
+            if (isMisfire(lagNanos) && handleMisfire(nowNanos, lagNanos)) {
+                return;
+            }
+        }
+
         var l = runCount.incrementAndGet();
         // 已经取消了 或者 达到了最大次数
-        if (cancel.get() || maxRunCount != -1 && l > maxRunCount) {
+        if (isCancelled() || maxRunCount != -1 && l > maxRunCount) {
             return;
         }
 
-        Throwable e = null;
-        try {
-            task.apply(new TaskContext() {
+        dispatch(l);
 
-                @Override
-                public long currentRunCount() {
-                    return l;
-                }
+    }
 
-                @Override
-                public ScheduleHandle scheduleHandle() {
-                    // 这里有可能是 null, 假设 startDelay 为 0 时 有可能先调用 runTask 然后才有返回值
-                    return scheduleHandle;
+    /// 按照过期策略处理运行时的错过, 返回 true 表示本次不再执行 (下一次的调度也已经处理)
+    private boolean handleMisfire(long nowNanos, long lagNanos) {
+        var current = runCount.get();
+        // 除了本次之外 还错过了多少次
+        var missCount = lagNanos / intervalNanos;
+        notifyMisfire(lagNanos, missCount + 1);
+        switch (expirationPolicy) {
+            case IMMEDIATE_IGNORE -> {
+                notifySkipped(missCount + 1, EXPIRED);
+                // 跳过的不计入次数
+                scheduleAt(nextRunNanos + (missCount + 1) * intervalNanos, nowNanos);
+                return true;
+            }
+            case BACKTRACKING_IGNORE -> {
+                // 跳过的计入次数 (不能超过最大次数)
+                var skipCount = maxRunCount != -1 ? Math.min(missCount + 1, maxRunCount - current) : missCount + 1;
+                notifySkipped(skipCount, EXPIRED);
+                var l = runCount.addAndGet(skipCount);
+                if (maxRunCount == -1 || l < maxRunCount) {
+                    scheduleAt(nextRunNanos + (missCount + 1) * intervalNanos, nowNanos);
+                } else {
+                    nextRunNanos = nextRunNanos + (missCount + 1) * intervalNanos;
+                    // 最后一次被跳过了, 调度在这里结束
+                    unregister();
                 }
-
-            });
-        } catch (Throwable x) {
-            e = x;
+                return true;
+            }
+            case IMMEDIATE_COMPENSATION -> {
+                // 错过的多次执行 合并为这一次
+                notifySkipped(missCount, EXPIRED);
+                nextRunNanos = nowNanos;
+                return false;
+            }
+            case BACKTRACKING_COMPENSATION -> {
+                // 本次 和 错过的 都交给 "补偿运行" (可以限速 或 合并), 完成后恢复正常调度
+                startCompensation(missCount + 1, resumeTask);
+                return true;
+            }
         }
+        return false;
+    }
 
-        // 记录一下执行结束的时间
-        lastExecutionEndTime = now();
+    @Override
+    protected boolean compensate() {
+        return compensateBatch(1);
+    }
 
-        if (scheduleNext) {
-            // 任务执行完才调用下一次
-            timer.runAfter(() -> runTask(true), interval.toNanos(), NANOSECONDS);
+    @Override
+    protected boolean compensateBatch(long count) {
+        // 不能超过最大次数
+        if (maxRunCount != -1) {
+            count = Math.min(count, maxRunCount - runCount.get());
+        }
+        if (count <= 0 || isCancelled()) {
+            return false;
         }
+        var l = runCount.addAndGet(count);
+        compensationBatchSize = count;
+        compensationRunCount = l;
+        dispatch(l);
+        return true;
+    }
 
-        if (e == null) {
-            return;
+    @Override
+    protected CompletionStage<?> execute(long currentRunCount) {
+        var lagNanos = System.nanoTime() - nextRunNanos;
+        // "补偿运行" 不会调度下一次, 结束后继续 "补偿运行"
+        var compensation = currentRunCount == compensationRunCount;
+        var batchSize = 1L;
+        if (compensation) {
+            batchSize = compensationBatchSize;
+            nextRunNanos = nextRunNanos + batchSize * intervalNanos;
         }
-        if (errorHandler != null) {
-            try {
-                errorHandler.accept(e);
-            } catch (Throwable ex) {
-                e.addSuppressed(ex);
-                LOGGER.log(ERROR, "errorHandler 发生错误 !!!", e);
-            }
+        var stage = invokeTask(currentRunCount, lagNanos, batchSize);
+        if (stage == null) {
+            afterRun(currentRunCount, compensation);
         } else {
-            LOGGER.log(ERROR, "调度任务时发生错误 !!!", e);
+            // 异步任务 : 完成后才开始计算间隔
+            stage.whenComplete((r, e) -> afterRun(currentRunCount, compensation));
         }
+        return stage;
+    }
+
+    private void afterRun(long currentRunCount, boolean compensation) {
+        if (compensation) {
+            compensationCompleted();
+        } else {
+            scheduleNext(currentRunCount);
+        }
+    }
+
+    private void scheduleNext(long currentRunCount) {
+        // 记录一下下一次执行的时间 (执行结束的时间 + interval)
+        var nowNanos = System.nanoTime();
 
+        // 任务执行完才调用下一次 (最后一次执行 无需再调度)
+        if (maxRunCount == -1 || currentRunCount < maxRunCount) {
+            scheduleAt(nowNanos + intervalNanos, nowNanos);
+        } else {
+            nextRunNanos = nowNanos + intervalNanos;
+        }
+    }
+
+    /// 在 runNanos 执行下一次. 被日历排除时 直接推迟到下一个允许的时间点 (不会为被排除的时间唤醒 timer), 没有允许的时间点时 停止调度.
+    private void scheduleAt(long runNanos, long nowNanos) {
+        var calendar = this.calendar;
+        if (calendar != null) {
+            var time = anchorTime.plusNanos(runNanos - anchorNanos);
+            var allowed = calendar.nextAllowed(time);
+            if (allowed == null) {
+                nextRunNanos = NO_NEXT;
+                // 调度在这里结束
+                markExhausted();
+                return;
+            }
+            runNanos = runNanos + nanosBetween(time, allowed);
+        }
+        nextRunNanos = runNanos;
+        schedule(nextTask, runNanos - nowNanos);
     }
 
 }
@@ -2,46 +2,57 @@ package dev.scx.scheduling.periodic;
 
 import dev.scx.scheduling.ScheduleHandle;
 import dev.scx.scheduling.ScheduleStatus;
-import dev.scx.scheduling.TaskContext;
 import dev.scx.timer.ScxTimer;
 
-import java.lang.System.Logger;
 import java.time.Instant;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static dev.scx.scheduling.ScheduleStatus.*;
-import static java.lang.System.Logger.Level.ERROR;
-import static java.lang.System.getLogger;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
 import static java.time.Duration.between;
 import static java.time.Instant.now;
-import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 /// FixedRatePeriodicScheduleTask
 ///
 /// @author scx567888
 public final class FixedRatePeriodicScheduleTask extends AbstractPeriodicScheduleTask {
 
-    private static final Logger LOGGER = getLogger(FixedRatePeriodicScheduleTask.class.getName());
-
     private final AtomicLong runCount;
-    private final AtomicBoolean cancel;
-
-    private ScheduleHandle scheduleHandle;
-    private Instant startTime;
+    private final Runnable nextTask;
+    private final Runnable resumeTask;
+
+    private Instant anchorTime;
+    private long anchorNanos;
+    // 运行时错过时 可能会被矫正
+    private volatile long startNanos;
+    private long intervalNanos;
+    // 按照日历跳过的时间 (整周期), 在下一次到期时才计入 startNanos, 避免影响正在执行的上一次的 lagNanos
+    private volatile long calendarShiftNanos;
+    // 最近一次合并的 "补偿运行" 的 runCount 和 合并的次数
+    private volatile long batchRunCount;
+    private volatile long batchSize;
 
     public FixedRatePeriodicScheduleTask(ScxTimer timer) {
-        super(timer);
+        super(timer, false);
         this.runCount = new AtomicLong(0);
-        this.cancel = new AtomicBoolean(false);
-        this.scheduleHandle = null;
-        this.startTime = null;
+        // 复用同一个 Runnable, 避免每次调度都创建新的方法引用
+        this.nextTask = this::runTask;
+        // "补偿运行" 完成后 从下一个时间点恢复正常调度
+        this.resumeTask = () -> scheduleSlot(runCount.get(), System.nanoTime());
+        this.calendarShiftNanos = 0;
+        this.batchRunCount = 0;
+        this.batchSize = 1;
     }
 
     @Override
-    public ScheduleHandle start() {
+    protected ScheduleHandle doStart() {
         // 0, 检查 参数
-        if (task == null) {
+        if (task == null && asyncTask == null) {
             throw new IllegalStateException("task 未设置 !!!");
         }
         if (interval == null) {
@@ -49,64 +60,28 @@ public final class FixedRatePeriodicScheduleTask extends AbstractPeriodicSchedul
         }
 
         // 1, 此处立即获取当前时间保证准确
+        // 墙上时间只在这里锚定一次, 之后的调度全部基于 System.nanoTime() 的 long 运算,
+        // 这样 NTP 校时 或 系统时间跳变 都不会影响调度频率.
         var now = now();
+        var nowNanos = System.nanoTime();
+        this.anchorTime = now;
+        this.anchorNanos = nowNanos;
+        this.intervalNanos = interval.toNanos();
 
         // 2, 获取开始时间
-        this.startTime = startTimeSupplier != null ? startTimeSupplier.get() : null;
+        var startTime = startTimeSupplier != null ? startTimeSupplier.get() : null;
 
         // 没有开始时间 就以当前时间为开始时间
         if (startTime == null) {
             startTime = now;
         }
 
-        // 计算差值
-        var diff = between(now, startTime);
-
-        long startDelayNanos = diff.toNanos();
-
-        // 如果过期 需要处理过期策略
-        if (diff.isNegative()) {
-            // 计算丢失了多少次执行次数
-            var missCount = diff.dividedBy(interval) * -1;
-            // 计算最近开始的时间
-            var nearestTime = scheduledTimeOf(missCount + 1);
-            // 以下处理过期情况
-            switch (expirationPolicy) {
-                case IMMEDIATE_IGNORE -> {
-                    // 矫正 startTime
-                    this.startTime = nearestTime;
-                    // 使用 nearestTime 计算 startDelayNanos
-                    startDelayNanos = between(now, nearestTime).toNanos();
-                }
-                case BACKTRACKING_IGNORE -> {
-                    // 这里需要 "补账"
-                    runCount.addAndGet(missCount);
-                    // 矫正 startTime (让 startTime 延后一个 周期)
-                    this.startTime = startTime.plus(interval);
-                    // 使用 nearestTime 计算 startDelayNanos
-                    startDelayNanos = between(now, nearestTime).toNanos();
-                }
-                case IMMEDIATE_COMPENSATION -> {
-                    // 矫正 startTime
-                    this.startTime = now;
-                    // 立即执行.
-                    startDelayNanos = 0;
-                }
-                case BACKTRACKING_COMPENSATION -> {
-                    // 这里需要 "补偿运行", 无需矫正 startTime (因为 runCount 会增长)
-                    for (var i = 0; i < missCount; i = i + 1) {
-                        runTask(false);
-                    }
-                    // "补偿运行" 完 立即执行.
-                    startDelayNanos = 0;
-                }
-            }
-        }
+        // 计算差值 (包含偏移, 相当于把开始时间推迟了偏移量)
+        long startDelayNanos = between(now, startTime).toNanos() + splayNanos;
 
-        // 开启首次调度
-        timer.runAfter(() -> runTask(true), startDelayNanos, NANOSECONDS);
+        this.startNanos = nowNanos + startDelayNanos;
 
-        // 创建 ScheduleHandle
+        // 创建 ScheduleHandle (需要在 "补偿运行" 之前创建, 子任务中可能会用到)
         this.scheduleHandle = new ScheduleHandle() {
 
             @Override
@@ -116,95 +91,273 @@ public final class FixedRatePeriodicScheduleTask extends AbstractPeriodicSchedul
 
             @Override
             public Instant nextRunTime() {
-                if (cancel.get()) {
+                if (isCancelled()) {
                     return null;
                 }
                 if (maxRunCount != -1 && runCount.get() >= maxRunCount) {
                     return null;
                 }
-                return scheduledTimeOf(runCount.get());
+                var index = nextAllowedIndex(runCount.get(), FixedRatePeriodicScheduleTask.this::scheduledTimeOf, intervalNanos);
+                return index != -1 ? scheduledTimeOf(index) : null;
             }
 
             @Override
             public Instant nextRunTime(int count) {
-                if (cancel.get()) {
+                if (count < 1 || isCancelled()) {
                     return null;
                 }
                 if (maxRunCount != -1 && runCount.get() + count > maxRunCount) {
                     return null;
                 }
+                // 有日历时 被排除的不算在内, 只能依次跳过
+                if (calendar != null) {
+                    return runTimes(runCount.get()).skip(count).findFirst().orElse(null);
+                }
                 return scheduledTimeOf(runCount.get() + count);
             }
 
+            @Override
+            public Iterator<Instant> nextRunTimes() {
+                return isCancelled() ? Collections.emptyIterator() : runTimes(runCount.get()).iterator();
+            }
+
+            @Override
+            public Stream<Instant> runTimesBetween(Instant from, Instant to) {
+                if (isCancelled()) {
+                    return Stream.empty();
+                }
+                // 有日历 并且有次数限制时 需要从下一次开始计数
+                if (calendar != null && maxRunCount != -1) {
+                    return ScheduleHandle.super.runTimesBetween(from, to);
+                }
+                // 直接计算 from 之后的第一次, 不需要逐个跳过
+                var fromNanos = anchorNanos + nanosBetween(anchorTime, from);
+                var first = Math.max(runCount.get(), Math.ceilDiv(fromNanos - startNanos, intervalNanos));
+                return runTimes(first).takeWhile(t -> t.isBefore(to));
+            }
+
             @Override
             public void cancel() {
-                cancel.set(true);
+                cancelSchedule();
             }
 
             @Override
             public ScheduleStatus status() {
-                if (cancel.get()) {
+                if (isCancelled()) {
                     return CANCELLED;
                 }
                 if (maxRunCount != -1 && runCount.get() >= maxRunCount) {
                     return DONE;
                 }
+                // 按照日历 没有允许的时间点了
+                if (isExhausted()) {
+                    return DONE;
+                }
                 return RUNNING;
             }
 
         };
 
+        // 如果过期 需要处理过期策略
+        if (startDelayNanos < 0) {
+            // 计算丢失了多少次执行次数
+            var missCount = -startDelayNanos / intervalNanos;
+            // 计算最近开始的时间
+            var nearestNanos = scheduledNanosOf(missCount + 1);
+            // 以下处理过期情况
+            switch (expirationPolicy) {
+                case IMMEDIATE_IGNORE -> {
+                    notifySkipped(missCount + 1, EXPIRED);
+                    // 矫正 startNanos
+                    this.startNanos = nearestNanos;
+                    // 使用 nearestNanos 计算 startDelayNanos
+                    startDelayNanos = nearestNanos - nowNanos;
+                }
+                case BACKTRACKING_IGNORE -> {
+                    notifySkipped(missCount + 1, EXPIRED);
+                    // 这里需要 "补账"
+                    runCount.addAndGet(missCount);
+                    // 矫正 startNanos (让 startNanos 延后一个 周期)
+                    this.startNanos = startNanos + intervalNanos;
+                    // 使用 nearestNanos 计算 startDelayNanos
+                    startDelayNanos = nearestNanos - nowNanos;
+                }
+                case IMMEDIATE_COMPENSATION -> {
+                    // 错过的多次执行 合并为这一次
+                    notifySkipped(missCount, EXPIRED);
+                    // 矫正 startNanos
+                    this.startNanos = nowNanos;
+                    // 立即执行.
+                    startDelayNanos = 0;
+                }
+                case BACKTRACKING_COMPENSATION -> {
+                    // 这里需要 "补偿运行", 无需矫正 startNanos (因为 runCount 会增长)
+                    // "补偿运行" 是异步的, 完成后 立即执行.
+                    startCompensation(missCount, resumeTask);
+                    return scheduleHandle;
+                }
+            }
+        }
+
+        // 开启首次调度 (有日历时 先跳过被排除的时间点)
+        if (calendar == null) {
+            schedule(nextTask, startDelayNanos);
+        } else {
+            scheduleSlot(runCount.get(), nowNanos);
+        }
+
         return scheduleHandle;
     }
 
+    /// 从第 first 次 (从 0 开始) 起 之后每次执行的理想时间点, 受 maxRunCount 限制.
+    /// 有日历时 跳过被排除的时间点 (跳过的不计入次数). 每个元素 O(1) (有日历时 每个元素跳过一整段被排除的时间)
+    private Stream<Instant> runTimes(long first) {
+        var end = maxRunCount != -1 ? maxRunCount : Long.MAX_VALUE;
+        if (calendar == null) {
+            return LongStream.range(first, end).mapToObj(this::scheduledTimeOf);
+        }
+        var start = nextAllowedIndex(first, this::scheduledTimeOf, intervalNanos);
+        return LongStream.iterate(start, i -> i != -1, i -> nextAllowedIndex(i + 1, this::scheduledTimeOf, intervalNanos))
+            .limit(Math.max(end - first, 0))
+            .mapToObj(this::scheduledTimeOf);
+    }
+
+    /// 调度第 count 次 (从 0 开始). 被日历排除的时间点 与 IMMEDIATE_IGNORE 一样 整周期地跳过 (保持原有的相位, 跳过的不计入次数),
+    /// 所以不会为被排除的时间点唤醒 timer. 没有允许的时间点时 停止调度.
+    private void scheduleSlot(long count, long nowNanos) {
+        var shiftNanos = 0L;
+        if (calendar != null) {
+            var index = nextAllowedIndex(count, this::scheduledTimeOf, intervalNanos);
+            if (index == -1) {
+                // 按照日历 没有允许的时间点了, 调度在这里结束
+                markExhausted();
+                return;
+            }
+            shiftNanos = (index - count) * intervalNanos;
+        }
+        calendarShiftNanos = shiftNanos;
+        schedule(nextTask, scheduledNanosOf(count) + shiftNanos - nowNanos);
+    }
+
     /// 计算从起始时间点开始, 第几次执行的时间
     private Instant scheduledTimeOf(long count) {
-        return startTime.plus(interval.multipliedBy(count));
+        return anchorTime.plusNanos(scheduledNanosOf(count) - anchorNanos);
     }
 
-    // 此处使用 cancel 标记来实现取消. 而不是真正使用 TaskHandle 取消任务.
-    // 也就是说即使用户调用取消, 后续也会触发一次回调(但会在回调开头被拦截)
-    // 采用这种方式的原因是, 保存 TaskHandle 的复杂度要比使用 cancel 标记的复杂度更高, 而且多余的这一次回调开销也很小(几乎可以忽略).
-    private void runTask(boolean scheduleNext) {
+    /// 同上 (基于 System.nanoTime()).
+    /// 每一次都从 startNanos 直接计算 而不是在上一次的基础上累加, 所以误差不会累积 (自动纠正漂移).
+    private long scheduledNanosOf(long count) {
+        return startNanos + count * intervalNanos;
+    }
+
+    private void runTask() {
+        // 到期时 计入按照日历跳过的时间
+        var shiftNanos = calendarShiftNanos;
+        if (shiftNanos != 0) {
+            calendarShiftNanos = 0;
+            this.startNanos = startNanos + shiftNanos;
+        }
+
+        // 运行时检测是否错过
+        if (misfireThresholdNanos != -1) {
+            var nowNanos = System.nanoTime();
+            var lagNanos = nowNanos - scheduledNanosOf(runCount.get());
+            if (isMisfire(lagNanos) && handleMisfire(nowNanos, lagNanos)) {
+                return;
+            }
+        }
+
         var l = runCount.incrementAndGet();
         // 已经取消了 或者 达到了最大次数
-        if (cancel.get() || maxRunCount != -1 && l > maxRunCount) {
+        if (isCancelled() || maxRunCount != -1 && l > maxRunCount) {
             return;
         }
 
-        if (scheduleNext) {
-            // 立即调用下一次
-            timer.runAfter(() -> runTask(true), between(now(), scheduledTimeOf(l)).toNanos(), NANOSECONDS);
+        // 立即调用下一次 (最后一次执行 无需再调度)
+        if (maxRunCount == -1 || l < maxRunCount) {
+            scheduleSlot(l, System.nanoTime());
         }
 
-        try {
-            task.apply(new TaskContext() {
-
-                @Override
-                public long currentRunCount() {
-                    return l;
-                }
+        dispatch(l);
 
-                @Override
-                public ScheduleHandle scheduleHandle() {
-                    // 这里有可能是 null, 假设 startDelay 为 0 时 有可能先调用 runTask 然后才有返回值
-                    return scheduleHandle;
-                }
+    }
 
-            });
-        } catch (Throwable e) {
-            if (errorHandler != null) {
-                try {
-                    errorHandler.accept(e);
-                } catch (Throwable ex) {
-                    e.addSuppressed(ex);
-                    LOGGER.log(ERROR, "errorHandler 发生错误 !!!", e);
+    /// 按照过期策略处理运行时的错过, 返回 true 表示本次不再执行 (下一次的调度也已经处理)
+    private boolean handleMisfire(long nowNanos, long lagNanos) {
+        var current = runCount.get();
+        // 除了本次之外 还错过了多少次
+        var missCount = lagNanos / intervalNanos;
+        notifyMisfire(lagNanos, missCount + 1);
+        switch (expirationPolicy) {
+            case IMMEDIATE_IGNORE -> {
+                notifySkipped(missCount + 1, EXPIRED);
+                // 矫正 startNanos (保持原有的相位, 跳过的不计入次数)
+                this.startNanos = startNanos + (missCount + 1) * intervalNanos;
+                scheduleSlot(current, nowNanos);
+                return true;
+            }
+            case BACKTRACKING_IGNORE -> {
+                // 跳过的计入次数 (不能超过最大次数)
+                var skipCount = maxRunCount != -1 ? Math.min(missCount + 1, maxRunCount - current) : missCount + 1;
+                notifySkipped(skipCount, EXPIRED);
+                var l = runCount.addAndGet(skipCount);
+                if (maxRunCount == -1 || l < maxRunCount) {
+                    scheduleSlot(l, nowNanos);
+                } else {
+                    // 最后一次被跳过了, 调度在这里结束
+                    unregister();
                 }
-            } else {
-                LOGGER.log(ERROR, "调度任务时发生错误 !!!", e);
+                return true;
+            }
+            case IMMEDIATE_COMPENSATION -> {
+                // 错过的多次执行 合并为这一次
+                notifySkipped(missCount, EXPIRED);
+                // 矫正 startNanos (以现在作为本次的理想时间点)
+                this.startNanos = nowNanos - current * intervalNanos;
+                return false;
+            }
+            case BACKTRACKING_COMPENSATION -> {
+                // 本次 和 错过的 都交给 "补偿运行" (可以限速 或 合并), 完成后恢复正常调度
+                startCompensation(missCount + 1, resumeTask);
+                return true;
             }
         }
+        return false;
+    }
 
+    @Override
+    protected boolean compensate() {
+        var l = runCount.incrementAndGet();
+        // 已经取消了 或者 达到了最大次数
+        if (isCancelled() || maxRunCount != -1 && l > maxRunCount) {
+            return false;
+        }
+        dispatch(l);
+        return true;
+    }
+
+    @Override
+    protected boolean compensateBatch(long count) {
+        // 不能超过最大次数
+        if (maxRunCount != -1) {
+            count = Math.min(count, maxRunCount - runCount.get());
+        }
+        if (count <= 0 || isCancelled()) {
+            return false;
+        }
+        var l = runCount.addAndGet(count);
+        batchSize = count;
+        batchRunCount = l;
+        dispatch(l);
+        return true;
+    }
+
+    @Override
+    protected CompletionStage<?> execute(long currentRunCount) {
+        var size = currentRunCount == batchRunCount ? batchSize : 1;
+        // 第 n 次执行 对应的理想时间点是 scheduledNanosOf(n - 1), 合并时 以合并的第一次的理想时间点 计算延迟
+        var lagNanos = System.nanoTime() - scheduledNanosOf(currentRunCount - size);
+        return invokeTask(currentRunCount, lagNanos, size);
     }
 
 }
@@ -1,6 +1,8 @@
 package dev.scx.scheduling.periodic;
 
+import dev.scx.scheduling.ConcurrencyPolicy;
 import dev.scx.scheduling.ExpirationPolicy;
+import dev.scx.scheduling.ScheduleCalendar;
 import dev.scx.scheduling.ScheduleTask;
 
 import java.time.Duration;
@@ -22,6 +24,34 @@ public interface PeriodicScheduleTask extends ScheduleTask<PeriodicScheduleTask>
 
     PeriodicScheduleTask expirationPolicy(ExpirationPolicy expirationPolicy);
 
+    /// BACKTRACKING_COMPENSATION 时 每秒最多补偿多少次 (默认 0, 表示不限制).
+    /// "补偿运行" 总是在 timer 中异步进行, 不会阻塞 start().
+    PeriodicScheduleTask compensationRate(int maxRunsPerSecond);
+
+    /// BACKTRACKING_COMPENSATION 时 是否将错过的多次执行合并为一次 (默认 false).
+    /// 合并的次数可以通过 [dev.scx.scheduling.TaskContext#batchSize()] 获取, runCount 仍然会增加相应的次数.
+    PeriodicScheduleTask batchCompensation(boolean batchCompensation);
+
+    /// 运行时错过的阈值 (默认 null, 表示不检测).
+    /// 到期时如果晚了超过这个阈值, 同样按照 expirationPolicy 处理 (而不是连续地立即执行错过的每一次).
+    PeriodicScheduleTask misfireThreshold(Duration misfireThreshold);
+
+    /// 偏移 (默认不偏移) : 所有执行都推迟一个由 key 的哈希值决定的固定偏移量 (在 [0, window) 之间), 用于分散同时到期的大量调度.
+    /// nextRunTime 同样包含偏移. fixedDelay 只有首次执行会偏移 (之后的执行以上一次的结束时间为基准).
+    PeriodicScheduleTask splay(Duration window, String key);
+
+    /// 日历 (默认 null, 表示不限制) : 被排除的时间点直接跳到下一个允许的时间点, 不会唤醒 timer, 也不计入 runCount.
+    /// fixedRate 整周期地跳过 (保持原有的相位), fixedDelay 推迟到下一个允许的时间点. "补偿运行" 不受日历限制.
+    PeriodicScheduleTask calendar(ScheduleCalendar calendar);
+
+    /// 并发策略 (默认 ALLOW), 只对 fixedRate 有效, QUEUE 时最多排队 1 次
+    PeriodicScheduleTask concurrencyPolicy(ConcurrencyPolicy concurrencyPolicy);
+
+    /// 并发策略 (默认 ALLOW), 只对 fixedRate 有效
+    ///
+    /// @param maxQueuedRuns 最多排队的次数 (只对 QUEUE 有效)
+    PeriodicScheduleTask concurrencyPolicy(ConcurrencyPolicy concurrencyPolicy, int maxQueuedRuns);
+
     default PeriodicScheduleTask startTime(Instant startTime) {
         return startTime(() -> startTime);
     }
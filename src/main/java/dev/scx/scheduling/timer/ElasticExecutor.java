@@ -0,0 +1,158 @@
+package dev.scx.scheduling.timer;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/// 弹性线程池
+///
+/// 根据 "到期任务的延迟" (实际开始执行时间 - 到期时间) 和 线程利用率, 在 [minThreads, maxThreads] 之间自动调整线程数.
+///
+/// - 延迟只对 [TimingWheelTimer] 提交的任务统计 (直接读取任务的到期时间, 不需要额外包装).
+/// - 不需要额外的线程 : 调整在 提交 和 开始执行 时顺带进行, 每个 adjustInterval 最多一次.
+/// - 空闲的线程会在 keepAlive 之后退出.
+///
+/// 扩容条件 : 延迟超过 targetLag 并且有排队的任务. 缩容条件 : 延迟低于 targetLag 的一半 并且 利用率低于一半.
+///
+/// @author scx567888
+public final class ElasticExecutor extends ThreadPoolExecutor {
+
+    private static final AtomicInteger POOL_ID = new AtomicInteger(0);
+
+    private final int minThreads;
+    private final int maxThreads;
+    private final long targetLagNanos;
+    private final long adjustIntervalNanos;
+
+    private final AtomicLong lastAdjustNanos;
+    private final LongAdder growCount;
+    private final LongAdder shrinkCount;
+    // 延迟的指数移动平均 (权重 1/8). 多个线程同时更新时 可能丢失个别样本, 对统计没有影响
+    private volatile long lagNanos;
+
+    /// 使用默认的 targetLag (10 毫秒), adjustInterval (100 毫秒) 和 keepAlive (60 秒) 创建
+    public ElasticExecutor(int minThreads, int maxThreads) {
+        this(minThreads, maxThreads, TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(100), SECONDS.toNanos(60));
+    }
+
+    /// @param minThreads          最少线程数
+    /// @param maxThreads          最多线程数
+    /// @param targetLagNanos      可以接受的延迟
+    /// @param adjustIntervalNanos 两次调整的最小间隔
+    /// @param keepAliveNanos      空闲线程的存活时间
+    public ElasticExecutor(int minThreads, int maxThreads, long targetLagNanos, long adjustIntervalNanos, long keepAliveNanos) {
+        super(checkMin(minThreads), Math.max(minThreads, maxThreads), keepAliveNanos, TimeUnit.NANOSECONDS, new LinkedBlockingQueue<>(), newThreadFactory());
+        if (maxThreads < minThreads) {
+            throw new IllegalArgumentException("maxThreads 不能小于 minThreads !!!");
+        }
+        if (targetLagNanos <= 0) {
+            throw new IllegalArgumentException("targetLagNanos 必须大于 0 !!!");
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetLagNanos = targetLagNanos;
+        this.adjustIntervalNanos = adjustIntervalNanos;
+        this.lastAdjustNanos = new AtomicLong(System.nanoTime());
+        this.growCount = new LongAdder();
+        this.shrinkCount = new LongAdder();
+        this.lagNanos = 0;
+        allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command);
+        maybeAdjust(System.nanoTime());
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        var now = System.nanoTime();
+        if (r instanceof TimingWheelTask task) {
+            var sample = Math.max(now - task.deadlineNanos, 0);
+            var old = lagNanos;
+            lagNanos = old + ((sample - old) >> 3);
+        }
+        maybeAdjust(now);
+    }
+
+    private void maybeAdjust(long now) {
+        var last = lastAdjustNanos.get();
+        if (now - last < adjustIntervalNanos || !lastAdjustNanos.compareAndSet(last, now)) {
+            return;
+        }
+        var queue = getQueue();
+        // 排队最久的任务的延迟 (线程全部阻塞时 不会有新的样本, 只能从这里得知)
+        var headLag = queue.peek() instanceof TimingWheelTask task ? now - task.deadlineNanos : 0;
+        var lag = Math.max(lagNanos, headLag);
+        var core = getCorePoolSize();
+        if (lag > targetLagNanos && !queue.isEmpty()) {
+            if (core < maxThreads) {
+                // 每次增加 1/4 (至少 1 个)
+                setCorePoolSize(Math.min(core + Math.max(core >> 2, 1), maxThreads));
+                growCount.increment();
+            }
+        } else if (lag < targetLagNanos >> 1 && core > minThreads && getActiveCount() < core >> 1) {
+            setCorePoolSize(core - 1);
+            shrinkCount.increment();
+        }
+    }
+
+    public int minThreads() {
+        return minThreads;
+    }
+
+    public int maxThreads() {
+        return maxThreads;
+    }
+
+    public long targetLagNanos() {
+        return targetLagNanos;
+    }
+
+    /// 到期任务的平均延迟 (指数移动平均)
+    public long lagNanos() {
+        return lagNanos;
+    }
+
+    /// 当前的目标线程数
+    public int targetThreads() {
+        return getCorePoolSize();
+    }
+
+    /// 线程利用率 (正在执行任务的线程 / 当前线程数)
+    public double utilization() {
+        var poolSize = getPoolSize();
+        return poolSize == 0 ? 0 : (double) getActiveCount() / poolSize;
+    }
+
+    /// 扩容的次数
+    public long growCount() {
+        return growCount.sum();
+    }
+
+    /// 缩容的次数
+    public long shrinkCount() {
+        return shrinkCount.sum();
+    }
+
+    private static int checkMin(int minThreads) {
+        if (minThreads <= 0) {
+            throw new IllegalArgumentException("minThreads 必须大于 0 !!!");
+        }
+        return minThreads;
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        var poolId = POOL_ID.incrementAndGet();
+        var threadId = new AtomicInteger(0);
+        return r -> new Thread(r, "scx-elastic-" + poolId + "-" + threadId.incrementAndGet());
+    }
+
+}
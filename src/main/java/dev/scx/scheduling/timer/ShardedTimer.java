@@ -0,0 +1,120 @@
+package dev.scx.scheduling.timer;
+
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/// 分片定时器
+///
+/// 由多个相互独立的 [TimingWheelTimer] 组成 (共享同一个 executor), 按调用线程选择分片,
+/// 这样大量线程同时添加任务时 不会竞争同一个队列 和 同一个 tick 线程.
+///
+/// - 选择分片是无锁的 (只是一次位运算), 同一个线程总是落在同一个分片.
+/// - 取消通过各自分片返回的 TaskHandle 进行, 不经过本类.
+///
+/// @author scx567888
+public final class ShardedTimer implements ScxTimer {
+
+    private final Executor executor;
+    private final TimingWheelTimer[] shards;
+    private final int shardMask;
+
+    /// @param executor   实际执行任务的线程池 (所有分片共享)
+    /// @param shardCount 分片数量, 会向上取整为 2 的幂
+    public ShardedTimer(Executor executor, int shardCount) {
+        if (executor == null) {
+            throw new NullPointerException("executor 不允许为空 !!!");
+        }
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount 必须大于 0 !!!");
+        }
+        this.executor = executor;
+        var size = shardCount == 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+        this.shards = new TimingWheelTimer[size];
+        for (var i = 0; i < size; i = i + 1) {
+            this.shards[i] = new TimingWheelTimer(executor);
+        }
+        this.shardMask = size - 1;
+    }
+
+    @Override
+    public TaskHandle runAfter(Runnable task, long delay, TimeUnit unit) {
+        return shardOf(Thread.currentThread()).runAfter(task, delay, unit);
+    }
+
+    /// 实际执行任务的线程池 (所有分片共享)
+    public Executor executor() {
+        return executor;
+    }
+
+    /// 分片数量
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /// 指定分片 尚未到期 (也未取消) 的任务数量
+    public long pendingCount(int shard) {
+        return shards[shard].pendingCount();
+    }
+
+    /// 所有分片 尚未到期 (也未取消) 的任务数量
+    public long pendingCount() {
+        var sum = 0L;
+        for (var shard : shards) {
+            sum = sum + shard.pendingCount();
+        }
+        return sum;
+    }
+
+    /// 所有分片的 tick 线程 醒来的次数
+    public long wakeupCount() {
+        var sum = 0L;
+        for (var shard : shards) {
+            sum = sum + shard.wakeupCount();
+        }
+        return sum;
+    }
+
+    /// 关闭所有分片. 不会关闭 executor.
+    public void shutdown() {
+        for (var shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shards[0].isShutdown();
+    }
+
+    /// 关闭之后 等待所有分片的 tick 线程退出 (之后不会再向 executor 提交任务), 超时返回 false
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        for (var shard : shards) {
+            if (!shard.awaitTermination(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /// 添加关闭时的回调 (所有分片同时关闭, 由第一个分片负责执行)
+    public void onShutdown(Runnable hook) {
+        shards[0].onShutdown(hook);
+    }
+
+    /// 移除关闭时的回调
+    public boolean removeShutdownHook(Runnable hook) {
+        return shards[0].removeShutdownHook(hook);
+    }
+
+    private TimingWheelTimer shardOf(Thread thread) {
+        // 线程 id 是递增的, 混合一下高位 让相邻的线程 (比如同一个线程池中的) 也能均匀分布
+        var id = thread.threadId();
+        var h = (int) (id ^ (id >>> 32));
+        h = h ^ (h >>> 16);
+        return shards[h & shardMask];
+    }
+
+}
@@ -0,0 +1,55 @@
+package dev.scx.scheduling.timer;
+
+/// 时间轮槽位 (双向链表), 只会被 tick 线程访问.
+///
+/// @author scx567888
+final class TimingWheelBucket {
+
+    private TimingWheelTask head;
+    private TimingWheelTask tail;
+
+    void add(TimingWheelTask task) {
+        task.bucket = this;
+        if (tail == null) {
+            head = task;
+            tail = task;
+        } else {
+            tail.next = task;
+            task.prev = tail;
+            tail = task;
+        }
+    }
+
+    /// O(1) 摘除
+    void remove(TimingWheelTask task) {
+        if (task.bucket != this) {
+            return;
+        }
+        var prev = task.prev;
+        var next = task.next;
+        if (prev != null) {
+            prev.next = next;
+        } else {
+            head = next;
+        }
+        if (next != null) {
+            next.prev = prev;
+        } else {
+            tail = prev;
+        }
+        task.unlink();
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    /// 清空槽位 并返回原链表的头节点 (调用方需要逐个 unlink)
+    TimingWheelTask clear() {
+        var h = head;
+        head = null;
+        tail = null;
+        return h;
+    }
+
+}
@@ -0,0 +1,87 @@
+package dev.scx.scheduling.timer;
+
+import dev.scx.timer.TaskHandle;
+import dev.scx.timer.TaskStatus;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static dev.scx.timer.TaskStatus.*;
+
+/// 时间轮中的任务 同时也是返回给调用方的 TaskHandle.
+///
+/// @author scx567888
+final class TimingWheelTask implements TaskHandle, Runnable {
+
+    private static final AtomicReferenceFieldUpdater<TimingWheelTask, TaskStatus> STATUS =
+        AtomicReferenceFieldUpdater.newUpdater(TimingWheelTask.class, TaskStatus.class, "status");
+
+    private final TimingWheelTimer timer;
+    final long deadlineNanos;
+
+    // 取消后会被置空, 以便尽早释放任务持有的引用
+    private Runnable task;
+    private volatile TaskStatus status;
+
+    // 以下字段只会被 tick 线程访问
+    long deadlineTick;
+    TimingWheelBucket bucket;
+    TimingWheelTask prev;
+    TimingWheelTask next;
+
+    TimingWheelTask(TimingWheelTimer timer, Runnable task, long deadlineNanos) {
+        this.timer = timer;
+        this.task = task;
+        this.deadlineNanos = deadlineNanos;
+        this.status = PENDING;
+    }
+
+    @Override
+    public boolean cancel() {
+        if (STATUS.compareAndSet(this, PENDING, CANCELLED)) {
+            task = null;
+            timer.onCancelled(this);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public TaskStatus status() {
+        return status;
+    }
+
+    boolean isCancelled() {
+        return status == CANCELLED;
+    }
+
+    /// 到期, 之后便无法取消
+    boolean expire() {
+        return STATUS.compareAndSet(this, PENDING, RUNNING);
+    }
+
+    void reject(Throwable e) {
+        task = null;
+        status = FAILED;
+        TimingWheelTimer.logTaskError(e);
+    }
+
+    void unlink() {
+        bucket = null;
+        prev = null;
+        next = null;
+    }
+
+    @Override
+    public void run() {
+        var t = task;
+        task = null;
+        try {
+            t.run();
+            status = SUCCESS;
+        } catch (Throwable e) {
+            status = FAILED;
+            TimingWheelTimer.logTaskError(e);
+        }
+    }
+
+}
@@ -0,0 +1,424 @@
+package dev.scx.scheduling.timer;
+
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+
+import java.lang.System.Logger;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.Logger.Level.ERROR;
+import static java.lang.System.getLogger;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/// 分层时间轮定时器 (Hierarchical Timing Wheel)
+///
+/// - 添加 和 取消 都是 O(1) 的无锁操作 (只是入队 和 CAS 状态), 真正的入槽和摘除由 tick 线程完成.
+/// - 第 0 层 每个槽代表 1 个 tick, 第 n 层 每个槽代表 wheelSize^n 个 tick.
+/// - 超出现有层级范围的远期任务 会按需创建溢出层 (overflow wheel), 并在时间推进时逐级下沉 (cascade).
+/// - 到期的任务会交给 executor 执行, tick 线程本身从不执行任务.
+/// - tick 线程只在 "有任务到期" 或 "高层需要下沉" 的 tick 醒来, 没有任务时一直休眠 (直到添加了更早到期的任务),
+///   空闲时几乎不消耗 CPU. 同一个 tick 内到期的任务 共享一次唤醒, 配合 [dev.scx.scheduling.ScheduleTask#slack(java.time.Duration)] 可以进一步合并唤醒.
+///
+/// @author scx567888
+public final class TimingWheelTimer implements ScxTimer {
+
+    private static final Logger LOGGER = getLogger(TimingWheelTimer.class.getName());
+
+    private static final AtomicInteger TIMER_ID = new AtomicInteger(0);
+
+    /// 最长的延迟 (约 73 年), 更长的视为这个值, 避免到期时间溢出而立即执行
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 2;
+
+    /// wakeNanos 的特殊值 : tick 线程醒着 (System.nanoTime() 可能为负数, 所以不能使用 0)
+    private static final long AWAKE = Long.MIN_VALUE;
+
+    private final Executor executor;
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final int maxLevel;
+
+    private final ConcurrentLinkedQueue<TimingWheelTask> newTasks;
+    private final ConcurrentLinkedQueue<TimingWheelTask> cancelledTasks;
+    private final AtomicLong pendingCount;
+    // 关闭后 (所有任务都已取消) 执行的回调
+    private final ConcurrentLinkedQueue<Runnable> shutdownHooks;
+
+    private final long startNanos;
+    private final Thread workerThread;
+
+    // 以下字段只会被 workerThread 访问
+    private final ArrayList<TimingWheelBucket[]> wheels;
+    private long currentTick;
+
+    // tick 线程计划醒来的时间, Long.MAX_VALUE 表示无限期休眠, AWAKE 表示正在处理 (不需要唤醒).
+    // 添加的任务比它更早到期时 需要唤醒 tick 线程
+    private volatile long wakeNanos;
+    private final AtomicLong wakeupCount;
+
+    private volatile boolean shutdown;
+    // tick 线程已经开始执行关闭回调, 之后添加的回调 由添加方执行
+    private volatile boolean shutdownHooksStarted;
+
+    /// 使用默认的 tick (1 毫秒) 和 槽位数 (512) 创建
+    public TimingWheelTimer(Executor executor) {
+        this(executor, 1, MILLISECONDS, 512);
+    }
+
+    /// @param executor     实际执行任务的线程池
+    /// @param tickDuration tick 时长 (即定时精度)
+    /// @param unit         tick 时长的单位
+    /// @param wheelSize    每层的槽位数, 必须是 2 的幂
+    public TimingWheelTimer(Executor executor, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (executor == null) {
+            throw new NullPointerException("executor 不允许为空 !!!");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit 不允许为空 !!!");
+        }
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration 必须大于 0 !!!");
+        }
+        if (wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize 必须是大于 1 的 2 的幂 !!!");
+        }
+        this.executor = executor;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+        this.wheelMask = wheelSize - 1;
+        // 最多需要的层数 (足以覆盖 long 范围内的所有 tick)
+        this.maxLevel = (63 + wheelBits - 1) / wheelBits - 1;
+        this.newTasks = new ConcurrentLinkedQueue<>();
+        this.cancelledTasks = new ConcurrentLinkedQueue<>();
+        this.pendingCount = new AtomicLong(0);
+        this.shutdownHooks = new ConcurrentLinkedQueue<>();
+        this.wheels = new ArrayList<>();
+        this.wheels.add(newWheel());
+        this.currentTick = 0;
+        this.wakeNanos = AWAKE;
+        this.wakeupCount = new AtomicLong(0);
+        this.shutdown = false;
+        this.shutdownHooksStarted = false;
+        this.startNanos = System.nanoTime();
+        this.workerThread = new Thread(this::workerLoop, "scx-timing-wheel-" + TIMER_ID.incrementAndGet());
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    @Override
+    public TaskHandle runAfter(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task 不允许为空 !!!");
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("TimingWheelTimer 已关闭 !!!");
+        }
+        var deadlineNanos = System.nanoTime() + Math.clamp(unit.toNanos(delay), 0, MAX_DELAY_NANOS);
+        var timerTask = new TimingWheelTask(this, task, deadlineNanos);
+        pendingCount.incrementAndGet();
+        newTasks.offer(timerTask);
+        // 入队时 tick 线程可能已经关闭并清空了队列, 这里负责取消 (tick 线程还没清空时 重复取消也没有影响)
+        if (shutdown) {
+            timerTask.cancel();
+            throw new RejectedExecutionException("TimingWheelTimer 已关闭 !!!");
+        }
+        // 先入队再读取 wakeNanos (tick 线程 先写 wakeNanos 再检查队列), 两边至少有一边能看到对方
+        if (deadlineNanos < wakeNanos) {
+            LockSupport.unpark(workerThread);
+        }
+        return timerTask;
+    }
+
+    /// 尚未到期 (也未取消) 的任务数量
+    public long pendingCount() {
+        return pendingCount.get();
+    }
+
+    /// tick 线程醒来处理到期任务的次数
+    public long wakeupCount() {
+        return wakeupCount.get();
+    }
+
+    /// 实际执行任务的线程池
+    public Executor executor() {
+        return executor;
+    }
+
+    /// tick 时长 (纳秒)
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    /// 关闭定时器, 所有尚未到期的任务都会被取消. 不会关闭 executor.
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(workerThread);
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /// 关闭之后 等待 tick 线程退出 (之后不会再向 executor 提交任务, 关闭回调也已经执行完), 超时返回 false
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        unit.timedJoin(workerThread, timeout);
+        return !workerThread.isAlive();
+    }
+
+    /// 添加关闭时的回调, 在 tick 线程取消了所有任务之后执行. 已经关闭时 立即在当前线程执行.
+    public void onShutdown(Runnable hook) {
+        if (hook == null) {
+            throw new NullPointerException("hook 不允许为空 !!!");
+        }
+        shutdownHooks.offer(hook);
+        // 与 tick 线程的清空并发时, 谁移除成功 谁负责执行
+        if (shutdownHooksStarted && shutdownHooks.remove(hook)) {
+            runShutdownHook(hook);
+        }
+    }
+
+    /// 移除关闭时的回调
+    public boolean removeShutdownHook(Runnable hook) {
+        return shutdownHooks.remove(hook);
+    }
+
+    /// 由 TimingWheelTask 在成功取消后调用
+    void onCancelled(TimingWheelTask task) {
+        pendingCount.decrementAndGet();
+        cancelledTasks.offer(task);
+    }
+
+    /// 由 TimingWheelTask 在开始执行时调用
+    void execute(TimingWheelTask task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.reject(e);
+        }
+    }
+
+    private void workerLoop() {
+        while (!shutdown) {
+            // 先发布计划醒来的时间 再检查新任务, 与 runAfter 配合 避免错过唤醒
+            var wakeTick = nextWakeTick();
+            wakeNanos = toNanos(wakeTick);
+            if (!newTasks.isEmpty()) {
+                wakeTick = Math.min(wakeTick, currentTick + 1);
+            }
+            var sleepNanos = toNanos(wakeTick) - System.nanoTime();
+            if (sleepNanos > 0) {
+                if (wakeTick == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, sleepNanos);
+                }
+                continue;
+            }
+            wakeNanos = AWAKE;
+            wakeupCount.incrementAndGet();
+            // 直接跳到下一个需要处理的 tick (第 0 层的非空槽位 或 高层的非空槽位下沉的时刻), 中间没有任务的 tick 无需逐个推进.
+            // 长时间的空闲 (或 GC 停顿) 之后 追赶的开销只与有任务的 tick 数量有关.
+            // 被跳过的 tick 上 高层的槽位都是空的, 所以跳过它们的下沉也不会遗漏任务; 新添加的任务在跳到的 tick 上按当时的 tick 入槽.
+            var reachedTick = (System.nanoTime() - startNanos) / tickNanos;
+            while (currentTick < reachedTick && !shutdown) {
+                currentTick = Math.min(nextWakeTick(), reachedTick);
+                advance();
+            }
+        }
+        cancelAll();
+        shutdownHooksStarted = true;
+        Runnable hook;
+        while ((hook = shutdownHooks.poll()) != null) {
+            runShutdownHook(hook);
+        }
+    }
+
+    private static void runShutdownHook(Runnable hook) {
+        try {
+            hook.run();
+        } catch (Throwable e) {
+            LOGGER.log(ERROR, "TimingWheelTimer 执行关闭回调时发生错误 !!!", e);
+        }
+    }
+
+    /// 下一个需要醒来的 tick : 第 0 层下一个非空槽位, 或者 高层下一个非空槽位下沉的时刻. 没有任务时返回 Long.MAX_VALUE
+    private long nextWakeTick() {
+        // 取消的任务留在槽位中 会导致不必要的唤醒
+        removeCancelledTasks();
+        if (pendingCount.get() == 0) {
+            return Long.MAX_VALUE;
+        }
+        var wheelSize = wheelMask + 1;
+        var wakeTick = Long.MAX_VALUE;
+        var wheel = wheels.get(0);
+        for (var i = 1; i < wheelSize; i = i + 1) {
+            var tick = currentTick + i;
+            if (!wheel[(int) (tick & wheelMask)].isEmpty()) {
+                wakeTick = tick;
+                break;
+            }
+        }
+        for (var level = 1; level < wheels.size(); level = level + 1) {
+            var shift = wheelBits * level;
+            var index = currentTick >>> shift;
+            wheel = wheels.get(level);
+            for (var i = 1; i <= wheelSize; i = i + 1) {
+                // 超出 long 范围
+                if (((index + i) >>> (63 - shift)) != 0) {
+                    break;
+                }
+                var tick = (index + i) << shift;
+                if (tick >= wakeTick) {
+                    break;
+                }
+                if (!wheel[(int) ((index + i) & wheelMask)].isEmpty()) {
+                    wakeTick = tick;
+                    break;
+                }
+            }
+        }
+        // 有任务但不在轮中 (还在 newTasks 里), 由调用方处理
+        return wakeTick;
+    }
+
+    private long toNanos(long tick) {
+        // 足够远的将来 视为无限期
+        if (tick > (Long.MAX_VALUE >> 2) / tickNanos) {
+            return Long.MAX_VALUE;
+        }
+        return startNanos + tick * tickNanos;
+    }
+
+    private void advance() {
+        cascade();
+        transferNewTasks();
+        removeCancelledTasks();
+        expireCurrentBucket();
+    }
+
+    /// 当低层转完一圈时 将高层当前槽位中的任务重新分配到低层
+    private void cascade() {
+        for (var level = 1; level < wheels.size(); level = level + 1) {
+            var shift = wheelBits * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            var slot = (int) ((currentTick >>> shift) & wheelMask);
+            var task = wheels.get(level)[slot].clear();
+            while (task != null) {
+                var next = task.next;
+                task.unlink();
+                // 已经取消的任务 无需再下沉
+                if (!task.isCancelled()) {
+                    place(task);
+                }
+                task = next;
+            }
+        }
+    }
+
+    private void transferNewTasks() {
+        TimingWheelTask task;
+        while ((task = newTasks.poll()) != null) {
+            // 入槽前已经被取消了
+            if (task.isCancelled()) {
+                continue;
+            }
+            task.deadlineTick = toDeadlineTick(task.deadlineNanos);
+            place(task);
+        }
+    }
+
+    private void removeCancelledTasks() {
+        TimingWheelTask task;
+        while ((task = cancelledTasks.poll()) != null) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+            }
+        }
+    }
+
+    private void expireCurrentBucket() {
+        var bucket = wheels.get(0)[(int) (currentTick & wheelMask)];
+        var task = bucket.clear();
+        while (task != null) {
+            var next = task.next;
+            task.unlink();
+            if (task.deadlineTick > currentTick) {
+                // 理论上不会发生, 保险起见重新分配
+                place(task);
+            } else if (task.expire()) {
+                pendingCount.decrementAndGet();
+                execute(task);
+            }
+            task = next;
+        }
+    }
+
+    private void place(TimingWheelTask task) {
+        var delta = task.deadlineTick - currentTick;
+        if (delta <= 0) {
+            // 已经到期 放入当前槽位 本次 tick 就会执行
+            wheels.get(0)[(int) (currentTick & wheelMask)].add(task);
+            return;
+        }
+        var level = 0;
+        while (level < maxLevel && (delta >>> (wheelBits * (level + 1))) != 0) {
+            level = level + 1;
+        }
+        // 按需创建溢出层
+        while (wheels.size() <= level) {
+            wheels.add(newWheel());
+        }
+        var slot = (int) ((task.deadlineTick >>> (wheelBits * level)) & wheelMask);
+        wheels.get(level)[slot].add(task);
+    }
+
+    /// 向上取整 保证任务不会提前执行
+    private long toDeadlineTick(long deadlineNanos) {
+        var elapsed = deadlineNanos - startNanos;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return (elapsed + tickNanos - 1) / tickNanos;
+    }
+
+    private void cancelAll() {
+        TimingWheelTask task;
+        while ((task = newTasks.poll()) != null) {
+            task.cancel();
+        }
+        for (var wheel : wheels) {
+            for (var bucket : wheel) {
+                var t = bucket.clear();
+                while (t != null) {
+                    var next = t.next;
+                    t.unlink();
+                    t.cancel();
+                    t = next;
+                }
+            }
+        }
+        cancelledTasks.clear();
+    }
+
+    private TimingWheelBucket[] newWheel() {
+        var wheel = new TimingWheelBucket[wheelMask + 1];
+        for (var i = 0; i < wheel.length; i = i + 1) {
+            wheel[i] = new TimingWheelBucket();
+        }
+        return wheel;
+    }
+
+    static void logTaskError(Throwable e) {
+        LOGGER.log(ERROR, "TimingWheelTimer 执行任务时发生错误 !!!", e);
+    }
+
+}
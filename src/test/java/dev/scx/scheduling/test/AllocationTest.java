@@ -0,0 +1,78 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+/// 验证 稳定状态下 每次调度 (runTask -> 子任务 -> 调度下一次) 不会产生对象分配.
+///
+/// 这里使用手动驱动的 [ManualTimer], 在当前线程中同步触发任务, 以便用当前线程的分配字节数来测量.
+public class AllocationTest {
+
+    private static final int WARMUP_TICKS = 50_000;
+    private static final int MEASURE_TICKS = 100_000;
+
+    public static void main(String[] args) {
+        testFixedRate();
+        testFixedDelay();
+        testMetrics();
+    }
+
+    @Test
+    public static void testFixedRate() {
+        var timer = new ManualTimer();
+        var handle = ScxScheduling.fixedRate(timer).interval(Duration.ofMillis(1)).start(c -> {});
+        var allocated = measure(timer);
+        System.out.println("fixedRate : " + allocated + " bytes / " + MEASURE_TICKS + " ticks");
+        Assert.assertTrue(allocated < MEASURE_TICKS, "fixedRate 每次调度都产生了对象分配 : " + allocated + " bytes");
+        // 触发期间 TaskHandle 不是 CANCELLED, 调度一直在运行
+        Assert.assertEquals(handle.runCount(), WARMUP_TICKS + MEASURE_TICKS);
+        Assert.assertEquals(handle.status(), ScheduleStatus.RUNNING);
+        handle.cancel();
+        Assert.assertEquals(handle.status(), ScheduleStatus.CANCELLED);
+        Assert.assertFalse(timer.hasPending());
+    }
+
+    @Test
+    public static void testFixedDelay() {
+        var timer = new ManualTimer();
+        var handle = ScxScheduling.fixedDelay(timer).interval(Duration.ofMillis(1)).start(c -> {});
+        var allocated = measure(timer);
+        System.out.println("fixedDelay : " + allocated + " bytes / " + MEASURE_TICKS + " ticks");
+        Assert.assertTrue(allocated < MEASURE_TICKS, "fixedDelay 每次调度都产生了对象分配 : " + allocated + " bytes");
+        handle.cancel();
+    }
+
+    /// 开启内置统计之后 同样不应该产生对象分配
+    @Test
+    public static void testMetrics() {
+        var timer = new ManualTimer();
+        var metrics = new ScheduleMetrics();
+        var handle = ScxScheduling.fixedRate(timer).interval(Duration.ofMillis(1)).listener(metrics).start(c -> {});
+        var allocated = measure(timer);
+        System.out.println("fixedRate + metrics : " + allocated + " bytes / " + MEASURE_TICKS + " ticks");
+        Assert.assertTrue(allocated < MEASURE_TICKS, "开启统计后 每次调度都产生了对象分配 : " + allocated + " bytes");
+        Assert.assertEquals(metrics.global().runCount(), WARMUP_TICKS + MEASURE_TICKS);
+        handle.cancel();
+    }
+
+    /// 返回 MEASURE_TICKS 次调度中 当前线程分配的字节数
+    private static long measure(ManualTimer timer) {
+        var threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (var i = 0; i < WARMUP_TICKS; i = i + 1) {
+            timer.fire();
+        }
+        var before = threadMXBean.getCurrentThreadAllocatedBytes();
+        for (var i = 0; i < MEASURE_TICKS; i = i + 1) {
+            timer.fire();
+        }
+        var after = threadMXBean.getCurrentThreadAllocatedBytes();
+        return after - before;
+    }
+
+}
@@ -0,0 +1,106 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ConcurrencyPolicy;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static dev.scx.scheduling.SkipReason.OVERLAP;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/// 异步任务 : 返回的 CompletableFuture 100 毫秒后才完成
+public class AsyncTaskTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testFixedDelay();
+        testError();
+        testConcurrency();
+    }
+
+    @Test
+    public static void testFixedDelay() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var runCount = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedDelay(timer)
+            .interval(Duration.ofMillis(10))
+            .startAsync(c -> {
+                runCount.incrementAndGet();
+                return later(100, null);
+            });
+        Thread.sleep(500);
+        handle.cancel();
+        // 每次 100 毫秒 + 10 毫秒, 而不是每 10 毫秒一次
+        Assert.assertTrue(runCount.get() >= 3 && runCount.get() <= 5, "runCount : " + runCount.get());
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testError() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var metrics = new ScheduleMetrics(false);
+        var error = new AtomicReference<Throwable>();
+        var exception = new IllegalStateException("test");
+        ScxScheduling.oneTime(timer)
+            .listener(metrics)
+            .onError(error::set)
+            .startAsync(c -> later(100, exception));
+        Thread.sleep(50);
+        // 还没有完成
+        Assert.assertNull(error.get());
+        Assert.assertEquals(metrics.global().runCount(), 0);
+        Thread.sleep(200);
+        Assert.assertSame(error.get(), exception);
+        Assert.assertEquals(metrics.global().runCount(), 1);
+        Assert.assertEquals(metrics.global().failureCount(), 1);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testConcurrency() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var metrics = new ScheduleMetrics(false);
+        var running = new AtomicInteger(0);
+        var maxRunning = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(20))
+            .concurrencyPolicy(ConcurrencyPolicy.SKIP)
+            .listener(metrics)
+            .startAsync(c -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                return later(100, null).whenComplete((r, e) -> running.decrementAndGet());
+            });
+        Thread.sleep(500);
+        handle.cancel();
+        // 以完成为准判断重叠
+        Assert.assertEquals(maxRunning.get(), 1);
+        Assert.assertTrue(metrics.global().skipCount(OVERLAP) >= 10, "skipCount : " + metrics.global().skipCount(OVERLAP));
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    private static CompletableFuture<Void> later(long millis, Throwable error) {
+        var future = new CompletableFuture<Void>();
+        CompletableFuture.delayedExecutor(millis, MILLISECONDS).execute(() -> {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+}
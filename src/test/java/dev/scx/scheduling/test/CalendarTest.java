@@ -0,0 +1,176 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScheduleCalendar;
+import dev.scx.scheduling.ScheduleRegistry;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+
+public class CalendarTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testNextAllowed();
+        testSchedule();
+        testSkip();
+        testExhausted();
+    }
+
+    @Test
+    public static void testNextAllowed() {
+        // 工作日 9:00 到 17:00, 2026-10-19 (周一) 放假
+        var calendar = new ScheduleCalendar(ZoneOffset.UTC)
+            .weekdays(DayOfWeek.MONDAY, DayOfWeek.TUESDAY, DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY)
+            .dailyWindow(LocalTime.of(9, 0), LocalTime.of(17, 0))
+            .excludeDate(LocalDate.of(2026, 10, 19));
+        Assert.assertTrue(calendar.isAllowed(Instant.parse("2026-10-16T10:00:00Z")));
+        Assert.assertEquals(calendar.nextAllowed(Instant.parse("2026-10-16T08:00:00Z")), Instant.parse("2026-10-16T09:00:00Z"));
+        // 周五下班之后 -> 跳过周末 和 假期 -> 周二上班
+        Assert.assertEquals(calendar.nextAllowed(Instant.parse("2026-10-16T17:00:00Z")), Instant.parse("2026-10-20T09:00:00Z"));
+
+        // 重叠 和 相邻 的时间段会合并
+        var t = Instant.parse("2026-01-01T00:00:00Z");
+        var merged = new ScheduleCalendar(ZoneOffset.UTC)
+            .exclude(t.plusSeconds(10), t.plusSeconds(20))
+            .exclude(t.plusSeconds(30), t.plusSeconds(40))
+            .exclude(t.plusSeconds(15), t.plusSeconds(30))
+            .exclude(t.plusSeconds(100), t.plusSeconds(110));
+        Assert.assertEquals(merged.excludedRangeCount(), 2);
+        Assert.assertEquals(merged.nextAllowed(t.plusSeconds(12)), t.plusSeconds(40));
+        Assert.assertEquals(merged.nextAllowed(t.plusSeconds(50)), t.plusSeconds(50));
+
+        // 跨越午夜的窗口
+        var night = new ScheduleCalendar(ZoneOffset.UTC).dailyWindow(LocalTime.of(22, 0), LocalTime.of(6, 0));
+        Assert.assertTrue(night.isAllowed(Instant.parse("2026-10-16T23:00:00Z")));
+        Assert.assertTrue(night.isAllowed(Instant.parse("2026-10-16T05:00:00Z")));
+        Assert.assertEquals(night.nextAllowed(Instant.parse("2026-10-16T12:00:00Z")), Instant.parse("2026-10-16T22:00:00Z"));
+
+        // 排除之后的所有时间
+        var never = new ScheduleCalendar(ZoneOffset.UTC).exclude(t, Instant.MAX);
+        Assert.assertNull(never.nextAllowed(t.plusSeconds(1)));
+    }
+
+    @Test
+    public static void testSchedule() {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var start = Instant.now().plusSeconds(3600).truncatedTo(ChronoUnit.SECONDS);
+        // 排除开始之后的半小时
+        var calendar = new ScheduleCalendar().exclude(start, start.plus(Duration.ofMinutes(30)));
+
+        var fixedRate = ScxScheduling.fixedRate(timer)
+            .startTime(start)
+            .interval(Duration.ofMinutes(1))
+            .calendar(calendar)
+            .start(c -> {});
+        // 保持原有的相位
+        Assert.assertEquals(fixedRate.nextRunTime(), start.plus(Duration.ofMinutes(30)));
+        Assert.assertEquals(fixedRate.nextRunTime(1), start.plus(Duration.ofMinutes(31)));
+        Assert.assertEquals(fixedRate.runTimesBetween(start, start.plus(Duration.ofMinutes(32))).toList(), List.of(start.plus(Duration.ofMinutes(30)), start.plus(Duration.ofMinutes(31))));
+
+        var fixedDelay = ScxScheduling.fixedDelay(timer)
+            .startTime(start.plusSeconds(1))
+            .interval(Duration.ofMinutes(1))
+            .calendar(calendar)
+            .start(c -> {});
+        Assert.assertEquals(fixedDelay.nextRunTime(), start.plus(Duration.ofMinutes(30)));
+        Assert.assertEquals(fixedDelay.nextRunTime(2), start.plus(Duration.ofMinutes(31)));
+
+        // 整点执行, 排除接下来的 5 个小时
+        var hour = Instant.now().truncatedTo(ChronoUnit.HOURS);
+        var cron = ScxScheduling.cron(timer)
+            .cronExpression("0 0 * * * ?")
+            .calendar(new ScheduleCalendar().exclude(hour, hour.plus(Duration.ofHours(5))))
+            .start(c -> {});
+        Assert.assertEquals(cron.nextRunTime(), hour.plus(Duration.ofHours(5)));
+        Assert.assertEquals(cron.nextRunTime(1), hour.plus(Duration.ofHours(6)));
+
+        fixedRate.cancel();
+        fixedDelay.cancel();
+        cron.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testSkip() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var now = Instant.now();
+        var excludeFrom = now.plusMillis(100);
+        var excludeTo = now.plusMillis(400);
+        var runTimes = new ConcurrentLinkedQueue<Instant>();
+        var handle = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(10))
+            .calendar(new ScheduleCalendar().exclude(excludeFrom, excludeTo))
+            .start(c -> runTimes.add(Instant.now()));
+
+        Thread.sleep(150);
+        // 被排除的时间段中 timer 不会为这个调度醒来
+        var runCount = handle.runCount();
+        var wakeupCount = timer.wakeupCount();
+        Thread.sleep(200);
+        Assert.assertEquals(handle.runCount(), runCount);
+        Assert.assertTrue(timer.wakeupCount() - wakeupCount <= 2, "wakeupCount : " + (timer.wakeupCount() - wakeupCount));
+
+        Thread.sleep(150);
+        handle.cancel();
+        // 等待正在执行的一次结束
+        Thread.sleep(50);
+        // 被排除的时间点 不执行 也不计入 runCount
+        Assert.assertTrue(runTimes.stream().noneMatch(t -> t.isAfter(excludeFrom.plusMillis(20)) && t.isBefore(excludeTo)));
+        Assert.assertEquals(handle.runCount(), runTimes.size());
+        Assert.assertTrue(runTimes.size() < 30, "runCount : " + runTimes.size());
+
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 按照日历 没有允许的时间点之后 调度结束 (DONE) 并从 registry 中移除
+    @Test
+    public static void testExhausted() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var registry = new ScheduleRegistry();
+        // 排除 50 毫秒之后的所有时间
+        var calendar = new ScheduleCalendar().exclude(Instant.now().plusMillis(50), Instant.MAX);
+
+        var fixedRate = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(10))
+            .calendar(calendar)
+            .registry(registry, "fixedRate")
+            .start(c -> {});
+        var fixedDelay = ScxScheduling.fixedDelay(timer)
+            .interval(Duration.ofMillis(10))
+            .calendar(calendar)
+            .registry(registry, "fixedDelay")
+            .start(c -> {});
+        Assert.assertNull(fixedDelay.nextRunTime(0));
+        Assert.assertNull(fixedRate.nextRunTime(0));
+
+        Thread.sleep(150);
+        Assert.assertTrue(fixedRate.runCount() > 0);
+        Assert.assertTrue(fixedDelay.runCount() > 0);
+        Assert.assertEquals(fixedRate.status(), ScheduleStatus.DONE);
+        Assert.assertEquals(fixedDelay.status(), ScheduleStatus.DONE);
+        Assert.assertNull(fixedRate.nextRunTime());
+        Assert.assertNull(fixedDelay.nextRunTime());
+        Assert.assertEquals(registry.size(), 0);
+
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,136 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dev.scx.scheduling.ExecutionMode.VIRTUAL_THREAD;
+import static dev.scx.scheduling.ExpirationPolicy.BACKTRACKING_COMPENSATION;
+
+/// "补偿运行" 是异步的, 不会阻塞 start()
+public class CompensationTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testAsync();
+        testRate();
+        testBatch();
+        testDispatch();
+    }
+
+    @Test
+    public static void testAsync() throws InterruptedException {
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var count = new AtomicLong(0);
+        var startNanos = System.nanoTime();
+        // 错过了 100 次
+        var handle = ScxScheduling.fixedRate(timer)
+            .startTime(Instant.now().minusSeconds(10))
+            .interval(Duration.ofMillis(100))
+            .expirationPolicy(BACKTRACKING_COMPENSATION)
+            .start(c -> {
+                count.incrementAndGet();
+                Thread.sleep(1);
+            });
+        // start 不会等待补偿运行
+        Assert.assertTrue(System.nanoTime() - startNanos < 50_000_000L);
+        Thread.sleep(500);
+        Assert.assertTrue(handle.runCount() >= 100);
+        handle.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testRate() throws InterruptedException {
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var timer = new TimingWheelTimer(executor);
+        // 错过了 1000 次, 但每秒最多补偿 100 次
+        var handle = ScxScheduling.fixedRate(timer)
+            .startTime(Instant.now().minusSeconds(10))
+            .interval(Duration.ofMillis(10))
+            .expirationPolicy(BACKTRACKING_COMPENSATION)
+            .compensationRate(100)
+            .start(c -> {
+
+            });
+        Thread.sleep(300);
+        var runCount = handle.runCount();
+        Assert.assertTrue(runCount > 0 && runCount < 100, "runCount : " + runCount);
+        handle.cancel();
+        var cancelledRunCount = handle.runCount();
+        Thread.sleep(100);
+        // 取消后 补偿运行 也会停止
+        Assert.assertEquals(handle.runCount(), cancelledRunCount);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testBatch() throws InterruptedException {
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var batchSize = new AtomicLong(0);
+        // 错过了 99 次 (第 100 次正好到期), 合并为一次
+        var handle = ScxScheduling.fixedRate(timer)
+            .startTime(Instant.now().minusSeconds(10).plusMillis(50))
+            .interval(Duration.ofMillis(100))
+            .expirationPolicy(BACKTRACKING_COMPENSATION)
+            .batchCompensation(true)
+            .start(c -> {
+                if (c.batchSize() > 1) {
+                    batchSize.set(c.batchSize());
+                }
+            });
+        Thread.sleep(100);
+        Assert.assertEquals(batchSize.get(), 99);
+        Assert.assertTrue(handle.runCount() >= 100);
+        handle.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// "补偿运行" 和正常的执行一样 经过 executionMode, fixedDelay 时 等待异步任务完成后 才开始下一次
+    @Test
+    public static void testDispatch() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var running = new AtomicInteger(0);
+        var overlapped = new AtomicBoolean(false);
+        var platformThread = new AtomicBoolean(false);
+        // 错过了 20 次
+        var handle = ScxScheduling.fixedDelay(timer)
+            .startTime(Instant.now().minusSeconds(2).plusMillis(50))
+            .interval(Duration.ofMillis(100))
+            .expirationPolicy(BACKTRACKING_COMPENSATION)
+            .executionMode(VIRTUAL_THREAD)
+            .asyncTask(c -> {
+                if (!Thread.currentThread().isVirtual()) {
+                    platformThread.set(true);
+                }
+                if (running.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                return CompletableFuture.runAsync(running::decrementAndGet, CompletableFuture.delayedExecutor(2, TimeUnit.MILLISECONDS));
+            })
+            .start();
+        Thread.sleep(200);
+        Assert.assertTrue(handle.runCount() >= 20, "runCount : " + handle.runCount());
+        Assert.assertFalse(platformThread.get());
+        Assert.assertFalse(overlapped.get());
+        handle.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
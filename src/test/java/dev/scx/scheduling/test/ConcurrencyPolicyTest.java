@@ -0,0 +1,75 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ConcurrencyPolicy;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.scx.scheduling.ConcurrencyPolicy.*;
+import static dev.scx.scheduling.SkipReason.COALESCED;
+import static dev.scx.scheduling.SkipReason.OVERLAP;
+
+/// 子任务耗时 (30 毫秒) 远大于调度间隔 (5 毫秒) 时, 各个并发策略的表现
+public class ConcurrencyPolicyTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testConcurrencyPolicy();
+    }
+
+    @Test
+    public static void testConcurrencyPolicy() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(8);
+        var timer = new TimingWheelTimer(executor);
+
+        var allow = run(timer, ALLOW);
+        Assert.assertTrue(allow.maxConcurrency > 1, "ALLOW 应该重叠执行");
+
+        var skip = run(timer, SKIP);
+        Assert.assertEquals(skip.maxConcurrency, 1);
+        Assert.assertTrue(skip.metrics.global().skipCount(OVERLAP) > 0);
+
+        var queue = run(timer, QUEUE);
+        Assert.assertEquals(queue.maxConcurrency, 1);
+        Assert.assertTrue(queue.metrics.global().skipCount(OVERLAP) > 0);
+
+        var coalesce = run(timer, COALESCE);
+        Assert.assertEquals(coalesce.maxConcurrency, 1);
+        Assert.assertTrue(coalesce.metrics.global().skipCount(COALESCED) > 0);
+        Assert.assertEquals(coalesce.metrics.global().skipCount(OVERLAP), 0);
+
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    private static Result run(TimingWheelTimer timer, ConcurrencyPolicy policy) throws InterruptedException {
+        var metrics = new ScheduleMetrics(false);
+        var concurrency = new AtomicInteger(0);
+        var maxConcurrency = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(5))
+            .concurrencyPolicy(policy, 2)
+            .listener(metrics)
+            .start(c -> {
+                var current = concurrency.incrementAndGet();
+                maxConcurrency.accumulateAndGet(current, Math::max);
+                Thread.sleep(30);
+                concurrency.decrementAndGet();
+            });
+        Thread.sleep(300);
+        handle.cancel();
+        // 等待正在执行的结束
+        Thread.sleep(100);
+        return new Result(maxConcurrency.get(), metrics);
+    }
+
+    private record Result(int maxConcurrency, ScheduleMetrics metrics) {
+
+    }
+
+}
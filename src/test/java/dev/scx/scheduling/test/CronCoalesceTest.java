@@ -0,0 +1,169 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScheduleRegistry;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+import dev.scx.timer.TaskStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static dev.scx.scheduling.ScheduleStatus.*;
+
+/// 验证 合并调度 : 相同表达式的调度共享一个 timer 条目, 且各自的 runCount, maxRunCount 和 取消 仍然正确.
+public class CronCoalesceTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testCoalesce();
+        testTimerShutdown();
+    }
+
+    @Test
+    public static void testCoalesce() {
+        var timer = new RecordingTimer();
+        var counter = new AtomicLong(0);
+        var handles = new ArrayList<ScheduleHandle>();
+        for (var i = 0; i < 100; i = i + 1) {
+            var task = ScxScheduling.cron(timer)
+                .cronExpression("0 0 * * * ?")
+                .coalesce(true)
+                .executionMode(ExecutionMode.TIMER_THREAD);
+            if (i == 0) {
+                task.maxRunCount(1);
+            }
+            handles.add(task.start(c -> counter.incrementAndGet()));
+        }
+        // 100 个调度 只有 1 个 timer 条目
+        Assert.assertEquals(timer.pending.size(), 1);
+        var nextRunTime = handles.get(0).nextRunTime();
+        for (var handle : handles) {
+            Assert.assertEquals(handle.nextRunTime(), nextRunTime);
+        }
+
+        // 第 1 次执行
+        timer.runAll();
+        Assert.assertEquals(counter.get(), 100);
+        Assert.assertEquals(handles.get(0).status(), DONE);
+        Assert.assertNull(handles.get(0).nextRunTime());
+        Assert.assertEquals(handles.get(1).runCount(), 1);
+        Assert.assertEquals(handles.get(1).nextRunTime(), nextRunTime.plusSeconds(3600));
+
+        // 取消一个之后 第 2 次执行
+        handles.get(1).cancel();
+        Assert.assertEquals(handles.get(1).status(), CANCELLED);
+        timer.runAll();
+        Assert.assertEquals(counter.get(), 198);
+        Assert.assertEquals(handles.get(0).runCount(), 1);
+        Assert.assertEquals(handles.get(1).runCount(), 1);
+        Assert.assertEquals(handles.get(2).runCount(), 2);
+
+        // 全部取消后 组的 timer 条目也会被取消
+        for (var handle : handles) {
+            handle.cancel();
+        }
+        Assert.assertEquals(timer.pending.size(), 1);
+        Assert.assertTrue(timer.pending.get(0).cancelled);
+    }
+
+    @Test
+    public static void testTimerShutdown() throws InterruptedException {
+        // timer 关闭时 组随之关闭, 成员结束 并从 registry 中移除
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var registry = new ScheduleRegistry();
+        var handles = new ArrayList<ScheduleHandle>();
+        for (var i = 0; i < 10; i = i + 1) {
+            handles.add(ScxScheduling.cron(timer)
+                .cronExpression("0 0 * * * ?")
+                .coalesce(true)
+                .registry(registry, "cron-" + i)
+                .start(c -> {}));
+        }
+        Assert.assertEquals(registry.size(), 10);
+        timer.shutdown();
+        // 等待 tick 线程执行关闭回调
+        Thread.sleep(100);
+        for (var handle : handles) {
+            Assert.assertEquals(handle.status(), CANCELLED);
+            Assert.assertNull(handle.nextRunTime());
+        }
+        Assert.assertEquals(registry.size(), 0);
+        // timer 关闭之后加入的 直接结束
+        var late = ScxScheduling.cron(timer).cronExpression("0 0 * * * ?").coalesce(true).start(c -> {});
+        Assert.assertEquals(late.status(), CANCELLED);
+        executor.shutdown();
+
+        // 其他 timer : 组的条目被 timer 取消时 查询状态即可发现
+        var recordingTimer = new RecordingTimer();
+        var handle = ScxScheduling.cron(recordingTimer).cronExpression("0 0 * * * ?").coalesce(true).start(c -> {});
+        Assert.assertEquals(handle.status(), RUNNING);
+        recordingTimer.pending.get(0).cancel();
+        Assert.assertEquals(handle.status(), CANCELLED);
+        // 新的成员会创建新的组
+        var other = ScxScheduling.cron(recordingTimer).cronExpression("0 0 * * * ?").coalesce(true).start(c -> {});
+        Assert.assertEquals(other.status(), RUNNING);
+        Assert.assertEquals(recordingTimer.pending.size(), 2);
+        other.cancel();
+    }
+
+    /// 记录所有提交的任务, 手动触发
+    private static final class RecordingTimer implements ScxTimer {
+
+        private final ArrayList<Entry> pending = new ArrayList<>();
+
+        @Override
+        public TaskHandle runAfter(Runnable task, long delay, TimeUnit unit) {
+            var entry = new Entry(task);
+            pending.add(entry);
+            return entry;
+        }
+
+        /// 执行当前所有的任务 (包括执行过程中新提交的 0 延迟任务), 但不执行新提交的组条目
+        public void runAll() {
+            var groupEntry = pending.remove(0);
+            groupEntry.run();
+            while (pending.size() > 1) {
+                pending.remove(1).run();
+            }
+        }
+
+    }
+
+    private static final class Entry implements TaskHandle {
+
+        private final Runnable task;
+        private boolean cancelled;
+
+        private Entry(Runnable task) {
+            this.task = task;
+            this.cancelled = false;
+        }
+
+        private void run() {
+            if (!cancelled) {
+                task.run();
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            cancelled = true;
+            return true;
+        }
+
+        @Override
+        public TaskStatus status() {
+            return cancelled ? TaskStatus.CANCELLED : TaskStatus.PENDING;
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+package dev.scx.scheduling.test;
+
+import com.cronutils.model.time.ExecutionTime;
+import com.cronutils.parser.CronParser;
+import dev.scx.scheduling.cron.CronCache;
+import dev.scx.scheduling.cron.CronExpression;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Random;
+
+import static com.cronutils.model.CronType.QUARTZ;
+import static com.cronutils.model.definition.CronDefinitionBuilder.instanceDefinitionFor;
+import static dev.scx.scheduling.cron.CronExpression.NO_NEXT;
+
+/// 编译后的 CronExpression 和 cron-utils 的差分测试
+public class CronExpressionTest {
+
+    private static final CronParser CRON_PARSER = new CronParser(instanceDefinitionFor(QUARTZ));
+
+    private static final List<String> EXPRESSIONS = List.of(
+        "* * * * * ?",
+        "*/1 * * * * ?",
+        "0 0 * * * ?",
+        "0 */5 * * * ?",
+        "15,45 10-40/3 * * * ?",
+        "0 15 10 ? * MON-FRI",
+        "0 0/30 8-17 ? * 2-6",
+        "0 0 12 1/5 * ?",
+        "0 11 11 11 11 ?",
+        "0 0 0 L * ?",
+        "0 0 0 L-2 * ?",
+        "0 0 0 LW * ?",
+        "0 0 0 15W * ?",
+        "0 0 0 1W * ?",
+        "0 0 0 ? * 6L",
+        "0 0 0 ? * 2#3",
+        "0 0 12 ? JAN,MAR,DEC SUN",
+        "0 0 0 29 2 ?",
+        "0 30 2 * * ?",
+        "0 30 1 * * ?",
+        "0 0 0 1 1 ? 2030",
+        "0 0 6 * * ? 2025-2027",
+        "0 0 0 * * ? 2030/2"
+    );
+
+    private static final List<ZoneId> ZONES = List.of(
+        ZoneOffset.UTC,
+        ZoneId.of("Asia/Shanghai"),
+        ZoneId.of("America/New_York"),
+        ZoneId.of("Europe/Berlin")
+    );
+
+    public static void main(String[] args) {
+        testDifferential();
+        testFallback();
+        testDaylightSaving();
+        testCache();
+    }
+
+    @Test
+    public static void testDifferential() {
+        var random = new Random(20261016);
+        // 2024-01-01 ~ 2028-01-01
+        var from = Instant.parse("2024-01-01T00:00:00Z").getEpochSecond();
+        var to = Instant.parse("2028-01-01T00:00:00Z").getEpochSecond();
+        for (var expression : EXPRESSIONS) {
+            var compiled = CronExpression.parse(expression);
+            Assert.assertTrue(compiled.isCompiled(), "应该可以编译 : " + expression);
+            var executionTime = ExecutionTime.forCron(CRON_PARSER.parse(expression));
+            for (var zone : ZONES) {
+                for (var i = 0; i < 20; i = i + 1) {
+                    var after = from + (long) (random.nextDouble() * (to - from));
+                    assertSameSequence(expression, zone, compiled, executionTime, after, 20);
+                }
+                // 跨越时区转换 (夏令时的 间隙 和 重叠)
+                var transition = zone.getRules().nextTransition(Instant.ofEpochSecond(from));
+                while (transition != null && transition.toEpochSecond() < to) {
+                    assertSameSequence(expression, zone, compiled, executionTime, transition.toEpochSecond() - 7200, 20);
+                    transition = zone.getRules().nextTransition(transition.getInstant());
+                }
+            }
+        }
+    }
+
+    @Test
+    public static void testFallback() {
+        // 跨越边界的范围, 同一字段中有多个特殊写法 交给兼容模式
+        for (var expression : List.of("0 0 0 ? * FRI-MON", "0 0 0 ? * 2#1,4#3")) {
+            var compiled = CronExpression.parse(expression);
+            Assert.assertFalse(compiled.isCompiled(), "应该使用兼容模式 : " + expression);
+            var executionTime = ExecutionTime.forCron(CRON_PARSER.parse(expression));
+            var after = Instant.parse("2026-01-01T00:00:00Z").getEpochSecond();
+            assertSameSequence(expression, ZoneOffset.UTC, compiled, executionTime, after, 10);
+        }
+    }
+
+    @Test
+    public static void testDaylightSaving() {
+        var zone = ZoneId.of("America/New_York");
+        // 2025-03-09 02:00 -> 03:00 (间隙), 不存在的 02:30 会被跳过
+        var gap = CronExpression.parse("0 30 2 * * ?");
+        var after = Instant.parse("2025-03-08T12:00:00Z").getEpochSecond();
+        Assert.assertEquals(Instant.ofEpochSecond(gap.nextEpochSecond(after, zone)), Instant.parse("2025-03-10T06:30:00Z"));
+        // 2025-11-02 02:00 -> 01:00 (重叠), 重复的 01:30 只执行一次 (较早的那个时刻, 与 cron-utils 一致)
+        var overlap = CronExpression.parse("0 30 1 * * ?");
+        var first = overlap.nextEpochSecond(Instant.parse("2025-11-02T04:00:00Z").getEpochSecond(), zone);
+        var second = overlap.nextEpochSecond(first, zone);
+        Assert.assertEquals(Instant.ofEpochSecond(first), Instant.parse("2025-11-02T05:30:00Z"));
+        Assert.assertEquals(Instant.ofEpochSecond(second), Instant.parse("2025-11-03T06:30:00Z"));
+        // 时分秒 不是固定值时 两遍都会执行 (01:15 EDT, 01:45 EDT, 01:15 EST, 01:45 EST)
+        var twice = CronExpression.parse("0 15,45 1 * * ?");
+        var t1 = twice.nextEpochSecond(Instant.parse("2025-11-02T04:00:00Z").getEpochSecond(), zone);
+        var t2 = twice.nextEpochSecond(t1, zone);
+        var t3 = twice.nextEpochSecond(t2, zone);
+        var t4 = twice.nextEpochSecond(t3, zone);
+        Assert.assertEquals(Instant.ofEpochSecond(t1), Instant.parse("2025-11-02T05:15:00Z"));
+        Assert.assertEquals(Instant.ofEpochSecond(t2), Instant.parse("2025-11-02T05:45:00Z"));
+        Assert.assertEquals(Instant.ofEpochSecond(t3), Instant.parse("2025-11-02T06:15:00Z"));
+        Assert.assertEquals(Instant.ofEpochSecond(t4), Instant.parse("2025-11-02T06:45:00Z"));
+        // 每 15 分钟 : 重复的那一个小时也会执行 (01:45 EDT -> 01:00 EST)
+        var quarter = CronExpression.parse("0 */15 * * * ?");
+        Assert.assertEquals(Instant.ofEpochSecond(quarter.nextEpochSecond(Instant.parse("2025-11-02T05:45:00Z").getEpochSecond(), zone)), Instant.parse("2025-11-02T06:00:00Z"));
+        Assert.assertEquals(Instant.ofEpochSecond(quarter.nextEpochSecond(Instant.parse("2025-11-02T06:10:00Z").getEpochSecond(), zone)), Instant.parse("2025-11-02T06:15:00Z"));
+    }
+
+    @Test
+    public static void testCache() {
+        var cache = new CronCache(2);
+        var a = cache.get("0 0 * * * ?");
+        // 规范化后是同一个表达式
+        Assert.assertSame(cache.get("  0  0 *\t* *  ? "), a);
+        Assert.assertSame(cache.get("0 0 12 ? jan sun"), cache.get("0 0 12 ? JAN SUN"));
+        Assert.assertEquals(cache.hitCount(), 2);
+        Assert.assertEquals(cache.missCount(), 2);
+        // a 最近被访问过, 所以淘汰的是 "0 0 12 ? JAN SUN"
+        cache.get("0 0 * * * ?");
+        cache.get("0 */5 * * * ?");
+        Assert.assertEquals(cache.size(), 2);
+        Assert.assertEquals(cache.evictionCount(), 1);
+        Assert.assertSame(cache.get("0 0 * * * ?"), a);
+        // 不合法的表达式不会被缓存
+        Assert.assertThrows(IllegalArgumentException.class, () -> cache.get("0 0 0 ? ? ?"));
+        Assert.assertEquals(cache.size(), 2);
+    }
+
+    private static void assertSameSequence(String expression, ZoneId zone, CronExpression compiled, ExecutionTime executionTime, long after, int count) {
+        var expectedTime = ZonedDateTime.ofInstant(Instant.ofEpochSecond(after), zone);
+        var actual = after;
+        for (var n = 0; n < count; n = n + 1) {
+            expectedTime = executionTime.nextExecution(expectedTime).orElse(null);
+            actual = compiled.nextEpochSecond(actual, zone);
+            var expected = expectedTime != null ? expectedTime.toEpochSecond() : NO_NEXT;
+            Assert.assertEquals(actual, expected, expression + " @ " + zone + " after " + Instant.ofEpochSecond(after) + " #" + n);
+            if (expectedTime == null) {
+                return;
+            }
+        }
+    }
+
+}
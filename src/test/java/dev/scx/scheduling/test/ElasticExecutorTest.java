@@ -0,0 +1,58 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.timer.ElasticExecutor;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+public class ElasticExecutorTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testElastic();
+    }
+
+    /// 大量阻塞型任务同时到期时扩容, 空闲后缩容
+    @Test
+    public static void testElastic() throws InterruptedException {
+        var executor = new ElasticExecutor(1, 16, MILLISECONDS.toNanos(5), MILLISECONDS.toNanos(10), MILLISECONDS.toNanos(500));
+        var timer = new TimingWheelTimer(executor);
+
+        var latch = new CountDownLatch(64);
+        var start = System.nanoTime();
+        for (var i = 0; i < 64; i = i + 1) {
+            timer.runAfter(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                latch.countDown();
+            }, 10, MILLISECONDS);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        var elapsedMillis = MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        Assert.assertTrue(executor.growCount() > 0);
+        Assert.assertTrue(executor.targetThreads() > 1);
+        // 只有 1 个线程时 需要 3200 毫秒
+        Assert.assertTrue(elapsedMillis < 2000, "elapsed : " + elapsedMillis);
+        Assert.assertTrue(executor.lagNanos() > 0);
+
+        // 之后只有少量的短任务
+        var grown = executor.targetThreads();
+        for (var i = 0; i < 100; i = i + 1) {
+            timer.runAfter(() -> {}, 0, MILLISECONDS);
+            Thread.sleep(3);
+        }
+        Assert.assertTrue(executor.shrinkCount() > 0);
+        Assert.assertTrue(executor.targetThreads() < grown);
+
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,78 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.timer.ScxTimer;
+import dev.scx.timer.TaskHandle;
+import dev.scx.timer.TaskStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/// 手动触发的 Timer, 只保存最近一次提交的任务, 忽略延迟.
+///
+/// 用来在当前线程中同步驱动调度任务 (测试 和 基准测试), 排除定时器本身的影响.
+/// 只存在于测试代码中 (基准测试通过 test-jar 使用), 不会随主项目发布.
+///
+/// - 为了不产生对象分配, runAfter 返回的 TaskHandle 就是本身, 反映的是最近一次提交的任务的状态 (取消旧的 TaskHandle 也会取消最近一次提交的任务).
+/// - 触发期间为 RUNNING, 结束后为 SUCCESS (或 FAILED), 只有取消了才是 CANCELLED.
+/// - 不是线程安全的, 只能在同一个线程中使用.
+///
+/// @author scx567888
+public final class ManualTimer implements ScxTimer, TaskHandle {
+
+    private Runnable task;
+    private TaskStatus status;
+
+    public ManualTimer() {
+        this.task = null;
+        this.status = TaskStatus.SUCCESS;
+    }
+
+    @Override
+    public TaskHandle runAfter(Runnable task, long delay, TimeUnit unit) {
+        this.task = task;
+        this.status = TaskStatus.PENDING;
+        return this;
+    }
+
+    /// 执行最近一次提交的任务 (没有则什么都不做)
+    public void fire() {
+        var t = task;
+        if (t == null) {
+            return;
+        }
+        task = null;
+        status = TaskStatus.RUNNING;
+        try {
+            t.run();
+        } catch (Throwable e) {
+            // 执行期间提交了新的任务时 状态属于新的任务
+            if (status == TaskStatus.RUNNING) {
+                status = TaskStatus.FAILED;
+            }
+            throw e;
+        }
+        if (status == TaskStatus.RUNNING) {
+            status = TaskStatus.SUCCESS;
+        }
+    }
+
+    /// 是否有等待触发的任务
+    public boolean hasPending() {
+        return task != null;
+    }
+
+    @Override
+    public boolean cancel() {
+        if (task == null) {
+            return false;
+        }
+        task = null;
+        status = TaskStatus.CANCELLED;
+        return true;
+    }
+
+    @Override
+    public TaskStatus status() {
+        return status;
+    }
+
+}
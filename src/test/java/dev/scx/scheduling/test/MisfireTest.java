@@ -0,0 +1,76 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ExpirationPolicy;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+import static dev.scx.scheduling.ExecutionMode.TIMER_THREAD;
+import static dev.scx.scheduling.ExpirationPolicy.*;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
+
+/// 第一次执行时阻塞 timer 线程 200 毫秒 (模拟 GC 停顿 或 线程池饱和), 之后的执行都会晚
+public class MisfireTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testMisfire();
+    }
+
+    @Test
+    public static void testMisfire() throws InterruptedException {
+        // 不检测时 会连续地立即执行错过的每一次
+        var none = run(IMMEDIATE_COMPENSATION, null);
+        Assert.assertEquals(none.metrics.global().misfireCount(), 0);
+        Assert.assertTrue(none.runCount >= 20, "runCount : " + none.runCount);
+
+        var immediateIgnore = run(IMMEDIATE_IGNORE, Duration.ofMillis(50));
+        Assert.assertEquals(immediateIgnore.metrics.global().misfireCount(), 1);
+        Assert.assertTrue(immediateIgnore.metrics.global().skipCount(EXPIRED) >= 15);
+        // 跳过的不计入次数
+        Assert.assertTrue(immediateIgnore.runCount < 15, "runCount : " + immediateIgnore.runCount);
+
+        var backtrackingIgnore = run(BACKTRACKING_IGNORE, Duration.ofMillis(50));
+        Assert.assertEquals(backtrackingIgnore.metrics.global().misfireCount(), 1);
+        // 跳过的计入次数, 但没有执行
+        Assert.assertTrue(backtrackingIgnore.runCount >= 20, "runCount : " + backtrackingIgnore.runCount);
+        Assert.assertEquals(backtrackingIgnore.metrics.global().runCount() + backtrackingIgnore.metrics.global().skipCount(EXPIRED), backtrackingIgnore.runCount);
+
+        var immediateCompensation = run(IMMEDIATE_COMPENSATION, Duration.ofMillis(50));
+        Assert.assertEquals(immediateCompensation.metrics.global().misfireCount(), 1);
+        Assert.assertTrue(immediateCompensation.metrics.global().skipCount(EXPIRED) >= 15);
+    }
+
+    private static Result run(ExpirationPolicy policy, Duration misfireThreshold) throws InterruptedException {
+        // 只有一个线程, 阻塞了它就相当于阻塞了整个 timer
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var metrics = new ScheduleMetrics(false);
+        var handle = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(10))
+            .executionMode(TIMER_THREAD)
+            .expirationPolicy(policy)
+            .misfireThreshold(misfireThreshold)
+            .listener(metrics)
+            .start(c -> {
+                if (c.currentRunCount() == 1) {
+                    Thread.sleep(200);
+                }
+            });
+        Thread.sleep(300);
+        handle.cancel();
+        var runCount = handle.runCount();
+        timer.shutdown();
+        executor.shutdown();
+        return new Result(runCount, metrics);
+    }
+
+    private record Result(long runCount, ScheduleMetrics metrics) {
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+public class NextRunTimesTest {
+
+    public static void main(String[] args) {
+        testPeriodic();
+        testCron();
+        testBatch();
+    }
+
+    @Test
+    public static void testPeriodic() {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var start = Instant.now().plusSeconds(3600);
+        var fixedRate = ScxScheduling.fixedRate(timer)
+            .startTime(start)
+            .interval(Duration.ofSeconds(1))
+            .maxRunCount(5)
+            .start(c -> {});
+        var all = new ArrayList<Instant>();
+        fixedRate.nextRunTimes().forEachRemaining(all::add);
+        Assert.assertEquals(all, IntStream.range(0, 5).mapToObj(i -> start.plusSeconds(i)).toList());
+        Assert.assertEquals(fixedRate.runTimesBetween(start.plusMillis(1500), start.plusMillis(3500)).toList(), List.of(start.plusSeconds(2), start.plusSeconds(3)));
+        // 超出次数限制
+        Assert.assertEquals(fixedRate.runTimesBetween(start.plusSeconds(10), start.plusSeconds(20)).count(), 0);
+        fixedRate.cancel();
+        Assert.assertFalse(fixedRate.nextRunTimes().hasNext());
+
+        // 没有次数限制时是无限的
+        var fixedDelay = ScxScheduling.fixedDelay(timer)
+            .startTime(start)
+            .interval(Duration.ofSeconds(1))
+            .start(c -> {});
+        Assert.assertEquals(fixedDelay.nextRunTimeStream().limit(3).toList(), List.of(start, start.plusSeconds(1), start.plusSeconds(2)));
+        var between = fixedDelay.runTimesBetween(start.plus(Duration.ofDays(365)), start.plus(Duration.ofDays(365)).plusMillis(2500)).toList();
+        Assert.assertEquals(between, List.of(start.plus(Duration.ofDays(365)), start.plus(Duration.ofDays(365)).plusSeconds(1), start.plus(Duration.ofDays(365)).plusSeconds(2)));
+        fixedDelay.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testCron() {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var handle = ScxScheduling.cron(timer)
+            .cronExpression("0 0 * * * ?")
+            .start(c -> {});
+        var all = handle.nextRunTimeStream().limit(1000).toList();
+        Assert.assertEquals(all.size(), 1000);
+        Assert.assertEquals(all.get(0), handle.nextRunTime());
+        // 依次查询 (每次从上一次的位置继续)
+        for (var i = 0; i < 1000; i = i + 1) {
+            Assert.assertEquals(handle.nextRunTime(i), all.get(i));
+        }
+        // 往回查询 从头计算
+        Assert.assertEquals(handle.nextRunTime(10), all.get(10));
+        Assert.assertEquals(handle.runTimesBetween(all.get(500).minusSeconds(1), all.get(503)).toList(), all.subList(500, 503));
+        handle.cancel();
+        Assert.assertEquals(handle.runTimesBetween(all.get(500), all.get(503)).count(), 0);
+
+        // 有次数限制
+        var limited = ScxScheduling.cron(timer)
+            .cronExpression("0 0 * * * ?")
+            .maxRunCount(3)
+            .start(c -> {});
+        Assert.assertEquals(limited.nextRunTimeStream().count(), 3);
+        Assert.assertEquals(limited.runTimesBetween(all.get(1), all.get(10)).count(), 2);
+        limited.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testBatch() {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var start = Instant.now().plusSeconds(3600);
+        var handle = ScxScheduling.oneTimeBatch(timer)
+            .addAll(IntStream.range(0, 100).boxed().toList(), i -> start.plusSeconds(99 - i), i -> c -> {})
+            .start();
+        handle.get(50).cancel();
+        // 按时间顺序, 不包括已经取消的
+        Assert.assertEquals(handle.nextRunTimeStream().count(), 99);
+        Assert.assertEquals(handle.runTimesBetween(start.plusSeconds(48), start.plusSeconds(52)).toList(), List.of(start.plusSeconds(48), start.plusSeconds(50), start.plusSeconds(51)));
+        // 单个任务
+        Assert.assertEquals(handle.get(0).nextRunTimeStream().toList(), List.of(start.plusSeconds(99)));
+        handle.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
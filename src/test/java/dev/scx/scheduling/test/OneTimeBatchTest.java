@@ -0,0 +1,165 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static dev.scx.scheduling.ExpirationPolicy.IMMEDIATE_IGNORE;
+import static dev.scx.scheduling.SkipReason.EXPIRED;
+
+public class OneTimeBatchTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testBatch();
+        testCancel();
+        testFarFuture();
+        testRejected();
+    }
+
+    @Test
+    public static void testBatch() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(4);
+        var timer = new TimingWheelTimer(executor);
+        var metrics = new ScheduleMetrics(false);
+        var now = Instant.now();
+        var runCount = new AtomicInteger(0);
+        var earlyCount = new AtomicInteger(0);
+        var lastStart = new AtomicLong(0);
+
+        // 1000 个未来的任务 (乱序) + 10 个已经过期的任务
+        var handle = ScxScheduling.oneTimeBatch(timer)
+            .expirationPolicy(IMMEDIATE_IGNORE)
+            .listener(metrics)
+            .addAll(IntStream.range(0, 1000).boxed(), i -> now.plusMillis(50 + (i * 7919L) % 200), i -> c -> {
+                runCount.incrementAndGet();
+                // 不允许提前执行
+                if (c.lagNanos() < 0) {
+                    earlyCount.incrementAndGet();
+                }
+            })
+            .addAll(IntStream.range(0, 10).boxed(), i -> now.minusSeconds(1), i -> c -> {
+                Assert.fail("已经过期的任务不应该执行");
+            })
+            .start();
+
+        Assert.assertEquals(handle.size(), 1010);
+        Assert.assertEquals(handle.pendingCount(), 1000);
+        Assert.assertEquals(handle.get(1000).status(), ScheduleStatus.DONE);
+        Assert.assertEquals(metrics.global().skipCount(EXPIRED), 10);
+        Assert.assertEquals(handle.nextRunTime(), now.plusMillis(50));
+
+        // 取消单个任务
+        handle.get(0).cancel();
+        Assert.assertEquals(handle.get(0).status(), ScheduleStatus.CANCELLED);
+
+        Thread.sleep(500);
+
+        Assert.assertEquals(runCount.get(), 999);
+        Assert.assertEquals(earlyCount.get(), 0);
+        Assert.assertEquals(handle.runCount(), 999);
+        Assert.assertEquals(handle.pendingCount(), 0);
+        Assert.assertEquals(handle.status(), ScheduleStatus.DONE);
+        Assert.assertEquals(handle.get(1).runCount(), 1);
+        Assert.assertEquals(metrics.global().runCount(), 999);
+
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testCancel() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(4);
+        var timer = new TimingWheelTimer(executor);
+        var runCount = new AtomicInteger(0);
+        var now = Instant.now();
+        var handle = ScxScheduling.oneTimeBatch(timer)
+            .addAll(IntStream.range(0, 100).boxed(), i -> now.plusMillis(100 + i), i -> c -> runCount.incrementAndGet())
+            .start();
+        handle.cancel();
+        Assert.assertEquals(handle.status(), ScheduleStatus.CANCELLED);
+        Assert.assertEquals(handle.pendingCount(), 0);
+        Assert.assertNull(handle.nextRunTime());
+        Thread.sleep(300);
+        Assert.assertEquals(runCount.get(), 0);
+        Assert.assertEquals(timer.pendingCount(), 0L);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 很远的开始时间 (如 Instant.MAX) 不会溢出成立即执行
+    @Test
+    public static void testFarFuture() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(4);
+        var timer = new TimingWheelTimer(executor);
+        var farRunCount = new AtomicInteger(0);
+        var nearRunCount = new AtomicInteger(0);
+        var now = Instant.now();
+        var handle = ScxScheduling.oneTimeBatch(timer)
+            .add(Instant.MAX, c -> farRunCount.incrementAndGet())
+            .add(now.plusSeconds(365L * 24 * 3600 * 1000), c -> farRunCount.incrementAndGet())
+            .add(now.plusMillis(50), c -> nearRunCount.incrementAndGet())
+            .start();
+        Assert.assertEquals(handle.nextRunTime(), now.plusMillis(50));
+        Thread.sleep(200);
+        Assert.assertEquals(nearRunCount.get(), 1);
+        Assert.assertEquals(farRunCount.get(), 0);
+        Assert.assertEquals(handle.pendingCount(), 2);
+        Assert.assertEquals(handle.get(0).status(), ScheduleStatus.RUNNING);
+        handle.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// timer 或 executor 已经关闭时 start 不会抛出异常, 尚未开始的任务都会被取消
+    @Test
+    public static void testRejected() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(4);
+        var timer = new TimingWheelTimer(executor);
+        timer.shutdown();
+        var handle = ScxScheduling.oneTimeBatch(timer)
+            .add(Instant.now().plusMillis(50), c -> {})
+            .start();
+        Assert.assertEquals(handle.status(), ScheduleStatus.CANCELLED);
+        Assert.assertEquals(handle.pendingCount(), 0);
+        Assert.assertEquals(handle.get(0).status(), ScheduleStatus.CANCELLED);
+
+        // 分发时 executor 拒绝 (由 executor 自己的线程提交时拒绝, 模拟分发时 executor 已经关闭)
+        var pool = Executors.newFixedThreadPool(4, r -> new Thread(r, "batch-test-pool"));
+        Executor rejecting = r -> {
+            if (Thread.currentThread().getName().equals("batch-test-pool")) {
+                throw new RejectedExecutionException();
+            }
+            pool.execute(r);
+        };
+        var timer2 = new TimingWheelTimer(rejecting);
+        var runCount = new AtomicInteger(0);
+        var now = Instant.now();
+        var handle2 = ScxScheduling.oneTimeBatch(timer2)
+            .executionMode(ExecutionMode.TIMER_THREAD)
+            .addAll(IntStream.range(0, 10).boxed(), i -> now.plusMillis(50 + i * 50L), i -> c -> runCount.incrementAndGet())
+            .start();
+        Thread.sleep(200);
+        Assert.assertEquals(runCount.get(), 0);
+        Assert.assertEquals(handle2.status(), ScheduleStatus.CANCELLED);
+        Assert.assertEquals(handle2.pendingCount(), 0);
+        for (var i = 0; i < handle2.size(); i = i + 1) {
+            Assert.assertEquals(handle2.get(i).status(), ScheduleStatus.CANCELLED);
+        }
+        Assert.assertEquals(timer2.pendingCount(), 0L);
+        pool.shutdown();
+        timer2.shutdown();
+    }
+
+}
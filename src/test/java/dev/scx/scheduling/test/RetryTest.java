@@ -0,0 +1,150 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.RetryPolicy;
+import dev.scx.scheduling.ScheduleRegistry;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetryTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testRetry();
+        testRetryOn();
+        testCancel();
+        testOneTime();
+    }
+
+    @Test
+    public static void testRetry() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var attempts = new ConcurrentLinkedQueue<String>();
+        var errorCount = new AtomicInteger(0);
+        // 每一次执行 都是前两次尝试失败
+        var handle = ScxScheduling.fixedDelay(timer)
+            .interval(Duration.ofMillis(10))
+            .maxRunCount(2)
+            .retry(new RetryPolicy(3).initialBackoff(Duration.ofMillis(20)).jitter(0))
+            .onError(e -> errorCount.incrementAndGet())
+            .start(c -> {
+                attempts.add(c.currentRunCount() + "-" + c.retryCount());
+                if (c.retryCount() < 2) {
+                    throw new IllegalStateException("test");
+                }
+            });
+        Thread.sleep(400);
+        // 重试不增加 runCount, fixedDelay 等到重试结束后 才开始下一次
+        Assert.assertEquals(String.join(",", attempts), "1-0,1-1,1-2,2-0,2-1,2-2");
+        Assert.assertEquals(handle.runCount(), 2);
+        Assert.assertEquals(handle.status(), ScheduleStatus.DONE);
+        Assert.assertEquals(errorCount.get(), 0);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testRetryOn() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var attemptCount = new AtomicInteger(0);
+        var errorCount = new AtomicInteger(0);
+        var policy = new RetryPolicy(5).initialBackoff(Duration.ofMillis(10)).retryOn(IllegalStateException.class);
+        // 不可重试的异常
+        ScxScheduling.oneTime(timer)
+            .retry(policy)
+            .onError(e -> errorCount.incrementAndGet())
+            .start(c -> {
+                attemptCount.incrementAndGet();
+                throw new IllegalArgumentException("test");
+            });
+        // 次数用完
+        ScxScheduling.oneTime(timer)
+            .retry(policy)
+            .onError(e -> errorCount.incrementAndGet())
+            .start(c -> {
+                attemptCount.incrementAndGet();
+                throw new IllegalStateException("test");
+            });
+        Thread.sleep(500);
+        Assert.assertEquals(attemptCount.get(), 1 + 5);
+        Assert.assertEquals(errorCount.get(), 2);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testCancel() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var attemptCount = new AtomicInteger(0);
+        var errorCount = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofSeconds(10))
+            .retry(new RetryPolicy(3).initialBackoff(Duration.ofSeconds(10)))
+            .onError(e -> errorCount.incrementAndGet())
+            .start(c -> {
+                attemptCount.incrementAndGet();
+                throw new IllegalStateException("test");
+            });
+        Thread.sleep(100);
+        // 等待重试中
+        Assert.assertEquals(attemptCount.get(), 1);
+        Assert.assertEquals(errorCount.get(), 0);
+        handle.cancel();
+        // 取消时放弃重试, 并移除 timer 中的条目
+        Assert.assertEquals(errorCount.get(), 1);
+        Assert.assertEquals(timer.pendingCount(), 0L);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 单次任务 在重试结束之后才完成 (并从 registry 中移除), 重试期间取消的 为 CANCELLED
+    @Test
+    public static void testOneTime() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var registry = new ScheduleRegistry();
+        var policy = new RetryPolicy(3).initialBackoff(Duration.ofMillis(100)).jitter(0);
+        var done = ScxScheduling.oneTime(timer)
+            .retry(policy)
+            .registry(registry, "done")
+            .start(c -> {
+                if (c.retryCount() < 1) {
+                    throw new IllegalStateException("test");
+                }
+            });
+        var cancelled = ScxScheduling.oneTime(timer)
+            .retry(policy)
+            .registry(registry, "cancelled")
+            .onError(e -> {})
+            .start(c -> {
+                throw new IllegalStateException("test");
+            });
+        Thread.sleep(50);
+        // 等待重试中
+        Assert.assertEquals(done.status(), ScheduleStatus.RUNNING);
+        Assert.assertEquals(registry.size(), 2);
+        cancelled.cancel();
+        Assert.assertEquals(cancelled.status(), ScheduleStatus.CANCELLED);
+        Assert.assertEquals(registry.size(), 1);
+        Thread.sleep(150);
+        Assert.assertEquals(done.status(), ScheduleStatus.DONE);
+        Assert.assertEquals(registry.size(), 0);
+        // 已经完成的 取消不会改变状态
+        done.cancel();
+        Assert.assertEquals(done.status(), ScheduleStatus.DONE);
+        Assert.assertEquals((long) registry.countByStatus().get(ScheduleStatus.DONE), 1L);
+        Assert.assertEquals((long) registry.countByStatus().get(ScheduleStatus.CANCELLED), 1L);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,86 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.Histogram;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static dev.scx.scheduling.ExpirationPolicy.IMMEDIATE_IGNORE;
+import static dev.scx.scheduling.ScheduleStatus.DONE;
+
+public class ScheduleMetricsTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testHistogram();
+        testListener();
+    }
+
+    @Test
+    public static void testHistogram() {
+        var histogram = new Histogram();
+        for (var i = 1; i <= 10000; i = i + 1) {
+            histogram.record(i);
+        }
+        Assert.assertEquals(histogram.count(), 10000);
+        Assert.assertEquals(histogram.max(), 10000);
+        Assert.assertEquals(histogram.mean(), 5000.5);
+        // 相对误差不超过 12.5%, 且不小于真实值
+        assertApproximately(histogram.percentile(50), 5000);
+        assertApproximately(histogram.percentile(99), 9900);
+        Assert.assertEquals(histogram.percentile(100), 10000);
+        Assert.assertEquals(histogram.percentile(0), 1);
+    }
+
+    @Test
+    public static void testListener() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var metrics = new ScheduleMetrics();
+        var done = new CountDownLatch(5);
+        // 开始时间在 35 毫秒之前, 错过了 0, 10, 20, 30 毫秒的 4 次执行
+        var handle = ScxScheduling.fixedRate(timer)
+            .startTime(Instant.now().minusMillis(35))
+            .interval(Duration.ofMillis(10))
+            .expirationPolicy(IMMEDIATE_IGNORE)
+            .maxRunCount(5)
+            .listener(metrics)
+            .onError(e -> {})
+            .start(c -> {
+                done.countDown();
+                if (c.currentRunCount() == 2) {
+                    throw new IllegalStateException("test");
+                }
+            });
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        // 等待最后一次的回调完成
+        Thread.sleep(50);
+        Assert.assertEquals(handle.status(), DONE);
+        var global = metrics.global();
+        Assert.assertEquals(global.runCount(), 5);
+        Assert.assertEquals(global.failureCount(), 1);
+        Assert.assertEquals(global.skipCount(), 4);
+        Assert.assertEquals(global.lag().count(), 5);
+        Assert.assertEquals(global.duration().count(), 5);
+        var stats = metrics.of(handle);
+        Assert.assertNotNull(stats);
+        Assert.assertEquals(stats.runCount(), 5);
+        // 已经完成的调度 会被移除
+        metrics.prune();
+        Assert.assertNull(metrics.of(handle));
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    private static void assertApproximately(long actual, long expected) {
+        Assert.assertTrue(actual >= expected && actual <= expected * 1.125, actual + " != " + expected);
+    }
+
+}
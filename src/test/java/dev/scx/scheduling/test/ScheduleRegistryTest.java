@@ -0,0 +1,94 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScheduleRegistry;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+public class ScheduleRegistryTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testRegistry();
+    }
+
+    @Test
+    public static void testRegistry() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var registry = new ScheduleRegistry();
+
+        for (var i = 0; i < 10; i = i + 1) {
+            ScxScheduling.fixedRate(timer)
+                .interval(Duration.ofHours(1))
+                .startDelay(Duration.ofMinutes(10 - i))
+                .registry(registry, "report-" + i, "report", i % 2 == 0 ? "even" : "odd")
+                .start(c -> {});
+        }
+        // 很快就会结束的
+        ScxScheduling.oneTime(timer)
+            .startDelay(Duration.ofMillis(100))
+            .registry(registry, "once", "report")
+            .start(c -> {});
+        ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(50))
+            .startDelay(Duration.ofMillis(100))
+            .maxRunCount(3)
+            .registry(registry, "three")
+            .start(c -> {});
+        // 一开始最先到期, 执行之后 下一次在所有的 report 之后
+        ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMinutes(20))
+            .startDelay(Duration.ofMillis(50))
+            .registry(registry, "slow")
+            .start(c -> {});
+        Assert.assertEquals(registry.nextDue(1).get(0).id(), "slow");
+
+        // id 不允许重复
+        Assert.assertThrows(IllegalArgumentException.class, () -> ScxScheduling.oneTime(timer)
+            .registry(registry, "report-0")
+            .start(c -> {}));
+
+        Assert.assertEquals(registry.size(), 13);
+        Thread.sleep(400);
+        // 已经结束的会在结束时移除
+        Assert.assertEquals(registry.size(), 11);
+        Assert.assertNull(registry.get("once"));
+        var counts = registry.countByStatus();
+        Assert.assertEquals((long) counts.get(ScheduleStatus.RUNNING), 11L);
+        Assert.assertEquals((long) counts.get(ScheduleStatus.DONE), 2L);
+        Assert.assertEquals((long) counts.get(ScheduleStatus.CANCELLED), 0L);
+
+        // 最先到期的是 report-9, slow 已经排到了最后
+        var nextDue = registry.nextDue(3);
+        Assert.assertEquals(nextDue.size(), 3);
+        Assert.assertEquals(nextDue.get(0).id(), "report-9");
+        Assert.assertEquals(nextDue.get(1).id(), "report-8");
+        Assert.assertEquals(nextDue.get(2).id(), "report-7");
+        Assert.assertEquals(registry.nextDue(11).get(10).id(), "slow");
+        registry.cancel("slow");
+
+        var odd = registry.get("report-1");
+        Assert.assertEquals(registry.byTag("odd").size(), 5);
+        Assert.assertEquals(registry.cancelByTag("odd"), 5);
+        Assert.assertEquals(odd.status(), ScheduleStatus.CANCELLED);
+        Assert.assertEquals(registry.size(), 5);
+        Assert.assertEquals(registry.byTag("odd").size(), 0);
+        Assert.assertEquals((long) registry.countByStatus().get(ScheduleStatus.CANCELLED), 6L);
+        Assert.assertEquals(registry.nextDue(10).size(), 5);
+
+        // 直接通过 handle 取消 也会移除
+        registry.get("report-0").cancel();
+        Assert.assertEquals(registry.size(), 4);
+        Assert.assertEquals(registry.cancelByTag("report"), 4);
+        Assert.assertEquals(registry.size(), 0);
+
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
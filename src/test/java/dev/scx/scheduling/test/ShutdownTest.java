@@ -0,0 +1,153 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ExecutionMode;
+import dev.scx.scheduling.ScheduleRegistry;
+import dev.scx.scheduling.ScheduleStatus;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.ShutdownReport;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ShutdownTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testDrain();
+        testTimeout();
+        testVirtualThread();
+        testAbandoned();
+    }
+
+    /// 正在执行的子任务 可以在超时之前结束
+    @Test
+    public static void testDrain() throws InterruptedException {
+        var finished = new AtomicBoolean(false);
+        var timer = ScxScheduling.defaultShardedTimer();
+        // 线程池总是与默认 Timer 对应
+        Assert.assertSame(ScxScheduling.defaultExecutor(), timer.executor());
+        ScxScheduling.oneTime().start(c -> {
+            Thread.sleep(100);
+            finished.set(true);
+        });
+        var periodic = ScxScheduling.fixedRate().interval(Duration.ofMillis(10)).start(c -> {});
+        Thread.sleep(20);
+        var report = ScxScheduling.shutdownDefaultTimer(Duration.ofSeconds(5));
+        Assert.assertTrue(report.terminated());
+        Assert.assertTrue(finished.get());
+        // 关闭线程池之前 tick 线程已经退出
+        Assert.assertTrue(timer.awaitTermination(0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(report.interruptedCount(), 0);
+        // 周期调度 在下一次提交时静默停止
+        Thread.sleep(50);
+        Assert.assertEquals(periodic.status(), ScheduleStatus.CANCELLED);
+    }
+
+    /// 超时后 中断仍在执行的子任务, 并报告具体的调度
+    @Test
+    public static void testTimeout() throws InterruptedException {
+        var registry = new ScheduleRegistry();
+        var interrupted = new AtomicBoolean(false);
+        ScxScheduling.oneTime().registry(registry, "slow").start(c -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        var periodic = ScxScheduling.fixedRate().interval(Duration.ofMillis(10)).registry(registry, "periodic").start(c -> {});
+        ScxScheduling.oneTime().startDelay(Duration.ofHours(1)).registry(registry, "future").start(c -> {});
+        Thread.sleep(50);
+
+        var report = ScxScheduling.shutdownDefaultTimer(Duration.ofMillis(200), registry);
+        Assert.assertFalse(report.terminated());
+        Assert.assertTrue(report.cancelledCount() >= 1);
+        Assert.assertEquals(report.interruptedCount(), 1);
+        Assert.assertEquals(report.interruptedSchedules().size(), 1);
+        Assert.assertEquals(report.interruptedSchedules().get(0).id(), "slow");
+        Assert.assertEquals(report.abandonedSchedules().size(), 3);
+        Assert.assertEquals(periodic.status(), ScheduleStatus.CANCELLED);
+        Thread.sleep(50);
+        Assert.assertTrue(interrupted.get());
+        Assert.assertEquals(registry.size(), 0);
+    }
+
+    /// VIRTUAL_THREAD 模式的子任务 同样会被中断, 使用其他 Timer 的调度不受影响, 关闭期间不能获取默认 Timer
+    @Test
+    public static void testVirtualThread() throws InterruptedException {
+        var registry = new ScheduleRegistry();
+        var interrupted = new AtomicBoolean(false);
+        ScxScheduling.fixedRate().interval(Duration.ofHours(1)).executionMode(ExecutionMode.VIRTUAL_THREAD).registry(registry, "slow").start(c -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        var executor = Executors.newSingleThreadExecutor();
+        var otherTimer = new TimingWheelTimer(executor);
+        var other = ScxScheduling.fixedRate(otherTimer).interval(Duration.ofMillis(10)).registry(registry, "other").start(c -> {});
+        Thread.sleep(50);
+
+        var report = new AtomicReference<ShutdownReport>();
+        var drain = Thread.ofVirtual().start(() -> {
+            try {
+                report.set(ScxScheduling.shutdownDefaultTimer(Duration.ofMillis(200), registry));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        Assert.assertThrows(IllegalStateException.class, ScxScheduling::defaultTimer);
+        drain.join();
+
+        Assert.assertFalse(report.get().terminated());
+        Assert.assertEquals(report.get().interruptedCount(), 1);
+        Assert.assertEquals(report.get().interruptedSchedules().get(0).id(), "slow");
+        Assert.assertEquals(report.get().abandonedSchedules().size(), 1);
+        Thread.sleep(50);
+        Assert.assertTrue(interrupted.get());
+        Assert.assertEquals(other.status(), ScheduleStatus.RUNNING);
+        Assert.assertEquals(registry.size(), 1);
+
+        // 关闭结束之后 会重新创建
+        Assert.assertNotNull(ScxScheduling.defaultTimer());
+        ScxScheduling.shutdownDefaultTimer();
+        other.cancel();
+        otherTimer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 超时被放弃的子任务 (不响应中断) 不再视为正在执行, 不会拖到关闭的超时时间
+    @Test
+    public static void testAbandoned() throws InterruptedException {
+        var registry = new ScheduleRegistry();
+        var latch = new CountDownLatch(1);
+        ScxScheduling.fixedRate().interval(Duration.ofHours(1)).timeout(Duration.ofMillis(50)).executionMode(ExecutionMode.VIRTUAL_THREAD).registry(registry, "stuck").start(c -> {
+            while (latch.getCount() > 0) {
+                try {
+                    latch.await();
+                } catch (InterruptedException ignored) {
+
+                }
+            }
+        });
+        Thread.sleep(150);
+
+        var start = System.nanoTime();
+        var report = ScxScheduling.shutdownDefaultTimer(Duration.ofSeconds(5), registry);
+        var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        latch.countDown();
+        Assert.assertTrue(report.terminated());
+        Assert.assertEquals(report.interruptedSchedules().size(), 0);
+        Assert.assertEquals(report.abandonedSchedules().size(), 1);
+        Assert.assertTrue(elapsedMillis < 2000, "elapsedMillis : " + elapsedMillis);
+    }
+
+}
@@ -0,0 +1,83 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.concurrent.Executors;
+
+public class SplayTest {
+
+    public static void main(String[] args) {
+        testPeriodic();
+        testCron();
+    }
+
+    @Test
+    public static void testPeriodic() {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var startTime = Instant.now().plusSeconds(60);
+        var offsets = new long[100];
+        var distinct = new HashSet<Long>();
+        for (var i = 0; i < 100; i = i + 1) {
+            var handle = ScxScheduling.fixedRate(timer)
+                .startTime(startTime)
+                .interval(Duration.ofSeconds(10))
+                .splay(Duration.ofSeconds(10), "job-" + i)
+                .start(c -> {});
+            var offset = Duration.between(startTime, handle.nextRunTime()).toMillis();
+            // 偏移在 [0, window) 之间
+            Assert.assertTrue(offset >= 0 && offset < 10_000, "offset : " + offset);
+            // 之后的执行保持相同的偏移
+            Assert.assertEquals(Duration.between(startTime, handle.nextRunTime(1)).toMillis(), offset + 10_000);
+            offsets[i] = offset;
+            distinct.add(offset);
+            handle.cancel();
+        }
+        // 相同的 key 总是得到相同的偏移
+        var again = ScxScheduling.fixedRate(timer)
+            .startTime(startTime)
+            .interval(Duration.ofSeconds(10))
+            .splay(Duration.ofSeconds(10), "job-7")
+            .start(c -> {});
+        Assert.assertEquals(Duration.between(startTime, again.nextRunTime()).toMillis(), offsets[7]);
+        again.cancel();
+        // 不同的 key 分散开
+        Assert.assertTrue(distinct.size() > 90, "distinct : " + distinct.size());
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testCron() {
+        var executor = Executors.newFixedThreadPool(2);
+        var timer = new TimingWheelTimer(executor);
+        var plain = ScxScheduling.cron(timer)
+            .cronExpression("0 0 * * * ?")
+            .start(c -> {});
+        var splayed = ScxScheduling.cron(timer)
+            .cronExpression("0 0 * * * ?")
+            .splay(Duration.ofMinutes(5), "report")
+            .start(c -> {});
+        // 整点之后的 5 分钟内 偏移后的这一次可能还没到, 所以按整点取余 而不是与 plain 比较
+        Assert.assertEquals(millisOfHour(plain.nextRunTime()), 0L);
+        var offset = millisOfHour(splayed.nextRunTime());
+        Assert.assertTrue(offset < 5 * 60_000, "offset : " + offset);
+        plain.cancel();
+        splayed.cancel();
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    private static long millisOfHour(Instant instant) {
+        var time = instant.atZone(ZoneId.systemDefault());
+        return time.getMinute() * 60_000L + time.getSecond() * 1000L + time.getNano() / 1_000_000;
+    }
+
+}
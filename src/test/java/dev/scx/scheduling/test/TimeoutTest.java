@@ -0,0 +1,117 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.metrics.ScheduleMetrics;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// timer 只有一个线程, 挂起的任务如果占用了它 调度就会完全停止
+public class TimeoutTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testInterrupt();
+        testAbandon();
+        testAsync();
+    }
+
+    @Test
+    public static void testInterrupt() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var metrics = new ScheduleMetrics(false);
+        var runCount = new AtomicInteger(0);
+        var interruptedCount = new AtomicInteger(0);
+        var timeoutCount = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedDelay(timer)
+            .interval(Duration.ofMillis(10))
+            .timeout(Duration.ofMillis(100))
+            .listener(metrics)
+            .onError(e -> {
+                if (e instanceof TimeoutException) {
+                    timeoutCount.incrementAndGet();
+                }
+            })
+            .start(c -> {
+                // 第一次挂起
+                if (runCount.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        interruptedCount.incrementAndGet();
+                    }
+                }
+            });
+        Thread.sleep(400);
+        handle.cancel();
+        Assert.assertEquals(timeoutCount.get(), 1);
+        Assert.assertEquals(interruptedCount.get(), 1);
+        Assert.assertEquals(metrics.global().timeoutCount(), 1);
+        // 超时后 调度继续
+        Assert.assertTrue(runCount.get() >= 5, "runCount : " + runCount.get());
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testAbandon() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var latch = new CountDownLatch(1);
+        var runCount = new AtomicInteger(0);
+        var timeoutCount = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedDelay(timer)
+            .interval(Duration.ofMillis(10))
+            .timeout(Duration.ofMillis(100))
+            .onError(e -> timeoutCount.incrementAndGet())
+            .start(c -> {
+                // 第一次挂起, 并且不响应中断
+                if (runCount.incrementAndGet() == 1) {
+                    while (latch.getCount() > 0) {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException ignored) {
+
+                        }
+                    }
+                }
+            });
+        Thread.sleep(400);
+        handle.cancel();
+        latch.countDown();
+        Assert.assertEquals(timeoutCount.get(), 1);
+        Assert.assertTrue(runCount.get() >= 5, "runCount : " + runCount.get());
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testAsync() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var future = new CompletableFuture<Void>();
+        var timeoutCount = new AtomicInteger(0);
+        ScxScheduling.oneTime(timer)
+            .timeout(Duration.ofMillis(100))
+            .onError(e -> {
+                if (e instanceof TimeoutException) {
+                    timeoutCount.incrementAndGet();
+                }
+            })
+            .startAsync(c -> future);
+        Thread.sleep(300);
+        Assert.assertEquals(timeoutCount.get(), 1);
+        // 超时后会取消
+        Assert.assertTrue(future.isCancelled());
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+}
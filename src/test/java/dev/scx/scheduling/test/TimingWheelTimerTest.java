@@ -0,0 +1,218 @@
+package dev.scx.scheduling.test;
+
+import dev.scx.scheduling.ScheduleHandle;
+import dev.scx.scheduling.ScheduleListener;
+import dev.scx.scheduling.ScxScheduling;
+import dev.scx.scheduling.timer.ShardedTimer;
+import dev.scx.scheduling.timer.TimingWheelTimer;
+import dev.scx.timer.TaskStatus;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+public class TimingWheelTimerTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        testOrder();
+        testCancel();
+        testEagerCancel();
+        testSharded();
+        testIdle();
+        testSlack();
+        testSlackMisfire();
+        testLongDelay();
+    }
+
+    /// 使用很小的 wheelSize, 让任务跨越多个溢出层, 验证下沉 (cascade) 后的执行顺序和精度
+    @Test
+    public static void testOrder() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor, 1, MILLISECONDS, 4);
+        var order = new ConcurrentLinkedQueue<Integer>();
+        var latch = new CountDownLatch(5);
+        var start = System.nanoTime();
+        var delays = new int[]{150, 3, 70, 20, 9};
+        for (var delay : delays) {
+            timer.runAfter(() -> {
+                var elapsed = NANOSECONDS.toMillis(System.nanoTime() - start);
+                // 不允许提前执行
+                Assert.assertTrue(elapsed >= delay, "提前执行 : " + elapsed + " < " + delay);
+                order.add(delay);
+                latch.countDown();
+            }, delay, MILLISECONDS);
+        }
+        Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(order.stream().toList(), List.of(3, 9, 20, 70, 150));
+        Assert.assertEquals(timer.pendingCount(), 0L);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public static void testCancel() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var fired = new CountDownLatch(1);
+        var cancelledRunCount = new AtomicInteger(0);
+        var cancelled = timer.runAfter(cancelledRunCount::incrementAndGet, 50, MILLISECONDS);
+        timer.runAfter(fired::countDown, 100, MILLISECONDS);
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+        Assert.assertEquals(cancelled.status(), TaskStatus.CANCELLED);
+        Assert.assertEquals(timer.pendingCount(), 1L);
+        Assert.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        // 已取消的任务不应该执行
+        Assert.assertEquals(cancelledRunCount.get(), 0);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 取消周期任务 和 cron 任务时, 等待中的 timer 条目应该立即被移除
+    @Test
+    public static void testEagerCancel() {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var handles = List.of(
+            ScxScheduling.fixedRate(timer).interval(Duration.ofHours(1)).startDelay(Duration.ofHours(1)).start(c -> {}),
+            ScxScheduling.fixedDelay(timer).interval(Duration.ofHours(1)).startDelay(Duration.ofHours(1)).start(c -> {}),
+            ScxScheduling.cron(timer).cronExpression("0 0 0 1 1 ?").start(c -> {})
+        );
+        Assert.assertEquals(timer.pendingCount(), 3L);
+        for (var handle : handles) {
+            handle.cancel();
+        }
+        Assert.assertEquals(timer.pendingCount(), 0L);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 多个线程同时添加任务, 任务会分布到不同的分片
+    @Test
+    public static void testSharded() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(4);
+        var timer = new ShardedTimer(executor, 3);
+        Assert.assertEquals(timer.shardCount(), 4);
+        var fired = new CountDownLatch(64);
+        var added = new CountDownLatch(8);
+        for (var i = 0; i < 8; i = i + 1) {
+            Thread.ofVirtual().start(() -> {
+                for (var j = 0; j < 8; j = j + 1) {
+                    timer.runAfter(fired::countDown, 200, MILLISECONDS);
+                }
+                added.countDown();
+            });
+        }
+        Assert.assertTrue(added.await(5, TimeUnit.SECONDS));
+        var sum = 0L;
+        for (var i = 0; i < timer.shardCount(); i = i + 1) {
+            sum = sum + timer.pendingCount(i);
+        }
+        Assert.assertEquals(sum, 64L);
+        Assert.assertEquals(timer.pendingCount(), 64L);
+        Assert.assertTrue(fired.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(timer.pendingCount(), 0L);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 空闲时 tick 线程只在任务到期时醒来, 而不是每个 tick 都醒来
+    @Test
+    public static void testIdle() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        Thread.sleep(200);
+        Assert.assertTrue(timer.wakeupCount() <= 2, "wakeupCount : " + timer.wakeupCount());
+        var latch = new CountDownLatch(1);
+        var start = System.nanoTime();
+        timer.runAfter(latch::countDown, 100, MILLISECONDS);
+        Assert.assertTrue(latch.await(1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(100));
+        Assert.assertTrue(timer.wakeupCount() <= 6, "wakeupCount : " + timer.wakeupCount());
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 1000 个到期时间相差 100 微秒的单次任务, slack 为 50 毫秒时 只需要几次唤醒
+    @Test
+    public static void testSlack() throws InterruptedException {
+        var executor = Executors.newFixedThreadPool(4);
+        var timer = new TimingWheelTimer(executor);
+        var latch = new CountDownLatch(1000);
+        var earlyCount = new AtomicInteger(0);
+        var now = Instant.now();
+        for (var i = 0; i < 1000; i = i + 1) {
+            ScxScheduling.oneTime(timer)
+                .startTime(now.plusMillis(200).plusNanos(i * 100_000L))
+                .slack(Duration.ofMillis(50))
+                .start(c -> {
+                    if (c.lagNanos() < 0) {
+                        earlyCount.incrementAndGet();
+                    }
+                    latch.countDown();
+                });
+        }
+        // 添加任务期间的唤醒不计入
+        var wakeupCount = timer.wakeupCount();
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(earlyCount.get(), 0);
+        Assert.assertTrue(timer.wakeupCount() - wakeupCount <= 5, "wakeupCount : " + (timer.wakeupCount() - wakeupCount));
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// slack 对齐带来的延迟 不会被小于 slack 的错过阈值 当成错过
+    @Test
+    public static void testSlackMisfire() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var misfireCount = new AtomicInteger(0);
+        var handle = ScxScheduling.fixedRate(timer)
+            .interval(Duration.ofMillis(100))
+            .slack(Duration.ofMillis(50))
+            .misfireThreshold(Duration.ofMillis(5))
+            .listener(new ScheduleListener() {
+                @Override
+                public void onMisfire(ScheduleHandle handle, long lagNanos, long missCount) {
+                    misfireCount.incrementAndGet();
+                }
+            })
+            .start(c -> {});
+        Thread.sleep(550);
+        handle.cancel();
+        Assert.assertTrue(handle.runCount() >= 4, "runCount : " + handle.runCount());
+        Assert.assertEquals(misfireCount.get(), 0);
+        timer.shutdown();
+        executor.shutdown();
+    }
+
+    /// 超长的延迟不会溢出 (溢出会导致立即执行), 关闭之后添加的任务会被拒绝
+    @Test
+    public static void testLongDelay() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var timer = new TimingWheelTimer(executor);
+        var runCount = new AtomicInteger(0);
+        var handle = timer.runAfter(runCount::incrementAndGet, Long.MAX_VALUE, MILLISECONDS);
+        Thread.sleep(50);
+        Assert.assertEquals(runCount.get(), 0);
+        Assert.assertEquals(handle.status(), TaskStatus.PENDING);
+        timer.shutdown();
+        Thread.sleep(50);
+        Assert.assertEquals(handle.status(), TaskStatus.CANCELLED);
+        Assert.assertThrows(RejectedExecutionException.class, () -> timer.runAfter(runCount::incrementAndGet, 0, MILLISECONDS));
+        Assert.assertEquals(timer.pendingCount(), 0L);
+        executor.shutdown();
+    }
+
+}